@@ -0,0 +1,282 @@
+package app;
+
+import algorithm.ImageProcessAlgorithm;
+import image.ImageWrapper;
+import metrics.AlgorithmListener;
+import metrics.AlgorithmStats;
+import metrics.JfrAlgorithmListener;
+import utils.ImageUtils;
+import utils.Latencies;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes many image / mask pairs in a single JVM. <br>
+ * Decoding, filling and encoding run as three pipelined stages, each with its own worker threads,
+ * connected by bounded queues so that a slow stage holds back the stages before it instead of
+ * piling decoded images up in memory.
+ */
+public class BatchProcessor {
+    private static final Job END_OF_JOBS = new Job(null, null, null);
+
+    private final ImageProcessAlgorithm algorithm;
+    private final int decoders;
+    private final int fillers;
+    private final int encoders;
+    private final boolean collectStats;
+    private final boolean color;
+    private final AlgorithmListener recordingListener;
+
+    /**
+     * @param algorithm the algorithm to apply on every image, shared by all the filling threads.
+     */
+    public BatchProcessor(ImageProcessAlgorithm algorithm, int decoders, int fillers, int encoders) {
+        this(algorithm, decoders, fillers, encoders, false);
+    }
+
+    /**
+     * @param algorithm    the algorithm to apply on every image, shared by all the filling threads.
+     * @param collectStats true to collect the measurements of the algorithm for every job.
+     */
+    public BatchProcessor(ImageProcessAlgorithm algorithm, int decoders, int fillers, int encoders,
+                          boolean collectStats) {
+        this(algorithm, decoders, fillers, encoders, collectStats, false);
+    }
+
+    /**
+     * @param algorithm    the algorithm to apply on every image, shared by all the filling threads.
+     * @param collectStats true to collect the measurements of the algorithm for every job.
+     * @param color        true to fill the images in color instead of in grayscale.
+     */
+    public BatchProcessor(ImageProcessAlgorithm algorithm, int decoders, int fillers, int encoders,
+                          boolean collectStats, boolean color) {
+        this.algorithm = algorithm;
+        this.decoders = decoders;
+        this.fillers = fillers;
+        this.encoders = encoders;
+        this.collectStats = collectStats;
+        this.color = color;
+        this.recordingListener = JfrAlgorithmListener.create();
+    }
+
+    /**
+     * Pair every file in the image directory with the file of the same name in the mask directory.
+     */
+    public static List<Job> jobsFromDirectories(String imageDirectory, String maskDirectory,
+                                                String outputDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(imageDirectory))) {
+            return files.filter(Files::isRegularFile)
+                    .sorted()
+                    .map(image -> new Job(image.toString(),
+                            Paths.get(maskDirectory).resolve(image.getFileName()).toString(),
+                            Paths.get(outputDirectory).resolve(image.getFileName()).toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @param manifestPath a text file where each non empty line holds an image path and a mask path,
+     *                     separated by white spaces. Lines that start with # are ignored.
+     */
+    public static List<Job> jobsFromManifest(String manifestPath, String outputDirectory) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+
+        for (String line : Files.readAllLines(Paths.get(manifestPath))) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] paths = line.split("\\s+");
+            if (paths.length != 2) {
+                throw new IllegalArgumentException("Invalid manifest line: " + line);
+            }
+            jobs.add(new Job(paths[0], paths[1],
+                    Paths.get(outputDirectory).resolve(Paths.get(paths[0]).getFileName()).toString()));
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Process all the jobs and wait for them to finish.
+     *
+     * @return the statistics of the run.
+     */
+    public Summary run(List<Job> jobs) throws InterruptedException {
+        BlockingQueue<Job> pending = new ArrayBlockingQueue<>(jobs.size() + this.decoders);
+        BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(2 * this.fillers);
+        BlockingQueue<Job> filled = new ArrayBlockingQueue<>(2 * this.encoders);
+        List<Job> finished = Collections.synchronizedList(new ArrayList<>());
+        long start = System.nanoTime();
+
+        pending.addAll(jobs);
+        for (int i = 0; i < this.decoders; i++) {
+            pending.add(END_OF_JOBS);
+        }
+
+        List<Thread> decodeStage = startStage("decoder", this.decoders, pending, decoded, job -> {
+            job.image = this.color ? ImageUtils.mergeImageWithMaskColor(job.imagePath, job.maskPath) :
+                    ImageWrapper.create(ImageUtils.mergeImageWithMask(job.imagePath, job.maskPath));
+        }, finished);
+        List<Thread> fillStage = startStage("filler", this.fillers, decoded, filled, job -> {
+            job.stats = this.collectStats ? new AlgorithmStats() : null;
+            job.image.applyAlgorithm(this.algorithm, AlgorithmListener.combine(
+                    job.stats == null ? AlgorithmListener.NONE : job.stats, this.recordingListener));
+        }, finished);
+        List<Thread> encodeStage = startStage("encoder", this.encoders, filled, null, job -> {
+            ImageUtils.saveImage(job.outputPath, job.image);
+            job.image.release();
+            job.image = null;
+        }, finished);
+
+        // Each stage signals the next one that it's done once all of its workers are done
+        joinAll(decodeStage);
+        for (int i = 0; i < this.fillers; i++) {
+            decoded.put(END_OF_JOBS);
+        }
+        joinAll(fillStage);
+        for (int i = 0; i < this.encoders; i++) {
+            filled.put(END_OF_JOBS);
+        }
+        joinAll(encodeStage);
+
+        return new Summary(finished, System.nanoTime() - start);
+    }
+
+    private interface Step {
+        void apply(Job job) throws Exception;
+    }
+
+    /**
+     * @param output the queue of the next stage, or null if it is the last stage.
+     */
+    private static List<Thread> startStage(String name, int workers, BlockingQueue<Job> input,
+                                           BlockingQueue<Job> output, Step step, List<Job> finished) {
+        List<Thread> threads = new ArrayList<>(workers);
+        AtomicInteger index = new AtomicInteger();
+
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (Job job = input.take(); job != END_OF_JOBS; job = input.take()) {
+                        if (job.startNanos == 0) {
+                            job.startNanos = System.nanoTime();
+                        }
+
+                        try {
+                            step.apply(job);
+                        } catch (Exception | LinkageError e) {
+                            job.error = e.getMessage() == null ? e.toString() : e.getMessage();
+                            // A failed job never reaches the encoder, which releases the image otherwise
+                            if (job.image != null) {
+                                job.image.release();
+                                job.image = null;
+                            }
+                        }
+
+                        if (output == null || job.error != null) {
+                            job.endNanos = System.nanoTime();
+                            finished.add(job);
+                        } else {
+                            output.put(job);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, name + "-" + index.incrementAndGet());
+            thread.start();
+            threads.add(thread);
+        }
+
+        return threads;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    public static class Job {
+        private final String imagePath;
+        private final String maskPath;
+        private final String outputPath;
+        private ImageWrapper image;
+        private long startNanos;
+        private long endNanos;
+        private String error;
+        private AlgorithmStats stats;
+
+        Job(String imagePath, String maskPath, String outputPath) {
+            this.imagePath = imagePath;
+            this.maskPath = maskPath;
+            this.outputPath = outputPath;
+        }
+
+        public String getImagePath() {
+            return imagePath;
+        }
+
+        /**
+         * @return the reason the job failed, or null if it succeeded.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return the measurements of the algorithm on the image, or null if they weren't collected.
+         */
+        public AlgorithmStats getStats() {
+            return stats;
+        }
+    }
+
+    public static class Summary {
+        private final List<Job> jobs;
+        private final long elapsedNanos;
+
+        Summary(List<Job> jobs, long elapsedNanos) {
+            this.jobs = new ArrayList<>(jobs);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<Job> getJobs() {
+            return Collections.unmodifiableList(this.jobs);
+        }
+
+        public List<Job> getFailedJobs() {
+            return this.jobs.stream().filter(job -> job.error != null).collect(Collectors.toList());
+        }
+
+        @Override
+        public String toString() {
+            long[] latencies = this.jobs.stream()
+                    .filter(job -> job.error == null)
+                    .mapToLong(job -> job.endNanos - job.startNanos)
+                    .toArray();
+            Arrays.sort(latencies);
+            double seconds = this.elapsedNanos / 1e9;
+
+            return String.format("Processed %d images (%d failed) in %.2f s - %.2f images/sec, " +
+                            "latency p50 %.1f ms, p99 %.1f ms",
+                    latencies.length, this.jobs.size() - latencies.length, seconds,
+                    latencies.length / seconds, Latencies.percentile(latencies, 0.5),
+                    Latencies.percentile(latencies, 0.99));
+        }
+    }
+}
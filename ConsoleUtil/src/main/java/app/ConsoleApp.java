@@ -1,15 +1,35 @@
 package app;
 
 import algorithm.AlgorithmFactory;
+import algorithm.CachingAlgorithm;
 import algorithm.ImageProcessAlgorithm;
+import algorithm.MaskPlan;
+import algorithm.TiledHoleFiller;
+import cache.ResultCache;
+import image.FloatRaster;
 import image.ImageWrapper;
+import image.MappedTileStore;
+import metrics.AlgorithmListener;
+import metrics.AlgorithmStats;
+import metrics.JfrAlgorithmListener;
 import utils.ImageUtils;
 import utils.argsParser;
+import weighting.function.WeightingFunction;
 import weighting.function.WeightingFunctionFactory;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
 
 public class ConsoleApp {
+    private static final int SERVER_WARM_UP_ITERATIONS = 20;
+    private static final int STREAM_FRAME_BUFFERS = 3;
 
     public static void main(String[] args) {
         if (Arrays.asList(args).contains("--help")) {
@@ -18,16 +38,23 @@ public class ConsoleApp {
             try {
                 argsParser parser = new argsParser(args);
 
-                // Prepare the image
-                ImageWrapper image = ImageWrapper.create(
-                        ImageUtils.mergeImageWithMask(parser.getImagePath(), parser.getMaskPath()));
-
                 // Prepare the algorithm
-                ImageProcessAlgorithm holeFillingAlgorithm =
+                ImageProcessAlgorithm holeFillingAlgorithm = parser.getMaxError() > 0 ?
+                        AlgorithmFactory.createTruncatedHoleFillingAlgorithm(
+                                WeightingFunctionFactory.CreateDefault(parser.getZFactor(), parser.getEpsilon()),
+                                parser.getConnectivity(), parser.getMaxError()) :
                         AlgorithmFactory.createHoleFillingAlgorithm(
                                 WeightingFunctionFactory.CreateDefault(parser.getZFactor(), parser.getEpsilon()),
                                 parser.getConnectivity());
 
+                if (parser.isCached()) {
+                    holeFillingAlgorithm = AlgorithmFactory.createCachingAlgorithm(holeFillingAlgorithm,
+                            String.format("%s %s -z %d -e %s --max-error %s",
+                                    holeFillingAlgorithm.getClass().getSimpleName(), parser.getConnectivity(),
+                                    parser.getZFactor(), parser.getEpsilon(), parser.getMaxError()),
+                            createCache(parser));
+                }
+
                 // Second question algorithm suggestion
                 ImageProcessAlgorithm quickHoleFilling =
                         AlgorithmFactory.createQuickHoleFillingAlgorithm(
@@ -35,8 +62,40 @@ public class ConsoleApp {
                                 parser.getConnectivity(), 150);
 
 
-                image.applyAlgorithm(holeFillingAlgorithm);
-                ImageUtils.saveImage(parser.getOutputPath(), image);
+                AlgorithmStats stats = new AlgorithmStats();
+                AlgorithmListener listener = AlgorithmListener.combine(
+                        parser.isStats() ? stats : AlgorithmListener.NONE,
+                        JfrAlgorithmListener.create());
+
+                if (parser.isStreamMode()) {
+                    stream(parser);
+                    return;
+                } else if (parser.isServerMode()) {
+                    serve(parser, holeFillingAlgorithm);
+                    return;
+                } else if (parser.isBatchMode()) {
+                    fillBatch(parser, holeFillingAlgorithm);
+                } else {
+                    if (parser.getTileSize() > 0) {
+                        fillTiled(parser, holeFillingAlgorithm, listener);
+                    } else if (parser.getWorkers() > 0) {
+                        fillOnWorkers(parser);
+                    } else {
+                        // Load, merge, fill and save the image in as few passes as possible
+                        ImageUtils.pipeline(parser.getImagePath(), parser.getMaskPath(), parser.isColor())
+                                .fill(holeFillingAlgorithm, listener)
+                                .denormalize()
+                                .save(parser.getOutputPath());
+                    }
+
+                    if (parser.isStats()) {
+                        System.out.print(stats);
+                    }
+                }
+
+                if (parser.isCached()) {
+                    System.out.print(((CachingAlgorithm) holeFillingAlgorithm).getCache());
+                }
 
                 System.out.println("Done");
             } catch (Exception e) {
@@ -46,20 +105,159 @@ public class ConsoleApp {
         }
     }
 
+    /**
+     * @return a cache of the filled images in memory, written through to the cache directory if there is one.
+     */
+    private static ResultCache createCache(argsParser parser) throws IOException {
+        long memoryBudget = (long) parser.getCacheMegabytes() << 20;
+
+        return parser.getCacheDirectory() == null ? new ResultCache(memoryBudget) :
+                new ResultCache(memoryBudget, Paths.get(parser.getCacheDirectory()),
+                        (long) parser.getCacheDirectoryMegabytes() << 20);
+    }
+
+    /**
+     * Fill all the image / mask pairs of the directories or of the manifest file in this JVM,
+     * and print the throughput of the run.
+     */
+    private static void fillBatch(argsParser parser, ImageProcessAlgorithm algorithm) throws Exception {
+        List<BatchProcessor.Job> jobs = parser.getManifestPath() != null ?
+                BatchProcessor.jobsFromManifest(parser.getManifestPath(), parser.getOutputDirectory()) :
+                BatchProcessor.jobsFromDirectories(parser.getImageDirectory(), parser.getMaskDirectory(),
+                        parser.getOutputDirectory());
+        BatchProcessor.Summary summary = new BatchProcessor(algorithm,
+                parser.getDecoders(), parser.getFillers(), parser.getEncoders(), parser.isStats(),
+                parser.isColor()).run(jobs);
+
+        summary.getFailedJobs().forEach(job ->
+                System.out.println(job.getImagePath() + ": " + job.getError()));
+        summary.getJobs().stream()
+                .filter(job -> job.getStats() != null && job.getError() == null)
+                .forEach(job -> System.out.print(job.getImagePath() + ":\n" + job.getStats()));
+        System.out.println(summary);
+    }
+
+    /**
+     * Fill raw frames from the standard input against the mask and write them to the standard output.
+     * The standard output only carries frames, so the messages go to the standard error.
+     */
+    private static void stream(argsParser parser) {
+        try {
+            WeightingFunction weightingFunction =
+                    WeightingFunctionFactory.CreateDefault(parser.getZFactor(), parser.getEpsilon());
+            FloatRaster mask = ImageUtils.loadHoleMask(parser.getMaskPath());
+            MaskPlan plan = parser.getStreamSections() > 0 ?
+                    AlgorithmFactory.createQuickMaskPlan(weightingFunction, parser.getConnectivity(),
+                            parser.getStreamSections(), mask) :
+                    AlgorithmFactory.createMaskPlan(weightingFunction, parser.getConnectivity(), mask);
+            long start = System.nanoTime();
+            long frames = new FrameStreamer(plan, parser.isColor() ? 3 : 1, STREAM_FRAME_BUFFERS)
+                    .run(new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out));
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.err.printf("Filled %d frames in %.2f s - %.2f frames/sec%n", frames, seconds, frames / seconds);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Start a fill server that keeps running until the JVM is stopped.
+     */
+    private static void serve(argsParser parser, ImageProcessAlgorithm algorithm) throws Exception {
+        FillServer server = new FillServer(algorithm, parser.getPort(), parser.getFillers(), parser.getQueue());
+
+        server.start(SERVER_WARM_UP_ITERATIONS);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.println("Listening on port " + server.getPort());
+    }
+
+    /**
+     * Fill the image through a temporary memory-mapped tile store, so only the tiles around each hole are
+     * loaded into memory.
+     */
+    private static void fillTiled(argsParser parser, ImageProcessAlgorithm algorithm,
+                                  AlgorithmListener listener) throws Exception {
+        Path storePath = Files.createTempFile("ImageProcessLib", ".raw");
+        try (MappedTileStore store = ImageUtils.mergeImageWithMaskTiled(
+                parser.getImagePath(), parser.getMaskPath(), storePath, parser.getTileSize())) {
+            TiledHoleFiller.fill(store, algorithm, listener);
+            ImageUtils.saveImage(parser.getOutputPath(), store);
+        } finally {
+            Files.deleteIfExists(storePath);
+        }
+    }
+
+    /**
+     * Fill the image on worker processes, which share its holes and boundaries through a temporary
+     * memory-mapped file.
+     */
+    private static void fillOnWorkers(argsParser parser) throws Exception {
+        ImageWrapper image = parser.isColor() ?
+                ImageUtils.mergeImageWithMaskColor(parser.getImagePath(), parser.getMaskPath()) :
+                ImageWrapper.create(ImageUtils.mergeImageWithMask(parser.getImagePath(), parser.getMaskPath()));
+        Path jobPath = Files.createTempFile("ImageProcessLib", ".job");
+
+        try {
+            FillCoordinator.Summary summary = new FillCoordinator(parser.getWorkers(), parser.getConnectivity(),
+                    parser.getZFactor(), parser.getEpsilon()).fill(image.getRaster(), jobPath);
+            ImageUtils.saveImage(parser.getOutputPath(), image);
+            System.out.println(summary);
+        } finally {
+            Files.deleteIfExists(jobPath);
+        }
+    }
+
     private static void help() {
         StringBuilder help = new StringBuilder();
 
         help.append("Usage: ConsoleApp [PIXELS_CONNECTIVITY] [OPTIONS] [FILES]\n");
+        help.append("       ConsoleApp [PIXELS_CONNECTIVITY] [OPTIONS] [BATCH]\n");
+        help.append("       ConsoleApp [PIXELS_CONNECTIVITY] [OPTIONS] [SERVER]\n");
+        help.append("       ConsoleApp [PIXELS_CONNECTIVITY] [OPTIONS] [STREAM]\n");
         help.append("\n");
         help.append("Options:\n");
         help.append("\t-z, z factor value\n");
         help.append("\t-e, epsilon value\n");
+        help.append("\t--max-error, fill each pixel from the nearby boundary only, within this error relative to " +
+                "the range of the boundary values (e.g. 0.001)\n");
+        help.append("\t--cache, keep the filled images in a result cache of this many MB, " +
+                "so repeated images are copied instead of filled again (default 256 with --cache-dir)\n");
+        help.append("\t--cache-dir, also keep the cached images in this directory, across runs\n");
+        help.append("\t--cache-dir-size, the MB the cache directory may take (default 1024)\n");
+        help.append("\t-t, tile size - process the image from memory-mapped tiles of this size\n");
+        help.append("\t--color, fill the image in color instead of in grayscale (not with -t)\n");
+        help.append("\t--workers, fill the image on this many worker processes, which share its holes " +
+                "through a memory-mapped file (not with -t, --max-error or --cache)\n");
+        help.append("\t--stats, print the time, allocations and pixel counts of each phase of the algorithm\n");
         help.append("\n");
         help.append("FILES:\n");
         help.append("\t-i, input image path\n");
         help.append("\t-m, mask image path\n");
         help.append("\t-o, output image path\n");
         help.append("\n");
+        help.append("BATCH:\n");
+        help.append("\t-I, input images directory\n");
+        help.append("\t-M, masks directory, each mask has the name of its image\n");
+        help.append("\t-l, manifest file with an image path and a mask path in each line (instead of -I and -M)\n");
+        help.append("\t-O, output images directory\n");
+        help.append("\t--decoders, number of image decoding threads (default 1)\n");
+        help.append("\t--fillers, number of hole filling threads (default: number of processors)\n");
+        help.append("\t--encoders, number of image encoding threads (default 1)\n");
+        help.append("\n");
+        help.append("SERVER:\n");
+        help.append("\t--port, serve POST /fill and GET /stats requests on this local port\n");
+        help.append("\t--fillers, number of hole filling threads (default: number of processors)\n");
+        help.append("\t--queue, number of images that may wait for a filling thread (default: 2 * fillers)\n");
+        help.append("\n");
+        help.append("STREAM:\n");
+        help.append("\t--stream, fill raw 8 bit frames with the size of the mask from stdin to stdout\n");
+        help.append("\t-m, mask image path\n");
+        help.append("\t--stream-sections, fill with the quick algorithm over this many boundary sections " +
+                "instead of exactly, for masks whose exact plan is too large\n");
+        help.append("\t--color, the frames have three channels (rgb24 / bgr24) instead of one (gray)\n");
+        help.append("\n");
         help.append("Pixels connectivity:\n");
         help.append("\t-4 to apply 4-connected neighbors\n");
         help.append("\t-8 to apply 8-connected neighbors\n");
@@ -0,0 +1,268 @@
+package app;
+
+import algorithm.SharedFillJob;
+import image.Raster;
+import utils.PixelConnectivity;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills the holes of a single raster with the hole filling algorithm on worker processes (see FillWorker),
+ * so a hole that is too large for a single JVM is split between several heaps and garbage collectors. <br>
+ * The holes and their boundaries are written to a SharedFillJob file, and the hole pixels are split into
+ * ranges of about the same work - a few ranges per worker, so a fast worker takes more of them. Each worker
+ * is fed by its own coordinator thread, one range at a time. <br>
+ * A worker that exits, answers anything but the range it was given, or doesn't answer in time is killed and
+ * replaced by a new process, and the range goes back to the queue to be filled again, by whichever worker takes
+ * it next. A range that failed MAX_ATTEMPTS times fails the whole fill. <br>
+ * The ranges are of about the same work, so a worker is given SLOW_RANGE_FACTOR times the slowest range that
+ * was filled so far, and at least MIN_RANGE_TIMEOUT_NANOS, before it's considered hung.
+ */
+public class FillCoordinator {
+    private static final int RANGES_PER_WORKER = 8;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long MIN_RANGE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int SLOW_RANGE_FACTOR = 10;
+
+    private final int workers;
+    private final PixelConnectivity pixelConnectivity;
+    private final int zFactor;
+    private final float epsilon;
+
+    /**
+     * @param workers the number of worker processes to launch.
+     */
+    public FillCoordinator(int workers, PixelConnectivity pixelConnectivity, int zFactor, float epsilon) {
+        this.workers = workers;
+        this.pixelConnectivity = pixelConnectivity;
+        this.zFactor = zFactor;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * @param raster  the raster to fill in place.
+     * @param jobPath the file to share the job through. It is created, or overwritten if it exists.
+     */
+    public Summary fill(Raster raster, Path jobPath) throws Exception {
+        long start = System.nanoTime();
+
+        try (SharedFillJob job = SharedFillJob.create(jobPath, raster, this.pixelConnectivity)) {
+            int[] bounds = job.split(this.workers * RANGES_PER_WORKER);
+            ConcurrentLinkedDeque<Range> pending = new ConcurrentLinkedDeque<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                pending.add(new Range(bounds[i], bounds[i + 1]));
+            }
+
+            Run run = new Run(jobPath, pending);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < Math.min(this.workers, pending.size()); i++) {
+                Thread thread = new Thread(run::feedWorker, "fill-coordinator-" + i);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            if (run.error != null) {
+                throw run.error;
+            }
+            job.copyTo(raster);
+
+            return new Summary(job.getPixelsCount(), bounds.length - 1, threads.size(),
+                    run.failedWorkers.get(), System.nanoTime() - start);
+        }
+    }
+
+    private Worker launch(Path jobPath) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FillWorker.class.getName(), jobPath.toString(),
+                Integer.toString(this.zFactor), Float.toString(this.epsilon))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        return new Worker(process);
+    }
+
+    /**
+     * The ranges of a single fill, and its outcome.
+     */
+    private class Run {
+        private final Path jobPath;
+        private final ConcurrentLinkedDeque<Range> pending;
+        private final AtomicInteger failedWorkers = new AtomicInteger();
+        private final AtomicLong slowestRangeNanos = new AtomicLong();
+        private volatile IOException error;
+
+        Run(Path jobPath, ConcurrentLinkedDeque<Range> pending) {
+            this.jobPath = jobPath;
+            this.pending = pending;
+        }
+
+        /**
+         * Hand ranges to a worker process until there are none left, replacing the process when it fails.
+         */
+        void feedWorker() {
+            Worker worker = null;
+            Range range;
+
+            while (this.error == null && (range = this.pending.poll()) != null) {
+                try {
+                    if (worker == null) {
+                        worker = launch(this.jobPath);
+                    }
+                    long start = System.nanoTime();
+                    worker.fill(range, Math.max(MIN_RANGE_TIMEOUT_NANOS,
+                            SLOW_RANGE_FACTOR * this.slowestRangeNanos.get()));
+                    this.slowestRangeNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+                } catch (IOException e) {
+                    this.failedWorkers.incrementAndGet();
+                    if (worker != null) {
+                        worker.kill();
+                        worker = null;
+                    }
+
+                    if (++range.attempts < MAX_ATTEMPTS) {
+                        this.pending.addFirst(range);
+                    } else {
+                        this.error = new IOException("Range [" + range.from + ", " + range.to + ") failed on " +
+                                MAX_ATTEMPTS + " workers, last with: " + e.getMessage(), e);
+                    }
+                }
+            }
+
+            if (worker != null) {
+                worker.close();
+            }
+        }
+    }
+
+    private static class Range {
+        private final int from;
+        private final int to;
+        // Only the thread that polled the range touches it
+        private int attempts;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * A worker process, with the pipes of its requests and replies. The replies are read on a thread of their
+     * own, so a reply is awaited with a deadline - killing the process closes the pipe and ends the read.
+     */
+    private static class Worker {
+        private final Process process;
+        private final Writer requests;
+        private final BufferedReader replies;
+        private final ExecutorService reader;
+
+        Worker(Process process) {
+            this.process = process;
+            this.requests = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII);
+            this.replies = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            this.reader = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fill-worker-replies");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * @param timeoutNanos how long to wait for the reply before the worker is considered hung.
+         * @throws IOException if the worker failed to fill the range or didn't answer in time.
+         */
+        void fill(Range range, long timeoutNanos) throws IOException {
+            this.requests.write(range.from + " " + range.to + "\n");
+            this.requests.flush();
+            String reply;
+
+            try {
+                reply = this.reader.submit(this.replies::readLine).get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new IOException(String.format("no reply within %.1f s", timeoutNanos / 1e9));
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the worker");
+            }
+
+            if (!("done " + range.from + " " + range.to).equals(reply)) {
+                throw new IOException(reply == null ? "the worker exited" : "unexpected reply " + reply);
+            }
+        }
+
+        /**
+         * Let the worker exit once it's out of ranges.
+         */
+        void close() {
+            try {
+                this.requests.close();
+                this.process.waitFor();
+                this.reader.shutdown();
+            } catch (IOException e) {
+                kill();
+            } catch (InterruptedException e) {
+                kill();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void kill() {
+            this.process.destroyForcibly();
+            this.reader.shutdownNow();
+        }
+    }
+
+    public static class Summary {
+        private final int pixels;
+        private final int ranges;
+        private final int workers;
+        private final int failedWorkers;
+        private final long elapsedNanos;
+
+        Summary(int pixels, int ranges, int workers, int failedWorkers, long elapsedNanos) {
+            this.pixels = pixels;
+            this.ranges = ranges;
+            this.workers = workers;
+            this.failedWorkers = failedWorkers;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of times a worker failed and its range was filled again.
+         */
+        public int getFailedWorkers() {
+            return this.failedWorkers;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Filled %d hole pixels in %d ranges on %d workers in %.2f s (%d workers failed)",
+                    this.pixels, this.ranges, this.workers, this.elapsedNanos / 1e9, this.failedWorkers);
+        }
+    }
+}
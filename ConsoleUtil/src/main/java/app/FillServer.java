@@ -0,0 +1,341 @@
+package app;
+
+import algorithm.CachingAlgorithm;
+import algorithm.ImageProcessAlgorithm;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.ImageWrapper;
+import org.opencv.core.Mat;
+import utils.ImageUtils;
+import utils.Latencies;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A long running fill server on the loopback interface, so every request is served by a warm JVM
+ * with OpenCV already loaded. <br>
+ * POST /fill takes a body of [image length][image][mask length][mask], where the lengths are big-endian
+ * 32 bit integers and the image and the mask are encoded images (e.g. PNG files). The query may hold
+ * format=EXTENSION for the format of the response (default png) and color=true to fill in color.
+ * The response is the encoded filled image. <br>
+ * GET /stats returns the request counters, the queue depth, the latency percentiles and the counters of the
+ * result cache (with a CachingAlgorithm) as key=value lines. <br>
+ * Decoding and encoding run on the connection threads, while the filling runs with the shared algorithm
+ * on a bounded worker pool. A request takes one of workers + queue admission slots before its body is read,
+ * and holds it until its image is encoded - a request that finds no free slot is answered with 503 right away,
+ * so an overloaded server neither buffers nor decodes it. The connection threads have a bounded queue as well,
+ * and a connection that finds it full is closed.
+ */
+public class FillServer implements AutoCloseable {
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int MAX_PAYLOAD_LENGTH = 256 << 20;
+    // A waiting connection holds only its socket, as its body is read once a connection thread takes it
+    private static final int MAX_WAITING_CONNECTIONS = 256;
+
+    private final ImageProcessAlgorithm algorithm;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final Semaphore admissions;
+    private final ThreadPoolExecutor connections;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long completed;
+
+    /**
+     * @param algorithm the algorithm to apply on every image, shared by all the workers.
+     * @param port      the loopback port to listen on, 0 for any free port.
+     * @param workers   the number of filling threads.
+     * @param queue     the number of images that may wait for a filling thread.
+     */
+    public FillServer(ImageProcessAlgorithm algorithm, int port, int workers, int queue) throws IOException {
+        this.algorithm = algorithm;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), namedThreads("filler"), new ThreadPoolExecutor.AbortPolicy());
+        // Every admitted image either runs on a worker or waits in its queue, so a submission is never rejected
+        this.admissions = new Semaphore(workers + queue);
+        // More connection threads than admission slots, so an overloaded server rejects quickly
+        int connections = 2 * (workers + queue);
+        this.connections = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_WAITING_CONNECTIONS), namedThreads("connection"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(this.connections);
+        this.server.createContext("/fill", this::handleFill);
+        this.server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Run the algorithm a few times on a synthetic image, so the first requests don't pay for the JIT warm-up,
+     * and start listening.
+     */
+    public void start(int warmUpIterations) throws Exception {
+        byte[] image = syntheticPng(64, false);
+        byte[] mask = syntheticPng(64, true);
+        // The warm-up bypasses a result cache, which would otherwise serve the repeated image from the cache
+        // and keep the synthetic results
+        ImageProcessAlgorithm warmUpAlgorithm = this.algorithm instanceof CachingAlgorithm ?
+                ((CachingAlgorithm) this.algorithm).getAlgorithm() : this.algorithm;
+
+        // The warm-up goes through the same decoding and encoding as the requests, which also loads OpenCV
+        for (int i = 0; i < warmUpIterations; i++) {
+            ImageWrapper filled = decode(image, mask, i % 2 == 1);
+            filled.applyAlgorithm(warmUpAlgorithm);
+            ImageUtils.encodeImage(".png", filled);
+            filled.release();
+        }
+
+        this.server.start();
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.connections.shutdownNow();
+        this.workers.shutdownNow();
+    }
+
+    private void handleFill(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Expected a POST request");
+                return;
+            }
+
+            long start = System.nanoTime();
+            this.requests.increment();
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String extension = "." + query.getOrDefault("format", "png");
+            boolean color = Boolean.parseBoolean(query.get("color"));
+
+            // The slot is taken before the body is read, so a rejected request costs neither memory nor decoding
+            if (!this.admissions.tryAcquire()) {
+                this.rejected.increment();
+                respond(exchange, 503, "The fill queue is full");
+                return;
+            }
+
+            byte[] encoded;
+            try {
+                encoded = fill(exchange, extension, color);
+            } finally {
+                this.admissions.release();
+            }
+
+            if (encoded != null) {
+                exchange.getResponseHeaders().set("Content-Type", "image/" + extension.substring(1));
+                exchange.sendResponseHeaders(200, encoded.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(encoded);
+                }
+                recordLatency(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "The server is shutting down");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Read, decode, fill and encode the image of an admitted request.
+     *
+     * @return the encoded image, or null if the request failed and was already answered.
+     */
+    private byte[] fill(HttpExchange exchange, String extension, boolean color)
+            throws IOException, InterruptedException {
+        ImageWrapper image;
+        try {
+            DataInputStream body = new DataInputStream(exchange.getRequestBody());
+            image = decode(readPayload(body), readPayload(body), color);
+        } catch (Exception e) {
+            this.failed.increment();
+            respond(exchange, 400, e.getMessage() == null ? e.toString() : e.getMessage());
+            return null;
+        }
+
+        Future<?> fill = null;
+        try {
+            fill = this.workers.submit(() -> image.applyAlgorithm(this.algorithm));
+            fill.get();
+            return ImageUtils.encodeImage(extension, image);
+        } catch (RejectedExecutionException e) {
+            // Only once the server is shutting down
+            this.rejected.increment();
+            respond(exchange, 503, "The server is shutting down");
+            return null;
+        } catch (ExecutionException | RuntimeException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            this.failed.increment();
+            respond(exchange, 500, cause.getMessage() == null ? cause.toString() : cause.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            awaitOrCancel(fill);
+            throw e;
+        } finally {
+            image.release();
+        }
+    }
+
+    /**
+     * Cancel a fill that didn't start yet, or wait for a running one to finish even if the thread is interrupted,
+     * since its image can only be released once the filler is done writing into it.
+     */
+    private static void awaitOrCancel(Future<?> fill) {
+        if (fill.cancel(false)) {
+            return;
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                fill.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, getStats());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the request counters, the queue depth and the latency percentiles of the recent requests
+     * (in milliseconds) as key=value lines.
+     */
+    public String getStats() {
+        long[] recent;
+        synchronized (this.latencies) {
+            recent = Arrays.copyOf(this.latencies, (int) Math.min(this.completed, LATENCY_SAMPLES));
+        }
+        Arrays.sort(recent);
+
+        String stats = String.format("requests=%d%nfailed=%d%nrejected=%d%nqueued=%d%nactive=%d%n" +
+                        "latency.p50=%.1f%nlatency.p99=%.1f%nlatency.max=%.1f%n",
+                this.requests.sum(), this.failed.sum(), this.rejected.sum(),
+                this.workers.getQueue().size(), this.workers.getActiveCount(),
+                Latencies.percentile(recent, 0.5), Latencies.percentile(recent, 0.99),
+                Latencies.percentile(recent, 1));
+
+        return this.algorithm instanceof CachingAlgorithm ?
+                stats + ((CachingAlgorithm) this.algorithm).getCache() : stats;
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (this.latencies) {
+            this.latencies[(int) (this.completed++ % LATENCY_SAMPLES)] = nanos;
+        }
+    }
+
+    private static ImageWrapper decode(byte[] image, byte[] mask, boolean color) throws Exception {
+        Mat decodedImage = ImageUtils.decodeImage(image);
+        Mat decodedMask = ImageUtils.decodeImage(mask);
+
+        return color ? ImageUtils.mergeImageWithMaskColor(decodedImage, decodedMask) :
+                ImageWrapper.create(ImageUtils.mergeImageWithMask(decodedImage, decodedMask));
+    }
+
+    private static byte[] readPayload(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length <= 0 || length > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Invalid payload length " + length);
+        }
+
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        return payload;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * @param mask true for a mask with a disc shaped hole in its center, false for a gradient image.
+     * @return a size x size PNG image.
+     */
+    private static byte[] syntheticPng(int size, boolean mask) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        int radius = size / 4;
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int dx = x - size / 2;
+                int dy = y - size / 2;
+                int gray = mask ? (dx * dx + dy * dy <= radius * radius ? 0 : 255) : 255 * (x + y) / (2 * size);
+                image.setRGB(x, y, gray << 16 | gray << 8 | gray);
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + index.incrementAndGet());
+    }
+}
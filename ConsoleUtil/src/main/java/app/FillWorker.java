@@ -0,0 +1,50 @@
+package app;
+
+import algorithm.SharedFillJob;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * A worker process of a FillCoordinator. <br>
+ * Usage: FillWorker JOB_FILE Z_FACTOR EPSILON <br>
+ * Maps the job file, and fills every range it reads from the standard input as a "FROM TO" line,
+ * answering "done FROM TO" on the standard output once the range is forced into the file. It exits when the standard
+ * input is closed. The worker doesn't need OpenCV, as it only reads and writes the job file.
+ */
+public class FillWorker {
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: FillWorker JOB_FILE Z_FACTOR EPSILON");
+            System.exit(2);
+        }
+
+        try (SharedFillJob job = SharedFillJob.open(Paths.get(args[0]))) {
+            WeightingFunction weightingFunction = WeightingFunctionFactory.CreateDefault(
+                    Integer.parseInt(args[1]), Float.parseFloat(args[2]));
+            BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+            PrintStream output = new PrintStream(System.out, false, "US-ASCII");
+            String line;
+
+            while ((line = input.readLine()) != null) {
+                String[] range = line.trim().split(" ");
+                int from = Integer.parseInt(range[0]);
+                int to = Integer.parseInt(range[1]);
+
+                job.fill(from, to, weightingFunction);
+                job.force();
+                output.println("done " + from + " " + to);
+                output.flush();
+            }
+        } catch (Exception e) {
+            System.err.println("Fill worker failed: " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package app;
+
+import algorithm.MaskPlan;
+import image.IntegerRaster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fills a stream of raw frames against a single mask, e.g. between two ffmpeg processes that read and write
+ * rawvideo. <br>
+ * Every frame has the size of the mask, with 8 bit pixels of one channel (gray) or three interleaved channels
+ * (rgb24 or bgr24), and the frames are written in the same format. Reading, filling and writing run on their own
+ * threads and pass a fixed set of frame buffers around, so the three stages overlap and no memory is allocated
+ * per frame once the stream is running.
+ */
+public class FrameStreamer {
+    private static final Frame END_OF_FRAMES = new Frame();
+
+    private final MaskPlan plan;
+    private final int channels;
+    private final int buffers;
+
+    /**
+     * @param plan     the plan of the mask, applied to every frame.
+     * @param channels the number of 8 bit channels of each pixel.
+     * @param buffers  the number of frames that may be in the pipeline at the same time, at least 2.
+     */
+    public FrameStreamer(MaskPlan plan, int channels, int buffers) {
+        if (buffers < 2) {
+            throw new IllegalArgumentException("At least two frame buffers are needed, got " + buffers);
+        }
+
+        this.plan = plan;
+        this.channels = channels;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Fill the frames of the input until it ends, and write them to the output.
+     *
+     * @return the number of frames written.
+     * @throws IOException if a stream failed or the input ended in the middle of a frame.
+     */
+    public long run(InputStream input, OutputStream output) throws IOException, InterruptedException {
+        BlockingQueue<Frame> free = new ArrayBlockingQueue<>(this.buffers);
+        BlockingQueue<Frame> read = new ArrayBlockingQueue<>(this.buffers + 1);
+        BlockingQueue<Frame> filled = new ArrayBlockingQueue<>(this.buffers + 1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long[] written = new long[1];
+
+        for (int i = 0; i < this.buffers; i++) {
+            free.add(new Frame(this.plan.getWidth(), this.plan.getHeight(), this.channels));
+        }
+
+        // The writer is the last stage, so the run is over once it stops. The other stages may still be blocked
+        // on the input or on a full queue after a failure, so they don't keep the JVM alive.
+        Thread reader = startStage("frame-reader", failure, () -> {
+            for (Frame frame = free.take(); frame.read(input); frame = free.take()) {
+                read.put(frame);
+            }
+            read.put(END_OF_FRAMES);
+        }, filled);
+        Thread filler = startStage("frame-filler", failure, () -> {
+            for (Frame frame = read.take(); frame != END_OF_FRAMES; frame = read.take()) {
+                frame.fill(this.plan);
+                filled.put(frame);
+            }
+            filled.put(END_OF_FRAMES);
+        }, filled);
+        Thread writer = new Thread(() -> {
+            try {
+                for (Frame frame = filled.take(); frame != END_OF_FRAMES; frame = filled.take()) {
+                    output.write(frame.pixels);
+                    written[0]++;
+                    free.put(frame);
+                }
+                output.flush();
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "frame-writer");
+        writer.start();
+        writer.join();
+
+        if (failure.get() != null) {
+            reader.interrupt();
+            filler.interrupt();
+            Exception e = failure.get();
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+
+        return written[0];
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * @param last the queue of the last stage, which is told to stop if the step fails.
+     */
+    private static Thread startStage(String name, AtomicReference<Exception> failure, Step step,
+                                     BlockingQueue<Frame> last) {
+        Thread thread = new Thread(() -> {
+            try {
+                step.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                last.offer(END_OF_FRAMES);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    private static class Frame {
+        private final byte[] pixels;
+        private final IntegerRaster raster;
+
+        private Frame() {
+            this.pixels = null;
+            this.raster = null;
+        }
+
+        Frame(int width, int height, int channels) {
+            this.pixels = new byte[width * height * channels];
+            // The plan fills the holes of its own mask, so the frame is filled in place without a mask
+            this.raster = IntegerRaster.wrap(width, height, channels, this.pixels, null);
+        }
+
+        /**
+         * @return true if a whole frame was read, false if the input ended before the frame.
+         * @throws IOException if the input ended in the middle of the frame.
+         */
+        boolean read(InputStream input) throws IOException {
+            int length = 0;
+
+            while (length < this.pixels.length) {
+                int count = input.read(this.pixels, length, this.pixels.length - length);
+                if (count < 0) {
+                    if (length == 0) {
+                        return false;
+                    }
+                    throw new IOException("The input ended in the middle of a frame (" + length + " of " +
+                            this.pixels.length + " bytes)");
+                }
+                length += count;
+            }
+
+            return true;
+        }
+
+        void fill(MaskPlan plan) {
+            plan.invoke(this.raster);
+        }
+    }
+}
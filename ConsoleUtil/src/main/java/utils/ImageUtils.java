@@ -1,13 +1,16 @@
 package utils;
 
+import image.FloatRaster;
+import image.ImagePipeline;
 import image.ImageWrapper;
-import image.Pixel;
+import image.MappedTileStore;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
 import org.opencv.imgcodecs.Imgcodecs;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class ImageUtils {
 
@@ -23,22 +26,201 @@ public class ImageUtils {
      * @throws Exception will be thrown in any case the image or the mask couldn't be loaded.
      */
     public static Mat mergeImageWithMask(String imagePath, String maskPath) throws Exception {
-        Mat image = Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_COLOR);
+        return mergeImageWithMask(Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_COLOR),
+                Imgcodecs.imread(maskPath, Imgcodecs.IMREAD_COLOR));
+    }
+
+    /**
+     * Same as mergeImageWithMask(String, String) for images that are already decoded.
+     * The given image and mask are released.
+     *
+     * @param image Mat object of type CV_8UC3 which contains the image, empty if it couldn't be decoded.
+     * @param mask  Mat object of type CV_8UC3 which contains the mask, empty if it couldn't be decoded.
+     */
+    public static Mat mergeImageWithMask(Mat image, Mat mask) throws Exception {
+        validate(image, mask);
+
+        Mat mergedImage = merge(image, mask);
+        image.release();
+        mask.release();
+
+        return mergedImage;
+    }
+
+    /**
+     * Same as mergeImageWithMask, but the image keeps its colors and its depth, and the holes are kept in
+     * a separate mask.
+     *
+     * @return ImageWrapper object which contains the CV_8UC3 image (or CV_16UC3 for a 16 bit image)
+     * and its holes. The image is filled in its own depth, without normalizing it.
+     * @throws Exception will be thrown in any case the image or the mask couldn't be loaded.
+     */
+    public static ImageWrapper mergeImageWithMaskColor(String imagePath, String maskPath) throws Exception {
+        return mergeImageWithMaskColor(Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_ANYDEPTH | Imgcodecs.IMREAD_COLOR),
+                Imgcodecs.imread(maskPath, Imgcodecs.IMREAD_COLOR));
+    }
+
+    /**
+     * Same as mergeImageWithMaskColor(String, String) for images that are already decoded.
+     * The given mask is released, the image is kept by the returned ImageWrapper.
+     *
+     * @param image Mat object of type CV_8UC3 or CV_16UC3 which contains the image.
+     */
+    public static ImageWrapper mergeImageWithMaskColor(Mat image, Mat mask) throws Exception {
+        validate(image, mask);
+
+        return ImageWrapper.pipeline().load(image).mergeMask(mask).toImageWrapper();
+    }
+
+    /**
+     * Same as mergeImageWithMask or mergeImageWithMaskColor, but the image is only loaded and merged once
+     * the returned pipeline runs, together with the stages that are added to it (see ImagePipeline).
+     *
+     * @param color true to keep the colors and the depth of the image instead of normalizing it to grayscale.
+     */
+    public static ImagePipeline pipeline(String imagePath, String maskPath, boolean color) {
+        ImagePipeline pipeline = ImageWrapper.pipeline().load(imagePath);
+        if (!color) {
+            pipeline.normalize();
+        }
+
+        return pipeline.mergeMask(maskPath);
+    }
+
+    /**
+     * @param maskPath path to an RGB image that contains a mask.
+     * @return a raster with the size of the mask, where the dark pixels of the mask are holes and the other pixels
+     * are 0.
+     * @throws Exception will be thrown in any case the mask couldn't be loaded.
+     */
+    public static FloatRaster loadHoleMask(String maskPath) throws Exception {
         Mat mask = Imgcodecs.imread(maskPath, Imgcodecs.IMREAD_COLOR);
+        if (mask.empty()) {
+            throw new Exception("Mask couldn't be loaded");
+        }
 
-        if (!image.empty() && !mask.empty()) {
-            Mat normImage = convertToNormalizedGrayscale(image);
-            Mat normMask = convertToNormalizedGrayscale(mask);
-            merge(normImage, normMask);
+        int width = mask.width();
+        FloatRaster raster = FloatRaster.create(width, mask.height());
+        byte[] maskRow = new byte[width * 3];
 
-            return normImage;
-        } else {
-            if (image.empty()) {
-                throw new Exception("Image couldn't be loaded");
-            } else {
-                throw new Exception("Mask couldn't be loaded");
+        for (int y = 0; y < mask.height(); y++) {
+            mask.get(y, 0, maskRow);
+            for (int x = 0; x < width; x++) {
+                if (averageOf(maskRow, x) < 0.5) {
+                    raster.set(x, y, FloatRaster.HOLE_VALUE);
+                }
             }
         }
+        mask.release();
+
+        return raster;
+    }
+
+    /**
+     * @param encoded an encoded image, e.g. the content of a PNG file.
+     * @return Mat object of type CV_8UC3 which contains the decoded image, or an empty Mat if it couldn't be decoded.
+     */
+    public static Mat decodeImage(byte[] encoded) {
+        MatOfByte buffer = new MatOfByte(encoded);
+        Mat image = Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_COLOR);
+        buffer.release();
+
+        return image;
+    }
+
+    /**
+     * @param extension the format to encode the image in, e.g. ".png".
+     * @param image     ImageWrapper object that contains the image to encode.
+     * @return the encoded image.
+     */
+    public static byte[] encodeImage(String extension, ImageWrapper image) {
+        Mat denormalizedImage = denormalizeIfNeeded(image.getImage());
+        MatOfByte buffer = new MatOfByte();
+
+        if (!Imgcodecs.imencode(extension, denormalizedImage, buffer)) {
+            throw new IllegalArgumentException("Image couldn't be encoded as " + extension);
+        }
+        byte[] encoded = buffer.toArray();
+        buffer.release();
+        if (denormalizedImage != image.getImage()) {
+            denormalizedImage.release();
+        }
+
+        return encoded;
+    }
+
+    /**
+     * @return the image itself if it's an 8 or 16 bit image that was filled in its own depth,
+     * or a denormalized copy of a float image.
+     */
+    private static Mat denormalizeIfNeeded(Mat image) {
+        return image.depth() == CvType.CV_8U || image.depth() == CvType.CV_16U ? image : denormalizeImage(image);
+    }
+
+    private static void validate(Mat image, Mat mask) throws Exception {
+        if (image.empty()) {
+            throw new Exception("Image couldn't be loaded");
+        }
+        if (mask.empty()) {
+            throw new Exception("Mask couldn't be loaded");
+        }
+        if (image.width() != mask.width() || image.height() != mask.height()) {
+            throw new Exception("Mask size doesn't match the image size");
+        }
+    }
+
+    /**
+     * Same as mergeImageWithMask, but the merged image is written row by row into a tile store
+     * instead of being kept in a Mat.
+     *
+     * @param storePath the raw file that keeps the merged image.
+     * @param tileSize  the side of a tile in the store.
+     * @return a tile store which contains a normalized grayscale image of the fusion of the image and the mask.
+     * @throws Exception will be thrown in any case the image or the mask couldn't be loaded.
+     */
+    public static MappedTileStore mergeImageWithMaskTiled(String imagePath, String maskPath,
+                                                          Path storePath, int tileSize) throws Exception {
+        Mat image = Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_COLOR);
+        Mat mask = Imgcodecs.imread(maskPath, Imgcodecs.IMREAD_COLOR);
+        validate(image, mask);
+
+        int width = image.width();
+        MappedTileStore store = MappedTileStore.create(storePath, width, image.height(), tileSize);
+        byte[] imageRow = new byte[width * 3];
+        byte[] maskRow = new byte[width * 3];
+        float[] row = new float[width];
+
+        for (int y = 0; y < image.height(); y++) {
+            image.get(y, 0, imageRow);
+            mask.get(y, 0, maskRow);
+            mergeRow(imageRow, maskRow, row);
+            store.writeRow(y, row);
+        }
+
+        image.release();
+        mask.release();
+
+        return store;
+    }
+
+    /**
+     * @param path  the location where the image should be saved into.
+     * @param store tile store that contains a grayscale normalized image.
+     */
+    public static void saveImage(String path, MappedTileStore store) {
+        int width = store.getWidth();
+        Mat denormalizedImage = new Mat(store.getHeight(), width, CvType.CV_8UC1);
+        float[] row = new float[width];
+        byte[] denormalizedRow = new byte[width];
+
+        for (int y = 0; y < store.getHeight(); y++) {
+            store.readRow(y, row);
+            denormalizeRow(row, denormalizedRow);
+            denormalizedImage.put(y, 0, denormalizedRow);
+        }
+
+        Imgcodecs.imwrite(path, denormalizedImage);
+        denormalizedImage.release();
     }
 
     /**
@@ -46,7 +228,12 @@ public class ImageUtils {
      * @param image ImageWrapper object that contains the image to save.
      */
     public static void saveImage(String path, ImageWrapper image) {
-        Imgcodecs.imwrite(path, ImageUtils.denormalizeImage(image.getImage()));
+        Mat denormalizedImage = denormalizeIfNeeded(image.getImage());
+
+        Imgcodecs.imwrite(path, denormalizedImage);
+        if (denormalizedImage != image.getImage()) {
+            denormalizedImage.release();
+        }
     }
 
     /**
@@ -54,82 +241,127 @@ public class ImageUtils {
      * @return a grayscale normalized version of the given image.
      * normalized - each pixel is a scalar in the range [0,1]
      */
-    private static Mat convertToNormalizedGrayscale(Mat image) {
+    public static Mat convertToNormalizedGrayscale(Mat image) {
         int height = image.height();
         int width = image.width();
-        float red, green, blue, newVal;
-        double[] rgb;
-
+        int channels = image.channels();
         Mat grayImageMatrix = new Mat(height, width, CvType.CV_32FC1);
+        float[] grayRow = new float[width];
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                rgb = image.get(y, x);
+        // The Weighted Method - result appears to be less accurate.
+        // newVal = (red * 0.299 + green * 0.587 + blue * 0.114) / 255f;
 
-                // The Weighted Method - result appears to be less accurate.
-                // red = (float) (rgb[0] * 0.299) / 255f;
-                // green = (float) (rgb[1] * 0.587) / 255f;
-                // blue = (float) (rgb[2] * 0.114) / 255f;
-                // newVal = (red + green + blue);
+        // Average Method
+        if (image.type() == CvType.CV_8UC3) {
+            byte[] row = new byte[width * 3];
 
-                // Average Method
-                red = (float) rgb[0];
-                green = (float) rgb[1];
-                blue = (float) rgb[2];
-                newVal = (red + green + blue) / (3 * 255f);
+            for (int y = 0; y < height; y++) {
+                image.get(y, 0, row);
+                for (int x = 0; x < width; x++) {
+                    grayRow[x] = averageOf(row, x);
+                }
+                grayImageMatrix.put(y, 0, grayRow);
+            }
+        } else {
+            Mat floatImage = new Mat();
+            image.convertTo(floatImage, CvType.CV_32FC(channels));
+            float[] row = new float[width * channels];
 
-                grayImageMatrix.put(y, x, newVal);
+            for (int y = 0; y < height; y++) {
+                floatImage.get(y, 0, row);
+                for (int x = 0; x < width; x++) {
+                    grayRow[x] = (row[x * channels] + row[x * channels + 1] + row[x * channels + 2]) / (3 * 255f);
+                }
+                grayImageMatrix.put(y, 0, grayRow);
             }
+            floatImage.release();
         }
 
         return grayImageMatrix;
     }
 
     /**
-     * @param mask Mat object that contains a grayscale normalized image.
-     * @return a list of pixels that each one is a part of a hole in the image.
+     * Convert the image and the mask to normalized grayscale and merge them in a single pass,
+     * one row at a time - basically it creates a hole in the image wherever the mask is dark.
+     *
+     * @param image Mat object of type CV_8UC3 which contains the image.
+     * @param mask  Mat object of type CV_8UC3 with the size of the image, which contains the mask.
+     * @return Mat object which contains a normalized grayscale image of the fusion of the image and the mask.
      */
-    private static List<Pixel> extractHoleCoords(Mat mask) {
-        List<Pixel> holesCoordsList = new ArrayList<>();
+    private static Mat merge(Mat image, Mat mask) {
+        int height = image.height();
+        int width = image.width();
+        Mat mergedImage = new Mat(height, width, CvType.CV_32FC1);
+        byte[] imageRow = new byte[width * 3];
+        byte[] maskRow = new byte[width * 3];
+        float[] row = new float[width];
 
-        for (int y = 0; y < mask.height(); y++) {
-            for (int x = 0; x < mask.width(); x++) {
-                double[] pixel = mask.get(y, x);
-                if (pixel[0] < 0.5) {
-                    holesCoordsList.add(new Pixel(x, y));
-                }
-            }
+        for (int y = 0; y < height; y++) {
+            image.get(y, 0, imageRow);
+            mask.get(y, 0, maskRow);
+            mergeRow(imageRow, maskRow, row);
+            mergedImage.put(y, 0, row);
         }
 
-        return holesCoordsList;
+        return mergedImage;
     }
 
     /**
-     * @param image Mat object that contains a image to merge with a mask.
-     * @param mask  Mat object that contains a mask that represent a hole. <br>
-     *              The function merge the image with the mask - basically it creates a hole in the image.
+     * @param imageRow a row of a CV_8UC3 image.
+     * @param maskRow  the same row of a CV_8UC3 mask.
+     * @param row      receives the normalized grayscale row, where the dark pixels of the mask are holes.
      */
-    private static void merge(Mat image, Mat mask) {
-        List<Pixel> holeCoordsList = extractHoleCoords(mask);
-        holeCoordsList.forEach(pixel -> image.put(pixel.getY(), pixel.getX(), -1f));
+    private static void mergeRow(byte[] imageRow, byte[] maskRow, float[] row) {
+        for (int x = 0; x < row.length; x++) {
+            row[x] = averageOf(maskRow, x) < 0.5 ? FloatRaster.HOLE_VALUE : averageOf(imageRow, x);
+        }
     }
 
     /**
-     * @param image Mat object that contains a grayscale normalized image.
-     * @return A Mat object that contains the grayscale image where each pixel is in the range [0, 255].
+     * @return the average of the three channels of the pixel x in a CV_8UC3 row, normalized to [0,1].
+     */
+    private static float averageOf(byte[] row, int x) {
+        return ((float) (row[x * 3] & 0xFF) + (float) (row[x * 3 + 1] & 0xFF) + (float) (row[x * 3 + 2] & 0xFF)) /
+                (3 * 255f);
+    }
+
+    /**
+     * @param image Mat object that contains a normalized image, grayscale or with more channels.
+     * @return A Mat object that contains the image where each channel of each pixel is in the range [0, 255].
      */
     public static Mat denormalizeImage(Mat image) {
         int height = image.height();
         int width = image.width();
-        Mat denormalizedImage = new Mat(height, width, CvType.CV_8UC1);
+        int channels = image.channels();
+        Mat denormalizedImage = new Mat(height, width, CvType.CV_8UC(channels));
+        Mat floatImage = image;
+        float[] row = new float[width * channels];
+        byte[] denormalizedRow = new byte[width * channels];
+
+        if (image.depth() != CvType.CV_32F) {
+            floatImage = new Mat();
+            image.convertTo(floatImage, CvType.CV_32FC(channels));
+        }
 
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                double[] pixel = image.get(y, x);
-                denormalizedImage.put(y, x, Math.round(pixel[0] * 255f));
-            }
+            floatImage.get(y, 0, row);
+            denormalizeRow(row, denormalizedRow);
+            denormalizedImage.put(y, 0, denormalizedRow);
+        }
+
+        if (floatImage != image) {
+            floatImage.release();
         }
 
         return denormalizedImage;
     }
-}
\ No newline at end of file
+
+    /**
+     * Round each value of a normalized row to [0, 255], saturating values outside of the range (e.g. holes).
+     */
+    private static void denormalizeRow(float[] row, byte[] denormalizedRow) {
+        for (int x = 0; x < row.length; x++) {
+            denormalizedRow[x] = (byte) Math.max(0, Math.min(255, Math.round(row[x] * 255.0)));
+        }
+    }
+}
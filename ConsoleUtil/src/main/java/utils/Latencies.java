@@ -0,0 +1,18 @@
+package utils;
+
+public class Latencies {
+
+    /**
+     * @param sortedLatencies latencies in nanoseconds, sorted in ascending order.
+     * @param percentile      the percentile in [0, 1], e.g. 0.99.
+     * @return the nearest-rank percentile of the latencies, in milliseconds, or 0 if there are none.
+     */
+    public static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank - 1, 0)] / 1e6;
+    }
+}
@@ -5,17 +5,41 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 public class argsParser {
+    private static final int DEFAULT_CACHE_MEGABYTES = 256;
+
     private final PixelConnectivity connectivity;
     private int zFactor;
     private float epsilon;
     private String maskPath;
     private String imagePath;
     private String outputPath;
+    private int tileSize;
+    private String imageDirectory;
+    private String maskDirectory;
+    private String outputDirectory;
+    private String manifestPath;
+    private int decoders = 1;
+    private int fillers = Runtime.getRuntime().availableProcessors();
+    private int encoders = 1;
+    private int port;
+    private int queue;
+    private float maxError;
+    private int cacheMegabytes;
+    private String cacheDirectory;
+    private int cacheDirectoryMegabytes = 1024;
+    private int workers;
+    private int streamSections;
+    private final boolean stats;
+    private final boolean color;
+    private final boolean stream;
 
     public argsParser(String[] args) throws IllegalArgumentException {
         List<String> argsList = Arrays.stream(args)
                 .map(String::trim)
                 .collect(Collectors.toList());
+        this.stats = argsList.removeIf("--stats"::equals);
+        this.color = argsList.removeIf("--color"::equals);
+        this.stream = argsList.removeIf("--stream"::equals);
 
         if (argsList.get(0).equals("-4")) {
             this.connectivity = PixelConnectivity.FourConnected;
@@ -37,15 +61,28 @@ public class argsParser {
     }
 
     private void validate() throws IllegalArgumentException {
-        boolean check = this.zFactor > 0 &&
-                this.epsilon > 0 &&
-                this.imagePath != null &&
+        boolean singleImage = this.imagePath != null &&
                 this.maskPath != null &&
                 this.outputPath != null;
+        boolean batch = this.outputDirectory != null &&
+                (this.manifestPath != null || (this.imageDirectory != null && this.maskDirectory != null));
+        boolean check = this.zFactor > 0 &&
+                this.epsilon > 0 &&
+                (singleImage || batch || isServerMode() || (this.stream && this.maskPath != null));
 
         if (!check) {
             throw new IllegalArgumentException("Error, Invalid arguments received.");
         }
+        if (this.color && this.tileSize > 0) {
+            throw new IllegalArgumentException("Color images can't be processed from tiles.");
+        }
+        if (this.workers > 0 && (!singleImage || this.tileSize > 0 || this.maxError > 0 || isCached())) {
+            throw new IllegalArgumentException("Workers fill a single image in memory, " +
+                    "without a max error or a cache.");
+        }
+        if (this.streamSections > 0 && !this.stream) {
+            throw new IllegalArgumentException("Boundary sections are only used to stream frames.");
+        }
     }
 
     private void setValues(String option, String value) throws IllegalArgumentException {
@@ -65,11 +102,73 @@ public class argsParser {
             case "-i":
                 this.imagePath = value;
                 break;
+            case "-I":
+                this.imageDirectory = value;
+                break;
+            case "-M":
+                this.maskDirectory = value;
+                break;
+            case "-O":
+                this.outputDirectory = value;
+                break;
+            case "-l":
+                this.manifestPath = value;
+                break;
+            case "--decoders":
+                this.decoders = parsePositive(option, value);
+                break;
+            case "--fillers":
+                this.fillers = parsePositive(option, value);
+                break;
+            case "--encoders":
+                this.encoders = parsePositive(option, value);
+                break;
+            case "--port":
+                this.port = parsePositive(option, value);
+                break;
+            case "--queue":
+                this.queue = parsePositive(option, value);
+                break;
+            case "--max-error":
+                this.maxError = Float.parseFloat(value);
+                if (this.maxError < 0 || this.maxError >= 1) {
+                    throw new IllegalArgumentException("Max error must be in the range [0, 1).");
+                }
+                break;
+            case "--cache":
+                this.cacheMegabytes = parsePositive(option, value);
+                break;
+            case "--cache-dir":
+                this.cacheDirectory = value;
+                break;
+            case "--cache-dir-size":
+                this.cacheDirectoryMegabytes = parsePositive(option, value);
+                break;
+            case "--workers":
+                this.workers = parsePositive(option, value);
+                break;
+            case "--stream-sections":
+                this.streamSections = parsePositive(option, value);
+                break;
+            case "-t":
+                this.tileSize = Integer.parseInt(value);
+                if (this.tileSize <= 0) {
+                    throw new IllegalArgumentException("Tile size must be positive.");
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Invalid argument received " + option + " : " + value);
         }
     }
 
+    private static int parsePositive(String option, String value) throws IllegalArgumentException {
+        int result = Integer.parseInt(value);
+        if (result <= 0) {
+            throw new IllegalArgumentException("Invalid argument received " + option + " : " + value);
+        }
+        return result;
+    }
+
     public PixelConnectivity getConnectivity() {
         return this.connectivity;
     }
@@ -82,6 +181,14 @@ public class argsParser {
         return this.epsilon;
     }
 
+    /**
+     * @return the maximal error of a filled pixel relative to the range of its boundary values, or 0 to fill
+     * the holes exactly.
+     */
+    public float getMaxError() {
+        return this.maxError;
+    }
+
     public String getMaskPath() {
         return this.maskPath;
     }
@@ -93,4 +200,126 @@ public class argsParser {
     public String getOutputPath() {
         return this.outputPath;
     }
+
+    /**
+     * @return the tile size for processing the image from memory-mapped tiles, or 0 to process it in memory.
+     */
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    /**
+     * @return true if many images should be processed (from directories or from a manifest file).
+     */
+    public boolean isBatchMode() {
+        return this.outputDirectory != null &&
+                (this.manifestPath != null || (this.imageDirectory != null && this.maskDirectory != null));
+    }
+
+    public String getImageDirectory() {
+        return this.imageDirectory;
+    }
+
+    public String getMaskDirectory() {
+        return this.maskDirectory;
+    }
+
+    public String getOutputDirectory() {
+        return this.outputDirectory;
+    }
+
+    public String getManifestPath() {
+        return this.manifestPath;
+    }
+
+    public int getDecoders() {
+        return this.decoders;
+    }
+
+    public int getFillers() {
+        return this.fillers;
+    }
+
+    public int getEncoders() {
+        return this.encoders;
+    }
+
+    /**
+     * @return true if the images should be received from a local fill server instead of from files.
+     */
+    public boolean isServerMode() {
+        return this.port > 0;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @return the number of images that may wait for a filling thread of the server.
+     */
+    public int getQueue() {
+        return this.queue > 0 ? this.queue : 2 * this.fillers;
+    }
+
+    /**
+     * @return true if raw frames should be filled from the standard input to the standard output.
+     */
+    public boolean isStreamMode() {
+        return this.stream;
+    }
+
+    /**
+     * @return the number of boundary sections of the quick plan the frames are filled with, or 0 to fill them
+     * with the exact plan.
+     */
+    public int getStreamSections() {
+        return this.streamSections;
+    }
+
+    /**
+     * @return true if the results should be cached, in memory and optionally on disk.
+     */
+    public boolean isCached() {
+        return this.cacheMegabytes > 0 || this.cacheDirectory != null;
+    }
+
+    /**
+     * @return the memory budget of the result cache in megabytes.
+     */
+    public int getCacheMegabytes() {
+        return this.cacheMegabytes > 0 ? this.cacheMegabytes : DEFAULT_CACHE_MEGABYTES;
+    }
+
+    /**
+     * @return the directory of the disk tier of the result cache, or null for a memory only cache.
+     */
+    public String getCacheDirectory() {
+        return this.cacheDirectory;
+    }
+
+    public int getCacheDirectoryMegabytes() {
+        return this.cacheDirectoryMegabytes;
+    }
+
+    /**
+     * @return the number of worker processes to fill the image on, or 0 to fill it in this JVM.
+     */
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * @return true if a breakdown of the algorithm phases should be printed for every image.
+     */
+    public boolean isStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return true if the image should be filled in color instead of in grayscale.
+     */
+    public boolean isColor() {
+        return this.color;
+    }
 }
@@ -1,9 +1,17 @@
 package algorithm;
 
+import cache.ResultCache;
+import image.FloatRaster;
+import image.Raster;
 import utils.PixelConnectivity;
 import weighting.function.WeightingFunction;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
 public class AlgorithmFactory {
+    // The pools of the algorithms created by parallelism, by their parallelism
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> SHARED_POOLS = new ConcurrentHashMap<>();
 
     public static ImageProcessAlgorithm createHoleFillingAlgorithm(
             WeightingFunction weightingFunction,
@@ -12,6 +20,29 @@ public class AlgorithmFactory {
         return new HoleFillingAlgorithm(weightingFunction, pixelConnectivity);
     }
 
+    /**
+     * @param pool the pool that computes the hole pixels in parallel, row-aligned chunks.
+     */
+    public static ImageProcessAlgorithm createHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            ForkJoinPool pool) {
+
+        return new HoleFillingAlgorithm(weightingFunction, pixelConnectivity, pool);
+    }
+
+    /**
+     * @param parallelism the number of threads that compute the hole pixels, 1 for serial computation.
+     *                    The algorithms created with the same parallelism share a pool that lives as long as the JVM.
+     */
+    public static ImageProcessAlgorithm createHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            int parallelism) {
+
+        return new HoleFillingAlgorithm(weightingFunction, pixelConnectivity, sharedPool(parallelism));
+    }
+
     public static ImageProcessAlgorithm createQuickHoleFillingAlgorithm(
             WeightingFunction weightingFunction,
             PixelConnectivity pixelConnectivity,
@@ -19,4 +50,175 @@ public class AlgorithmFactory {
 
         return new QuickHoleFillingAlgorithm(weightingFunction, pixelConnectivity, boundarySize);
     }
-}
\ No newline at end of file
+
+    /**
+     * @param pool the pool that computes the hole pixels in parallel, row-aligned chunks.
+     */
+    public static ImageProcessAlgorithm createQuickHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            int boundarySize,
+            ForkJoinPool pool) {
+
+        return new QuickHoleFillingAlgorithm(weightingFunction, pixelConnectivity, boundarySize, pool);
+    }
+
+    /**
+     * @param parallelism the number of threads that compute the hole pixels, 1 for serial computation.
+     *                    The algorithms created with the same parallelism share a pool that lives as long as the JVM.
+     */
+    public static ImageProcessAlgorithm createQuickHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            int boundarySize,
+            int parallelism) {
+
+        return new QuickHoleFillingAlgorithm(weightingFunction, pixelConnectivity, boundarySize,
+                sharedPool(parallelism));
+    }
+
+    /**
+     * @param maxError the maximal error of a pixel value, relative to the range of the boundary values around
+     *                 its hole - 0 for the exact result, larger values visit less of the boundary
+     *                 (see TruncatedHoleFillingAlgorithm).
+     */
+    public static ImageProcessAlgorithm createTruncatedHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            float maxError) {
+
+        return createTruncatedHoleFillingAlgorithm(weightingFunction, pixelConnectivity, maxError, null);
+    }
+
+    /**
+     * @param pool the pool that computes the hole pixels in parallel, row-aligned chunks.
+     */
+    public static ImageProcessAlgorithm createTruncatedHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            float maxError,
+            ForkJoinPool pool) {
+
+        if (maxError < 0 || maxError >= 1) {
+            throw new IllegalArgumentException("Max error must be in the range [0, 1), got " + maxError);
+        }
+
+        return new TruncatedHoleFillingAlgorithm(weightingFunction, pixelConnectivity, maxError, pool);
+    }
+
+    /**
+     * @param openingAngle the accuracy knob of the approximation - 0 for the exact result,
+     *                     larger values are faster and less accurate (0.5 is a common choice).
+     */
+    public static ImageProcessAlgorithm createHierarchicalHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            double openingAngle) {
+
+        return new HierarchicalHoleFillingAlgorithm(weightingFunction, pixelConnectivity, openingAngle, null);
+    }
+
+    /**
+     * @param pool the pool that computes the hole pixels in parallel, row-aligned chunks.
+     */
+    public static ImageProcessAlgorithm createHierarchicalHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            double openingAngle,
+            ForkJoinPool pool) {
+
+        return new HierarchicalHoleFillingAlgorithm(weightingFunction, pixelConnectivity, openingAngle, pool);
+    }
+
+    /**
+     * @param weightingFunction a radial weighting function (see WeightingFunction.isRadial).
+     */
+    public static ImageProcessAlgorithm createFftHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity) {
+
+        return new FftHoleFillingAlgorithm(weightingFunction, pixelConnectivity, null);
+    }
+
+    /**
+     * @param weightingFunction a radial weighting function (see WeightingFunction.isRadial).
+     * @param pool              the pool that fills independent holes in parallel.
+     */
+    public static ImageProcessAlgorithm createFftHoleFillingAlgorithm(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            ForkJoinPool pool) {
+
+        return new FftHoleFillingAlgorithm(weightingFunction, pixelConnectivity, pool);
+    }
+
+    /**
+     * @param image the image without a hole, the hole is then edited through the session.
+     */
+    public static IncrementalFillSession createIncrementalFillSession(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            FloatRaster image) {
+
+        return new IncrementalFillSession(weightingFunction, pixelConnectivity, image);
+    }
+
+    /**
+     * @param mask a raster whose holes are filled by the plan in every image it's applied to.
+     * @return the exact algorithm compiled for the mask, see MaskPlan.
+     */
+    public static MaskPlan createMaskPlan(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            Raster mask) {
+
+        return MaskPlan.compile(weightingFunction, pixelConnectivity, mask);
+    }
+
+    /**
+     * @param mask a raster whose holes are filled by the plan in every image it's applied to.
+     * @return the quick algorithm compiled for the mask, see MaskPlan.
+     */
+    public static MaskPlan createQuickMaskPlan(
+            WeightingFunction weightingFunction,
+            PixelConnectivity pixelConnectivity,
+            int boundarySize,
+            Raster mask) {
+
+        if (boundarySize < 1) {
+            throw new IllegalArgumentException("Boundary size must be positive, got " + boundarySize);
+        }
+
+        return MaskPlan.compile(weightingFunction, pixelConnectivity, boundarySize, mask);
+    }
+
+    /**
+     * @param algorithm  an algorithm created by this factory, to process the rasters that aren't in the cache.
+     * @param parameters identifies the algorithm and its parameters in the keys of the cache, e.g. its name
+     *                   with the z factor, the epsilon and the pixels connectivity.
+     * @return the algorithm with the cache in front of it, see CachingAlgorithm.
+     */
+    public static CachingAlgorithm createCachingAlgorithm(
+            ImageProcessAlgorithm algorithm,
+            String parameters,
+            ResultCache cache) {
+
+        if (!(algorithm instanceof RasterProcessAlgorithm)) {
+            throw new IllegalArgumentException("Only raster algorithms can be cached, got " + algorithm);
+        }
+
+        return new CachingAlgorithm((RasterProcessAlgorithm) algorithm, parameters, cache);
+    }
+
+    /**
+     * @return the pool of the parallelism, created on its first use, or null for serial computation.
+     * The workers of a ForkJoinPool are daemon threads that end when idle, so the pools are never shut down.
+     */
+    private static ForkJoinPool sharedPool(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+
+        return parallelism == 1 ? null : SHARED_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+}
@@ -0,0 +1,111 @@
+package algorithm;
+
+import image.Raster;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+
+/**
+ * The coordinates and the values of a hole boundary, kept in primitive arrays so that the weights of a
+ * hole pixel against the whole boundary can be computed with a single batch call to the weighting function.
+ */
+class Boundary {
+    private final int[] xs;
+    private final int[] ys;
+    private final float[] values;
+    private final int size;
+    private final int channels;
+
+    Boundary(int[] xs, int[] ys, float[] values, int size) {
+        this(xs, ys, values, size, 1);
+    }
+
+    /**
+     * @param values the values of the pixels, with the channels of each pixel interleaved.
+     */
+    Boundary(int[] xs, int[] ys, float[] values, int size, int channels) {
+        this.xs = xs;
+        this.ys = ys;
+        this.values = values;
+        this.size = size;
+        this.channels = channels;
+    }
+
+    /**
+     * @return the pixels of the set with the values of all their channels in the raster.
+     */
+    static Boundary create(Raster raster, PixelSet pixels) {
+        int size = pixels.size();
+        int channels = raster.getChannels();
+        int[] xs = new int[size];
+        int[] ys = new int[size];
+        float[] values = new float[size * channels];
+
+        for (int i = 0; i < size; i++) {
+            xs[i] = pixels.xAt(i);
+            ys[i] = pixels.yAt(i);
+            for (int channel = 0; channel < channels; channel++) {
+                values[i * channels + channel] = raster.get(xs[i], ys[i], channel);
+            }
+        }
+
+        return new Boundary(xs, ys, values, size, channels);
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int[] getXs() {
+        return this.xs;
+    }
+
+    int[] getYs() {
+        return this.ys;
+    }
+
+    /**
+     * @return the values of the pixels, with the channels of each pixel interleaved.
+     */
+    float[] getValues() {
+        return this.values;
+    }
+
+    int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * Compute the weighted average of the boundary values, where each value is weighted by
+     * its weight against the pixel (x, y). Each weight is computed once and applied to all the channels.
+     *
+     * @param weights scratch array with room for at least size() weights.
+     * @param result  receives the average of each channel.
+     */
+    void interpolate(WeightingFunction weightingFunction, int x, int y, float[] weights, float[] result) {
+        float denominator = 0;
+        weightingFunction.calculate(x, y, this.xs, this.ys, this.size, weights);
+
+        if (this.channels == 1) {
+            float numerator = 0;
+            for (int i = 0; i < this.size; i++) {
+                numerator += weights[i] * this.values[i];
+                denominator += weights[i];
+            }
+            result[0] = numerator / denominator;
+            return;
+        }
+
+        for (int channel = 0; channel < this.channels; channel++) {
+            result[channel] = 0;
+        }
+        for (int i = 0; i < this.size; i++) {
+            for (int channel = 0; channel < this.channels; channel++) {
+                result[channel] += weights[i] * this.values[i * this.channels + channel];
+            }
+            denominator += weights[i];
+        }
+        for (int channel = 0; channel < this.channels; channel++) {
+            result[channel] /= denominator;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package algorithm;
+
+import utils.ScratchBuffers;
+import weighting.function.WeightingFunction;
+
+/**
+ * The pixels of a boundary bucketed into a uniform grid of square cells, so the interpolation of a hole pixel
+ * can visit the boundary from the nearest cells outwards and stop once the rest of the boundary can't change
+ * the result by more than a given error. <br>
+ * The pixels are sorted by their cell in row-major order, so every cell - and every run of cells in a grid row -
+ * is a contiguous range of the pixel arrays.
+ */
+class BoundaryGrid {
+    private static final int MIN_CELL_SIZE = 4;
+
+    private final int originX;
+    private final int originY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStarts;
+    // Summed-area table of the cell counts, with an extra leading row and column of zeros
+    private final int[] countsTable;
+    private final float[] ringWeights;
+    private final int[] xs;
+    private final int[] ys;
+    private final float[] values;
+    private final int size;
+    private final int channels;
+
+    private BoundaryGrid(int originX, int originY, int cellSize, int columns, int rows, int[] cellStarts,
+                         int[] countsTable, float[] ringWeights, int[] xs, int[] ys, float[] values,
+                         int size, int channels) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellStarts = cellStarts;
+        this.countsTable = countsTable;
+        this.ringWeights = ringWeights;
+        this.xs = xs;
+        this.ys = ys;
+        this.values = values;
+        this.size = size;
+        this.channels = channels;
+    }
+
+    /**
+     * The cell size is chosen so that a cell holds about as many pixels as its side, as a boundary is a curve
+     * rather than an area.
+     *
+     * @param weightingFunction a radial weighting function, used for the bounds of the cells' weights.
+     */
+    static BoundaryGrid create(Boundary boundary, WeightingFunction weightingFunction) {
+        int size = boundary.size();
+        int channels = boundary.getChannels();
+        int[] boundaryXs = boundary.getXs();
+        int[] boundaryYs = boundary.getYs();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = 0, maxY = 0;
+
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, boundaryXs[i]);
+            maxX = Math.max(maxX, boundaryXs[i]);
+            minY = Math.min(minY, boundaryYs[i]);
+            maxY = Math.max(maxY, boundaryYs[i]);
+        }
+
+        long area = (long) (maxX - minX + 1) * (maxY - minY + 1);
+        int cellSize = Math.max(MIN_CELL_SIZE, (int) Math.ceil(Math.sqrt((double) area / Math.max(size, 1))));
+        int columns = size == 0 ? 0 : (maxX - minX) / cellSize + 1;
+        int rows = size == 0 ? 0 : (maxY - minY) / cellSize + 1;
+        int[] cellStarts = new int[columns * rows + 1];
+        int[] cellOfPixel = new int[size];
+
+        // Counting sort of the pixels by their cell
+        for (int i = 0; i < size; i++) {
+            cellOfPixel[i] = (boundaryYs[i] - minY) / cellSize * columns + (boundaryXs[i] - minX) / cellSize;
+            cellStarts[cellOfPixel[i] + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+
+        int[] next = new int[columns * rows];
+        int[] xs = new int[size];
+        int[] ys = new int[size];
+        float[] values = new float[size * channels];
+        float[] boundaryValues = boundary.getValues();
+        for (int i = 0; i < size; i++) {
+            int cell = cellOfPixel[i];
+            int position = cellStarts[cell] + next[cell]++;
+            xs[position] = boundaryXs[i];
+            ys[position] = boundaryYs[i];
+            System.arraycopy(boundaryValues, i * channels, values, position * channels, channels);
+        }
+
+        int[] countsTable = new int[(columns + 1) * (rows + 1)];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                countsTable[(row + 1) * (columns + 1) + column + 1] = cellStarts[cell + 1] - cellStarts[cell] +
+                        countsTable[row * (columns + 1) + column + 1] +
+                        countsTable[(row + 1) * (columns + 1) + column] -
+                        countsTable[row * (columns + 1) + column];
+            }
+        }
+
+        // Every pixel of the grid is in one of the first columns + rows rings of any pixel within the grid
+        float[] ringWeights = new float[columns + rows + 1];
+        for (int ring = 1; ring < ringWeights.length; ring++) {
+            ringWeights[ring] = weightingFunction.calculate(0, 0, minimalDistance(ring, cellSize), 0);
+        }
+
+        return new BoundaryGrid(minX, minY, cellSize, columns, rows, cellStarts, countsTable, ringWeights,
+                xs, ys, values, size, channels);
+    }
+
+    /**
+     * @return the minimal distance between a pixel and the pixels of the cells in the given ring around its cell.
+     */
+    private static int minimalDistance(int ring, int cellSize) {
+        return (ring - 1) * cellSize + 1;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Compute the weighted average of the boundary values like Boundary.interpolate, visiting the cells in rings
+     * of growing Chebyshev distance around the cell of the pixel. <br>
+     * The pixels of ring j are at least (j - 1) * cellSize + 1 away, so with a radial weighting function the weight
+     * of the rings that weren't visited yet is bounded by their pixel counts (taken from the summed-area table)
+     * times the weight at that distance. The visit stops once that bound is within maxError of the weight that was
+     * visited, which bounds the error of the result by maxError times the range of the boundary values.
+     * A pixel with no boundary nearby simply visits more rings, up to the whole boundary.
+     *
+     * @param weights scratch array with room for at least size() weights.
+     * @param result  receives the average of each channel.
+     */
+    void interpolate(WeightingFunction weightingFunction, int x, int y, float maxError,
+                     float[] weights, float[] result) {
+        ScratchBuffers scratch = ScratchBuffers.current();
+        int[] nearbyXs = scratch.ints(ScratchBuffers.Slot.NearbyXs, this.size);
+        int[] nearbyYs = scratch.ints(ScratchBuffers.Slot.NearbyYs, this.size);
+        float[] nearbyValues = scratch.floats(ScratchBuffers.Slot.NearbyValues, this.size * this.channels);
+        int cellX = Math.floorDiv(x - this.originX, this.cellSize);
+        int cellY = Math.floorDiv(y - this.originY, this.cellSize);
+        int remaining = this.size;
+        float denominator = 0;
+        int maxRing = Math.max(Math.max(Math.abs(cellX), Math.abs(this.columns - 1 - cellX)),
+                Math.max(Math.abs(cellY), Math.abs(this.rows - 1 - cellY)));
+        double unvisitedWeight = 0;
+
+        for (int ring = 1, inside = countSquare(cellX, cellY, 0); ring <= maxRing; ring++) {
+            int square = countSquare(cellX, cellY, ring);
+            unvisitedWeight += (double) (square - inside) * ringWeight(weightingFunction, ring);
+            inside = square;
+        }
+
+        for (int channel = 0; channel < this.channels; channel++) {
+            result[channel] = 0;
+        }
+
+        for (int ring = 0; remaining > 0; ring++) {
+            int count = 0;
+
+            for (int row = Math.max(cellY - ring, 0); row <= Math.min(cellY + ring, this.rows - 1); row++) {
+                if (row == cellY - ring || row == cellY + ring) {
+                    count = gather(row, cellX - ring, cellX + ring, nearbyXs, nearbyYs, nearbyValues, count);
+                } else {
+                    count = gather(row, cellX - ring, cellX - ring, nearbyXs, nearbyYs, nearbyValues, count);
+                    count = gather(row, cellX + ring, cellX + ring, nearbyXs, nearbyYs, nearbyValues, count);
+                }
+            }
+
+            if (count > 0) {
+                weightingFunction.calculate(x, y, nearbyXs, nearbyYs, count, weights);
+                for (int i = 0; i < count; i++) {
+                    for (int channel = 0; channel < this.channels; channel++) {
+                        result[channel] += weights[i] * nearbyValues[i * this.channels + channel];
+                    }
+                    denominator += weights[i];
+                }
+                remaining -= count;
+                if (ring > 0) {
+                    unvisitedWeight -= (double) count * ringWeight(weightingFunction, ring);
+                }
+            }
+
+            if (denominator > 0 && unvisitedWeight <= maxError * denominator) {
+                break;
+            }
+        }
+
+        for (int channel = 0; channel < this.channels; channel++) {
+            result[channel] /= denominator;
+        }
+    }
+
+    private float ringWeight(WeightingFunction weightingFunction, int ring) {
+        return ring < this.ringWeights.length ? this.ringWeights[ring] :
+                weightingFunction.calculate(0, 0, minimalDistance(ring, this.cellSize), 0);
+    }
+
+    /**
+     * @return the number of pixels in the cells [cellX - ring, cellX + ring] x [cellY - ring, cellY + ring],
+     * clipped to the grid.
+     */
+    private int countSquare(int cellX, int cellY, int ring) {
+        int fromColumn = Math.max(cellX - ring, 0);
+        int toColumn = Math.min(cellX + ring, this.columns - 1) + 1;
+        int fromRow = Math.max(cellY - ring, 0);
+        int toRow = Math.min(cellY + ring, this.rows - 1) + 1;
+        if (fromColumn >= toColumn || fromRow >= toRow) {
+            return 0;
+        }
+
+        int stride = this.columns + 1;
+        return this.countsTable[toRow * stride + toColumn] - this.countsTable[fromRow * stride + toColumn] -
+                this.countsTable[toRow * stride + fromColumn] + this.countsTable[fromRow * stride + fromColumn];
+    }
+
+    /**
+     * Append the pixels of the cells [fromColumn, toColumn] of the grid row, clipped to the grid.
+     *
+     * @return the number of pixels gathered so far.
+     */
+    private int gather(int row, int fromColumn, int toColumn, int[] nearbyXs, int[] nearbyYs, float[] nearbyValues,
+                       int count) {
+        fromColumn = Math.max(fromColumn, 0);
+        toColumn = Math.min(toColumn, this.columns - 1);
+        if (fromColumn > toColumn) {
+            return count;
+        }
+
+        int from = this.cellStarts[row * this.columns + fromColumn];
+        int to = this.cellStarts[row * this.columns + toColumn + 1];
+        System.arraycopy(this.xs, from, nearbyXs, count, to - from);
+        System.arraycopy(this.ys, from, nearbyYs, count, to - from);
+        System.arraycopy(this.values, from * this.channels, nearbyValues, count * this.channels,
+                (to - from) * this.channels);
+
+        return count + to - from;
+    }
+}
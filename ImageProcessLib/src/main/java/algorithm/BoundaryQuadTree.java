@@ -0,0 +1,192 @@
+package algorithm;
+
+import weighting.function.WeightingFunction;
+
+import java.util.Arrays;
+
+/**
+ * A quadtree over the pixels of a hole boundary, where every node holds the number of boundary pixels under it,
+ * the sum of their values and their centroid. <br>
+ * A far enough node is treated as if all of its pixels were at its centroid, so a hole pixel only has to
+ * descend into the nodes that are close to it (Barnes-Hut approximation).
+ */
+class BoundaryQuadTree {
+    private static final int LEAF_SIZE = 8;
+
+    private final int[] xs;
+    private final int[] ys;
+    private final float[] values;
+    private int nodesCount;
+    private int[] counts;
+    private double[] sums;
+    private int[] centroidXs;
+    private int[] centroidYs;
+    private int[] sizes;
+    private int[] starts;
+    private int[] ends;
+    private int[] children;
+
+    BoundaryQuadTree(Boundary boundary) {
+        int size = boundary.size();
+        this.xs = Arrays.copyOf(boundary.getXs(), size);
+        this.ys = Arrays.copyOf(boundary.getYs(), size);
+        this.values = Arrays.copyOf(boundary.getValues(), size);
+        int capacity = Math.max(16, 2 * size / LEAF_SIZE);
+        this.counts = new int[capacity];
+        this.sums = new double[capacity];
+        this.centroidXs = new int[capacity];
+        this.centroidYs = new int[capacity];
+        this.sizes = new int[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.children = new int[capacity * 4];
+
+        if (size > 0) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = 0, maxY = 0;
+            for (int i = 0; i < size; i++) {
+                minX = Math.min(minX, this.xs[i]);
+                minY = Math.min(minY, this.ys[i]);
+                maxX = Math.max(maxX, this.xs[i]);
+                maxY = Math.max(maxY, this.ys[i]);
+            }
+
+            int rootSize = Integer.highestOneBit(Math.max(Math.max(maxX - minX, maxY - minY), 1)) * 2;
+            build(0, size, minX, minY, rootSize, new int[size], new int[size], new float[size]);
+        }
+    }
+
+    /**
+     * Create the node of the pixels in [start, end) which all lie in the square (x0, y0, size).
+     *
+     * @return the index of the node.
+     */
+    private int build(int start, int end, int x0, int y0, int size,
+                      int[] tempXs, int[] tempYs, float[] tempValues) {
+        int node = allocateNode();
+        double sum = 0, sumX = 0, sumY = 0;
+
+        for (int i = start; i < end; i++) {
+            sum += this.values[i];
+            sumX += this.xs[i];
+            sumY += this.ys[i];
+        }
+
+        this.counts[node] = end - start;
+        this.sums[node] = sum;
+        this.centroidXs[node] = (int) Math.round(sumX / (end - start));
+        this.centroidYs[node] = (int) Math.round(sumY / (end - start));
+        this.sizes[node] = size;
+        this.starts[node] = start;
+        this.ends[node] = end;
+        Arrays.fill(this.children, node * 4, node * 4 + 4, -1);
+
+        if (end - start > LEAF_SIZE && size > 1) {
+            int half = size / 2;
+            int[] quadrantEnds = partition(start, end, x0 + half, y0 + half, tempXs, tempYs, tempValues);
+            int quadrantStart = start;
+
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                if (quadrantEnds[quadrant] > quadrantStart) {
+                    int child = build(quadrantStart, quadrantEnds[quadrant],
+                            x0 + (quadrant & 1) * half, y0 + (quadrant >> 1) * half, half,
+                            tempXs, tempYs, tempValues);
+                    this.children[node * 4 + quadrant] = child;
+                }
+                quadrantStart = quadrantEnds[quadrant];
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Reorder the pixels in [start, end) by quadrant: top left, top right, bottom left, bottom right.
+     *
+     * @return the end index of each quadrant.
+     */
+    private int[] partition(int start, int end, int middleX, int middleY,
+                            int[] tempXs, int[] tempYs, float[] tempValues) {
+        int[] quadrantEnds = new int[4];
+        int position = start;
+
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            for (int i = start; i < end; i++) {
+                int pixelQuadrant = (this.xs[i] < middleX ? 0 : 1) + (this.ys[i] < middleY ? 0 : 2);
+                if (pixelQuadrant == quadrant) {
+                    tempXs[position] = this.xs[i];
+                    tempYs[position] = this.ys[i];
+                    tempValues[position] = this.values[i];
+                    position++;
+                }
+            }
+            quadrantEnds[quadrant] = position;
+        }
+
+        System.arraycopy(tempXs, start, this.xs, start, end - start);
+        System.arraycopy(tempYs, start, this.ys, start, end - start);
+        System.arraycopy(tempValues, start, this.values, start, end - start);
+
+        return quadrantEnds;
+    }
+
+    private int allocateNode() {
+        if (this.nodesCount == this.counts.length) {
+            int capacity = this.nodesCount * 2;
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.sums = Arrays.copyOf(this.sums, capacity);
+            this.centroidXs = Arrays.copyOf(this.centroidXs, capacity);
+            this.centroidYs = Arrays.copyOf(this.centroidYs, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
+            this.children = Arrays.copyOf(this.children, capacity * 4);
+        }
+
+        return this.nodesCount++;
+    }
+
+    /**
+     * @param theta        the opening angle - a node of side s at distance d from the pixel is approximated
+     *                     by its centroid when s / d is smaller than theta. 0 means no approximation at all.
+     * @param accumulators scratch array of at least two floats.
+     * @return the weighted average of the boundary values for the pixel (x, y).
+     */
+    float interpolate(WeightingFunction weightingFunction, int x, int y, double theta, float[] accumulators) {
+        accumulators[0] = 0;
+        accumulators[1] = 0;
+
+        if (this.nodesCount > 0) {
+            accumulate(0, weightingFunction, x, y, theta * theta, accumulators);
+        }
+
+        return accumulators[0] / accumulators[1];
+    }
+
+    private void accumulate(int node, WeightingFunction weightingFunction, int x, int y,
+                            double squaredTheta, float[] accumulators) {
+        double distanceX = this.centroidXs[node] - x;
+        double distanceY = this.centroidYs[node] - y;
+        double squaredDistance = distanceX * distanceX + distanceY * distanceY;
+        double size = this.sizes[node];
+
+        if (squaredDistance > 0 && size * size < squaredTheta * squaredDistance) {
+            float weight = weightingFunction.calculate(x, y, this.centroidXs[node], this.centroidYs[node]);
+            accumulators[0] += weight * this.sums[node];
+            accumulators[1] += weight * this.counts[node];
+        } else if (this.children[node * 4] == -1 && this.children[node * 4 + 1] == -1 &&
+                this.children[node * 4 + 2] == -1 && this.children[node * 4 + 3] == -1) {
+            for (int i = this.starts[node]; i < this.ends[node]; i++) {
+                float weight = weightingFunction.calculate(x, y, this.xs[i], this.ys[i]);
+                accumulators[0] += weight * this.values[i];
+                accumulators[1] += weight;
+            }
+        } else {
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                int child = this.children[node * 4 + quadrant];
+                if (child != -1) {
+                    accumulate(child, weightingFunction, x, y, squaredTheta, accumulators);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package algorithm;
+
+import cache.CacheKey;
+import cache.CachedResult;
+import cache.ResultCache;
+import image.Raster;
+import metrics.AlgorithmListener;
+import utils.PixelSet;
+
+import java.util.List;
+
+/**
+ * An algorithm that looks the raster up in a ResultCache before processing it with another algorithm,
+ * and caches what that algorithm produced. <br>
+ * The key is the content of the raster with its holes and the parameters string, as the algorithms don't
+ * describe their own parameters - the string must tell apart every configuration that shares the cache.
+ * A hit only reports the invocation itself to the listener.
+ */
+public class CachingAlgorithm extends RasterProcessAlgorithm {
+    private final RasterProcessAlgorithm algorithm;
+    private final String parameters;
+    private final ResultCache cache;
+
+    CachingAlgorithm(RasterProcessAlgorithm algorithm, String parameters, ResultCache cache) {
+        this.algorithm = algorithm;
+        this.parameters = parameters;
+        this.cache = cache;
+    }
+
+    /**
+     * @return the algorithm that processes the misses.
+     */
+    public RasterProcessAlgorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    public ResultCache getCache() {
+        return this.cache;
+    }
+
+    @Override
+    protected void process(Raster raster, AlgorithmListener listener) {
+        process(raster, null, listener);
+    }
+
+    /**
+     * @param holes the holes of the raster to pass to the algorithm on a miss, or null if it should find them.
+     */
+    @Override
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        CacheKey key = CacheKey.of(raster, this.parameters);
+        CachedResult result = this.cache.get(key);
+
+        if (result != null) {
+            result.applyTo(raster);
+        } else {
+            if (holes != null) {
+                this.algorithm.process(raster, holes, listener);
+            } else {
+                this.algorithm.process(raster, listener);
+            }
+            this.cache.put(key, CachedResult.of(raster));
+        }
+    }
+}
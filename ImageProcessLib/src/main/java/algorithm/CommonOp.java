@@ -1,79 +1,207 @@
 package algorithm;
 
+import image.FloatRaster;
+import image.Raster;
 import image.Pixel;
 import org.opencv.core.Mat;
 import utils.ConnectedPixels;
+import utils.IntStack;
 import utils.PixelConnectivity;
+import utils.PixelSet;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.Stack;
-import java.util.stream.Collectors;
 
 public class CommonOp {
 
+    public static PixelSet findBoundaryPixels(Mat image, PixelSet holePixels,
+                                              PixelConnectivity pixelConnectivity) {
+        return findBoundaryPixels(FloatRaster.fromMat(image), holePixels, pixelConnectivity);
+    }
+
     /**
      * For each pixel that is a part of the hole, find it's neighbors pixels that aren't
      * a part of the hole itself according to the given pixelConnectivity method and add them to a boundary pixels set.
      */
-    public static Set<Pixel> findBoundaryPixels(Mat image, Set<Pixel> holePixels,
-                                                PixelConnectivity pixelConnectivity) {
-        Set<Pixel> boundarySet = new HashSet<>();
+    public static PixelSet findBoundaryPixels(Raster raster, PixelSet holePixels,
+                                              PixelConnectivity pixelConnectivity) {
+        int[] xOffsets = ConnectedPixels.getNeighborsXOffsets(pixelConnectivity);
+        int[] yOffsets = ConnectedPixels.getNeighborsYOffsets(pixelConnectivity);
+        int minX = raster.getWidth(), minY = raster.getHeight(), maxX = -1, maxY = -1;
+
+        for (int i = 0; i < holePixels.size(); i++) {
+            minX = Math.min(minX, holePixels.xAt(i));
+            maxX = Math.max(maxX, holePixels.xAt(i));
+            minY = Math.min(minY, holePixels.yAt(i));
+            maxY = Math.max(maxY, holePixels.yAt(i));
+        }
+
+        // The boundary lies within the bounding box of the hole grown by a single pixel
+        minX = Math.max(minX - 1, 0);
+        minY = Math.max(minY - 1, 0);
+        maxX = Math.min(maxX + 1, raster.getWidth() - 1);
+        maxY = Math.min(maxY + 1, raster.getHeight() - 1);
+        PixelSet boundarySet = new PixelSet(raster.getWidth(), minX, minY,
+                Math.max(maxX - minX + 1, 0), Math.max(maxY - minY + 1, 0), 16);
+
+        for (int i = 0; i < holePixels.size(); i++) {
+            int x = holePixels.xAt(i);
+            int y = holePixels.yAt(i);
 
-        holePixels.forEach(holePixel -> {
-            List<Pixel> neighbors = ConnectedPixels.getPixelNeighbors(holePixel, pixelConnectivity);
-            boundarySet.addAll(neighbors.stream()
-                    .filter(neighbor -> !isHole(image, neighbor))
-                    .collect(Collectors.toList()));
-        });
+            for (int n = 0; n < xOffsets.length; n++) {
+                int neighborX = x + xOffsets[n];
+                int neighborY = y + yOffsets[n];
+
+                if (raster.contains(neighborX, neighborY) && !raster.isHole(neighborX, neighborY)) {
+                    boundarySet.add(neighborX, neighborY);
+                }
+            }
+        }
 
         return boundarySet;
     }
 
+    public static PixelSet findHolePixels(Mat image) {
+        return findHolePixels(FloatRaster.fromMat(image));
+    }
+
     /**
-     * @param image Mat object that contains an image to find a hole in it.
+     * @param raster Raster object that contains an image to find a hole in it.
      * @return A set of pixels that represents a hole in the image.
      */
-    public static Set<Pixel> findHolePixels(Mat image) {
-        Set<Pixel> result = new HashSet<>();
-        Pixel begin = findHoleRepresentative(image);
-
-        if (begin != null) {
-            Stack<Pixel> stack = new Stack<>();
-            stack.add(begin);
-
-            while (!stack.isEmpty()) {
-                Pixel pixel = stack.pop();
-                result.add(pixel);
-                ConnectedPixels.getPixelNeighbors(pixel, PixelConnectivity.EightConnected).stream()
-                        .filter(neighbor -> !result.contains(neighbor))
-                        .filter(neighbor -> isHole(image, neighbor))
-                        .forEach(stack::push);
+    public static PixelSet findHolePixels(Raster raster) {
+        return findHolePixels(raster, PixelConnectivity.EightConnected, null);
+    }
+
+    /**
+     * Find the first hole of the image with a scanline flood fill, where hole pixels are connected according to
+     * the 8-connected neighbors method, and collect its boundary in the same pass. <br>
+     * Each popped seed is extended to the whole horizontal run of hole pixels it belongs to, and the rows above
+     * and below the run are scanned once - for the runs of hole pixels to visit next, and for the boundary pixels.
+     *
+     * @param raster            Raster object that contains an image to find a hole in it.
+     * @param pixelConnectivity the neighbors method of the boundary, like in findBoundaryPixels.
+     * @param boundary          a set that may hold any pixel of the image, receives the boundary pixels of the hole.
+     *                          May be null if the boundary isn't needed.
+     * @return A set of pixels that represents a hole in the image.
+     */
+    public static PixelSet findHolePixels(Raster raster, PixelConnectivity pixelConnectivity,
+                                          PixelSet boundary) {
+        int width = raster.getWidth();
+        PixelSet result = new PixelSet(width, raster.getHeight());
+        int begin = findHoleRepresentative(raster);
+
+        if (begin != -1) {
+            boolean diagonals = pixelConnectivity == PixelConnectivity.EightConnected;
+            IntStack seeds = new IntStack();
+            seeds.push(begin);
+
+            while (!seeds.isEmpty()) {
+                int seed = seeds.pop();
+                int x = seed % width;
+                int y = seed / width;
+
+                // Runs are added as a whole, so a seed of a visited run is skipped
+                if (result.contains(x, y)) {
+                    continue;
+                }
+
+                int left = x;
+                int right = x;
+                while (left > 0 && raster.isHole(left - 1, y)) {
+                    left--;
+                }
+                while (right < width - 1 && raster.isHole(right + 1, y)) {
+                    right++;
+                }
+                for (int runX = left; runX <= right; runX++) {
+                    result.add(runX, y);
+                }
+
+                if (boundary != null) {
+                    if (left > 0) {
+                        boundary.add(left - 1, y);
+                    }
+                    if (right < width - 1) {
+                        boundary.add(right + 1, y);
+                    }
+                }
+                scanNeighborRow(raster, y - 1, left, right, diagonals, result, boundary, seeds);
+                scanNeighborRow(raster, y + 1, left, right, diagonals, result, boundary, seeds);
             }
         }
         return result;
     }
 
     /**
-     * @return A pixel which is the first hole pixel that was found in a linear scan.
+     * Scan the row next to the run [left, right] of a hole, one pixel past each end of the run as the hole pixels
+     * are 8-connected. Push a seed for every run of unvisited hole pixels, and add the boundary pixels of the run.
+     */
+    private static void scanNeighborRow(Raster raster, int y, int left, int right, boolean diagonals,
+                                        PixelSet hole, PixelSet boundary, IntStack seeds) {
+        if (y < 0 || y >= raster.getHeight()) {
+            return;
+        }
+
+        int width = raster.getWidth();
+        boolean inRun = false;
+
+        for (int x = Math.max(left - 1, 0); x <= Math.min(right + 1, width - 1); x++) {
+            if (raster.isHole(x, y)) {
+                if (!inRun && !hole.contains(x, y)) {
+                    seeds.push(y * width + x);
+                }
+                inRun = true;
+            } else {
+                inRun = false;
+                if (boundary != null && (diagonals || (x >= left && x <= right))) {
+                    boundary.add(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find every hole in the image with a single two-pass connected component labeling scan,
+     * where hole pixels are connected according to the 8-connected neighbors method.
+     *
+     * @param raster Raster object that contains an image to find the holes in it.
+     * @return A list of pixel sets where each set represents a different hole, ordered by the position
+     * of the first pixel of each hole in a linear scan. The pixels of each hole are in scan order.
+     */
+    public static List<PixelSet> findAllHoles(Raster raster) {
+        return new HoleLabeler(raster).finish();
+    }
+
+    /**
+     * Same as findAllHoles(Raster), and find the boundary of each hole in the same pass, according to the given
+     * pixelConnectivity method. Each boundary is identical to findBoundaryPixels, including its order.
+     *
+     * @param boundaries receives the boundary of each hole, in the order of the holes.
+     */
+    public static List<PixelSet> findAllHoles(Raster raster, PixelConnectivity pixelConnectivity,
+                                              List<PixelSet> boundaries) {
+        return new HoleLabeler(raster).finish(pixelConnectivity, boundaries);
+    }
+
+    /**
+     * @return The packed index (y * width + x) of the first hole pixel that was found in a linear scan, or -1.
      */
-    private static Pixel findHoleRepresentative(Mat image) {
-        for (int y = 0; y < image.height(); y++) {
-            for (int x = 0; x < image.width(); x++) {
-                if (isHole(image, x, y)) {
-                    return new Pixel(x, y);
+    private static int findHoleRepresentative(Raster raster) {
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                if (raster.isHole(x, y)) {
+                    return y * raster.getWidth() + x;
                 }
             }
         }
-        return null;
+        return -1;
     }
 
     public static boolean isHole(Mat image, Pixel pixel) {
-        return isHole(image, pixel.getX(), pixel.getY());
+        return image.get(pixel.getY(), pixel.getX())[0] == FloatRaster.HOLE_VALUE;
     }
 
-    private static boolean isHole(Mat image, int x, int y) {
-        return image.get(y, x)[0] == -1;
+    public static boolean isHole(Raster raster, Pixel pixel) {
+        return raster.isHole(pixel.getX(), pixel.getY());
     }
 }
@@ -0,0 +1,195 @@
+package algorithm;
+
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.Phase;
+import metrics.PhaseRecorder;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes the same result as the hole filling algorithm for radial weighting functions. <br>
+ * When the weight depends only on the offset between two pixels, the numerator and the denominator of every
+ * hole pixel are 2D convolutions of the boundary values and of the boundary indicator with a single kernel.
+ * Both are computed with OpenCV's DFT over the bounding box of the hole, so a hole costs O(N log N)
+ * (N = the bounding box area) instead of O(H * B). <br>
+ * The DFT has an absolute error relative to the largest kernel weights, so a denominator that is tiny next to it
+ * (e.g. far inside a large hole with a large z, where the weights span more orders of magnitude than a double)
+ * can't be trusted - it may even come out zero or negative. The pixels of such denominators are computed by
+ * a direct summation over the boundary instead.
+ */
+public class FftHoleFillingAlgorithm extends RasterProcessAlgorithm {
+    // The DFT error of a convolution value is about ulp(1) * log2(N) * ||data|| * ||kernel||, up to this factor
+    private static final double DFT_ERROR_FACTOR = 4;
+    // The largest error of a trusted denominator relative to it, below the error of the float sums of the direct path
+    private static final double MAX_RELATIVE_ERROR = 1e-6;
+
+    private final PixelConnectivity pixelConnectivity;
+    private final WeightingFunction weightingFunction;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param weightingFunction a radial weighting function.
+     * @param pool              the pool to fill independent holes on, or null to fill them serially.
+     */
+    FftHoleFillingAlgorithm(WeightingFunction weightingFunction,
+                            PixelConnectivity pixelConnectivity,
+                            ForkJoinPool pool) {
+        if (!weightingFunction.isRadial()) {
+            throw new IllegalArgumentException("The FFT hole filling algorithm requires a radial weighting function.");
+        }
+
+        this.weightingFunction = weightingFunction;
+        this.pixelConnectivity = pixelConnectivity;
+        this.pool = pool;
+    }
+
+    private void fillHole(Raster raster, PixelSet holeCoords, PixelSet foundBoundary, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        WeightingFunction weightingFunction = recorder.countEvaluations(this.weightingFunction);
+        PixelSet boundary = foundBoundary != null ? foundBoundary :
+                CommonOp.findBoundaryPixels(raster, holeCoords, this.pixelConnectivity);
+        recorder.lap(Phase.BoundaryExtraction);
+        if (boundary.isEmpty()) {
+            return;
+        }
+
+        // The boundary surrounds the hole, except where the hole touches the image border
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (PixelSet pixels : new PixelSet[]{holeCoords, boundary}) {
+            for (int i = 0; i < pixels.size(); i++) {
+                minX = Math.min(minX, pixels.xAt(i));
+                maxX = Math.max(maxX, pixels.xAt(i));
+                minY = Math.min(minY, pixels.yAt(i));
+                maxY = Math.max(maxY, pixels.yAt(i));
+            }
+        }
+
+        int width = maxX - minX + 1;
+        int height = maxY - minY + 1;
+        // Padding to at least 2 * size - 1 keeps the circular convolution from wrapping around
+        int paddedWidth = Core.getOptimalDFTSize(2 * width - 1);
+        int paddedHeight = Core.getOptimalDFTSize(2 * height - 1);
+
+        double[] values = new double[paddedWidth * paddedHeight];
+        double[] indicator = new double[paddedWidth * paddedHeight];
+        for (int i = 0; i < boundary.size(); i++) {
+            int index = (boundary.yAt(i) - minY) * paddedWidth + boundary.xAt(i) - minX;
+            values[index] = raster.get(boundary.xAt(i), boundary.yAt(i));
+            indicator[index] = 1;
+        }
+
+        double[] kernel = new double[paddedWidth * paddedHeight];
+        double kernelSquares = 0;
+        for (int dy = -(height - 1); dy < height; dy++) {
+            for (int dx = -(width - 1); dx < width; dx++) {
+                // A hole pixel is never a boundary pixel, so the zero offset never contributes
+                if (dx != 0 || dy != 0) {
+                    double weight = weightingFunction.calculate(0, 0, dx, dy);
+                    kernel[Math.floorMod(dy, paddedHeight) * paddedWidth + Math.floorMod(dx, paddedWidth)] = weight;
+                    kernelSquares += weight * weight;
+                }
+            }
+        }
+
+        Mat kernelSpectrum = forwardDft(kernel, paddedWidth, paddedHeight);
+        double[] numerators = convolve(values, kernelSpectrum, paddedWidth, paddedHeight);
+        double[] denominators = convolve(indicator, kernelSpectrum, paddedWidth, paddedHeight);
+        kernelSpectrum.release();
+
+        // The normalized values are at most 1, like the indicators, so a numerator is as accurate as its denominator
+        double log2Size = Math.log((double) paddedWidth * paddedHeight) / Math.log(2);
+        double denominatorError = DFT_ERROR_FACTOR * Math.ulp(1.0) * log2Size *
+                Math.sqrt(boundary.size()) * Math.sqrt(kernelSquares);
+        double minDenominator = denominatorError / MAX_RELATIVE_ERROR;
+        Boundary directBoundary = null;
+        float[] weights = null;
+        float[] result = new float[1];
+
+        for (int i = 0; i < holeCoords.size(); i++) {
+            int x = holeCoords.xAt(i);
+            int y = holeCoords.yAt(i);
+            int index = (y - minY) * paddedWidth + x - minX;
+
+            if (denominators[index] >= minDenominator) {
+                raster.set(x, y, (float) (numerators[index] / denominators[index]));
+            } else {
+                if (directBoundary == null) {
+                    directBoundary = Boundary.create(raster, boundary);
+                    weights = new float[directBoundary.size()];
+                }
+                directBoundary.interpolate(weightingFunction, x, y, weights, result);
+                raster.set(x, y, result[0]);
+            }
+            raster.clearHole(x, y);
+        }
+        recorder.lap(Phase.Interpolation);
+        recorder.holeProcessed(holeCoords.size(), boundary.size());
+    }
+
+    private static Mat forwardDft(double[] data, int width, int height) {
+        Mat mat = new Mat(height, width, CvType.CV_64FC1);
+        mat.put(0, 0, data);
+        Mat spectrum = new Mat();
+        Core.dft(mat, spectrum);
+        mat.release();
+
+        return spectrum;
+    }
+
+    /**
+     * @return the circular convolution of data with the kernel whose spectrum is given.
+     */
+    private static double[] convolve(double[] data, Mat kernelSpectrum, int width, int height) {
+        Mat spectrum = forwardDft(data, width, height);
+        Core.mulSpectrums(spectrum, kernelSpectrum, spectrum, 0);
+        Mat result = new Mat();
+        Core.idft(spectrum, result, Core.DFT_SCALE | Core.DFT_REAL_OUTPUT, 0);
+        spectrum.release();
+
+        double[] convolution = new double[width * height];
+        result.get(0, 0, convolution);
+        result.release();
+
+        return convolution;
+    }
+
+    /**
+     * Find all the holes in the image and fill each one of them against its own boundary.
+     */
+    @Override
+    protected void process(Raster raster, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(raster, this.pixelConnectivity, boundaries);
+        recorder.lap(Phase.HoleDetection);
+        fillHoles(raster, holes, boundaries, listener);
+    }
+
+    @Override
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        fillHoles(raster, holes, null, listener);
+    }
+
+    /**
+     * @param boundaries the boundary of each hole, or null to find the boundary of each hole on its own.
+     */
+    private void fillHoles(Raster raster, List<PixelSet> holes, List<PixelSet> boundaries,
+                           AlgorithmListener listener) {
+        if (raster.getChannels() != 1) {
+            throw new IllegalArgumentException(
+                    "The FFT hole filling algorithm supports single channel images only.");
+        }
+
+        HoleFillTask.forEachHole(this.pool, holes.size(), hole -> fillHole(raster, holes.get(hole),
+                boundaries == null ? null : boundaries.get(hole), listener));
+    }
+}
@@ -0,0 +1,103 @@
+package algorithm;
+
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.Phase;
+import metrics.PhaseRecorder;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Approximates the hole filling algorithm with a quadtree over the boundary of each hole.
+ * Groups of boundary pixels that are far from a hole pixel, relative to the size of the group,
+ * contribute through their aggregated value at their centroid. <br>
+ * The cost of a hole is O(H log B) instead of O(H * B), and the opening angle trades accuracy for speed:
+ * an opening angle of 0 gives the exact result of the hole filling algorithm.
+ */
+public class HierarchicalHoleFillingAlgorithm extends RasterProcessAlgorithm {
+
+    private final PixelConnectivity pixelConnectivity;
+    private final WeightingFunction weightingFunction;
+    private final double openingAngle;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param openingAngle a group of boundary pixels that fits in a square of side s is approximated by its
+     *                     centroid for hole pixels farther than s / openingAngle from it.
+     * @param pool         the pool to compute the hole pixels on, or null to compute them serially.
+     */
+    HierarchicalHoleFillingAlgorithm(WeightingFunction weightingFunction,
+                                     PixelConnectivity pixelConnectivity,
+                                     double openingAngle,
+                                     ForkJoinPool pool) {
+        if (openingAngle < 0) {
+            throw new IllegalArgumentException("Opening angle must not be negative, got " + openingAngle);
+        }
+
+        this.weightingFunction = weightingFunction;
+        this.pixelConnectivity = pixelConnectivity;
+        this.openingAngle = openingAngle;
+        this.pool = pool;
+    }
+
+    private void fillHole(Raster raster, PixelSet holeCoords, PixelSet foundBoundary, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        WeightingFunction weightingFunction = recorder.countEvaluations(this.weightingFunction);
+        Boundary boundaryPixels = Boundary.create(raster, foundBoundary != null ? foundBoundary :
+                CommonOp.findBoundaryPixels(raster, holeCoords, this.pixelConnectivity));
+        BoundaryQuadTree boundary = new BoundaryQuadTree(boundaryPixels);
+        recorder.lap(Phase.BoundaryExtraction);
+        HoleFillTask.fill(this.pool, holeCoords, 2,
+                (x, y, accumulators, values) ->
+                        values[0] = calcPixelNewVal(weightingFunction, boundary, x, y, accumulators), raster);
+        recorder.lap(Phase.Interpolation);
+        recorder.holeProcessed(holeCoords.size(), boundaryPixels.size());
+    }
+
+    /**
+     * @param x            the column of a pixel that is a part of the hole.
+     * @param y            the row of a pixel that is a part of the hole.
+     * @param accumulators scratch array for the numerator and the denominator.
+     * @return the new value of the pixel according to the algorithm calculation.
+     */
+    private float calcPixelNewVal(WeightingFunction weightingFunction, BoundaryQuadTree boundary,
+                                  int x, int y, float[] accumulators) {
+        return boundary.interpolate(weightingFunction, x, y, this.openingAngle, accumulators);
+    }
+
+    /**
+     * Find all the holes in the image and fill each one of them against its own boundary.
+     */
+    @Override
+    protected void process(Raster raster, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(raster, this.pixelConnectivity, boundaries);
+        recorder.lap(Phase.HoleDetection);
+        fillHoles(raster, holes, boundaries, listener);
+    }
+
+    @Override
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        fillHoles(raster, holes, null, listener);
+    }
+
+    /**
+     * @param boundaries the boundary of each hole, or null to find the boundary of each hole on its own.
+     */
+    private void fillHoles(Raster raster, List<PixelSet> holes, List<PixelSet> boundaries,
+                           AlgorithmListener listener) {
+        if (raster.getChannels() != 1) {
+            throw new IllegalArgumentException(
+                    "The hierarchical hole filling algorithm supports single channel images only.");
+        }
+
+        HoleFillTask.forEachHole(this.pool, holes.size(), hole -> fillHole(raster, holes.get(hole),
+                boundaries == null ? null : boundaries.get(hole), listener));
+    }
+}
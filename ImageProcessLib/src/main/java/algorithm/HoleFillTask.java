@@ -0,0 +1,150 @@
+package algorithm;
+
+import image.Raster;
+import utils.PixelSet;
+import utils.ScratchBuffers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Computes the new values of a set of hole pixels, either serially or by splitting the pixels into
+ * row-aligned chunks that are computed concurrently on a ForkJoinPool. <br>
+ * Every pixel value is computed by the same code in the same order of operations in both modes,
+ * so the parallel result is identical to the serial one.
+ */
+class HoleFillTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    interface PixelValueCalculator {
+        /**
+         * @param scratch a scratch array private to the calling thread, at least as long as the requested size.
+         * @param values  receives the new value of each channel of the pixel.
+         */
+        void calculate(int x, int y, float[] scratch, float[] values);
+    }
+
+    private final PixelSet pixels;
+    private final int from;
+    private final int to;
+    private final int threshold;
+    private final int scratchSize;
+    private final PixelValueCalculator calculator;
+    private final Raster raster;
+
+    private HoleFillTask(PixelSet pixels, int from, int to, int threshold, int scratchSize,
+                         PixelValueCalculator calculator, Raster raster) {
+        this.pixels = pixels;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.scratchSize = scratchSize;
+        this.calculator = calculator;
+        this.raster = raster;
+    }
+
+    /**
+     * @param pool        the pool to run on, or null to compute the values serially on the calling thread.
+     * @param holePixels  the pixels to compute. Chunks are row-aligned when the pixels are in scan order.
+     * @param scratchSize the size of the scratch array handed to the calculator.
+     * @param calculator  computes the new value of a single hole pixel. Must only read pixels that aren't in holePixels.
+     * @param raster      the raster that receives the new values. The filled pixels are removed from its hole mask.
+     */
+    static void fill(ForkJoinPool pool, PixelSet holePixels, int scratchSize,
+                     PixelValueCalculator calculator, Raster raster) {
+        HoleFillTask task = new HoleFillTask(holePixels, 0, holePixels.size(),
+                pool == null ? Integer.MAX_VALUE : Math.max(1, holePixels.size() / (pool.getParallelism() * 4)),
+                scratchSize, calculator, raster);
+
+        if (pool == null || holePixels.size() < 2) {
+            task.compute();
+        } else {
+            invoke(pool, task);
+        }
+    }
+
+    /**
+     * Fill each of the given holes, where independent holes are filled concurrently when a pool is given.
+     *
+     * @param pool       the pool to run on, or null to fill the holes one after the other on the calling thread.
+     * @param holesCount the number of holes to fill. Holes must not be neighbors of each other.
+     * @param filler     fills the hole of the given index.
+     */
+    static void forEachHole(ForkJoinPool pool, int holesCount, IntConsumer filler) {
+        if (pool == null || holesCount < 2) {
+            for (int hole = 0; hole < holesCount; hole++) {
+                filler.accept(hole);
+            }
+        } else {
+            invoke(pool, new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[holesCount];
+                    for (int i = 0; i < tasks.length; i++) {
+                        int hole = i;
+                        tasks[i] = ForkJoinTask.adapt(() -> filler.accept(hole));
+                    }
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    /**
+     * Run the task on the pool, or directly when the calling thread is already one of the pool workers.
+     */
+    private static void invoke(ForkJoinPool pool, ForkJoinTask<?> task) {
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    @Override
+    protected void compute() {
+        int split = this.to - this.from > this.threshold ? findRowAlignedSplit() : -1;
+
+        if (split == -1) {
+            float[] scratch = ScratchBuffers.current().floats(ScratchBuffers.Slot.Weights, this.scratchSize);
+            float[] values = new float[this.raster.getChannels()];
+            for (int i = this.from; i < this.to; i++) {
+                int x = this.pixels.xAt(i);
+                int y = this.pixels.yAt(i);
+                this.calculator.calculate(x, y, scratch, values);
+                for (int channel = 0; channel < values.length; channel++) {
+                    this.raster.set(x, y, channel, values[channel]);
+                }
+                this.raster.clearHole(x, y);
+            }
+        } else {
+            invokeAll(new HoleFillTask(this.pixels, this.from, split, this.threshold, this.scratchSize,
+                            this.calculator, this.raster),
+                    new HoleFillTask(this.pixels, split, this.to, this.threshold, this.scratchSize,
+                            this.calculator, this.raster));
+        }
+    }
+
+    /**
+     * @return the index of the first pixel of the row that is closest to the middle of the range,
+     * or -1 if the whole range is a single row.
+     */
+    private int findRowAlignedSplit() {
+        int middle = (this.from + this.to) >>> 1;
+
+        for (int forward = middle, backward = middle; forward < this.to || backward > this.from; forward++, backward--) {
+            if (forward < this.to && this.pixels.yAt(forward) != this.pixels.yAt(forward - 1)) {
+                return forward;
+            }
+            if (backward > this.from && this.pixels.yAt(backward) != this.pixels.yAt(backward - 1)) {
+                return backward;
+            }
+        }
+
+        return -1;
+    }
+}
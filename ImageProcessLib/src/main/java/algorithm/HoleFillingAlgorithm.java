@@ -1,59 +1,90 @@
 package algorithm;
 
-import image.Pixel;
-import org.opencv.core.Mat;
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.Phase;
+import metrics.PhaseRecorder;
 import utils.PixelConnectivity;
+import utils.PixelSet;
 import weighting.function.WeightingFunction;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-public class HoleFillingAlgorithm implements ImageProcessAlgorithm {
+public class HoleFillingAlgorithm extends RasterProcessAlgorithm {
 
     private final PixelConnectivity pixelConnectivity;
     private final WeightingFunction weightingFunction;
-    private Set<Pixel> boundary;
-    private Set<Pixel> holeCoords;
-    private Mat image;
+    private final ForkJoinPool pool;
 
     HoleFillingAlgorithm(WeightingFunction weightingFunction,
                          PixelConnectivity pixelConnectivity) {
-        this.holeCoords = new HashSet<>();
-        this.boundary = new HashSet<>();
+        this(weightingFunction, pixelConnectivity, null);
+    }
+
+    /**
+     * @param pool the pool to compute the hole pixels on, or null to compute them serially.
+     */
+    HoleFillingAlgorithm(WeightingFunction weightingFunction,
+                         PixelConnectivity pixelConnectivity,
+                         ForkJoinPool pool) {
+        this.pool = pool;
         this.weightingFunction = weightingFunction;
         this.pixelConnectivity = pixelConnectivity;
     }
 
     /**
-     * Fill the hole pixels set and the boundary pixels set.
+     * Find the boundary pixels set of the hole, unless it was found together with the hole.
      * Then, foreach pixel that's a part of the hole, calculate it's new value and set the new value to the image itself.
      */
-    private void fillHole() {
-        this.holeCoords = CommonOp.findHolePixels(this.image);
-        this.boundary = CommonOp.findBoundaryPixels(this.image, this.holeCoords, this.pixelConnectivity);
-        this.holeCoords.forEach(holeCoord -> this.image.put(holeCoord.getY(), holeCoord.getX(), calcPixelNewVal(holeCoord)));
+    private void fillHole(Raster raster, PixelSet holeCoords, PixelSet foundBoundary, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        WeightingFunction weightingFunction = recorder.countEvaluations(this.weightingFunction);
+        Boundary boundary = Boundary.create(raster, foundBoundary != null ? foundBoundary :
+                CommonOp.findBoundaryPixels(raster, holeCoords, this.pixelConnectivity));
+        recorder.lap(Phase.BoundaryExtraction);
+        HoleFillTask.fill(this.pool, holeCoords, boundary.size(),
+                (x, y, weights, values) ->
+                        calcPixelNewVal(weightingFunction, boundary, x, y, weights, values), raster);
+        recorder.lap(Phase.Interpolation);
+        recorder.holeProcessed(holeCoords.size(), boundary.size());
     }
 
     /**
-     * @param pixel a pixel that is a part of the hole.
-     * @return the new value of the pixel according to the algorithm calculation.
+     * @param x       the column of a pixel that is a part of the hole.
+     * @param y       the row of a pixel that is a part of the hole.
+     * @param weights scratch array for the weights of the pixel against the boundary.
+     * @param values  receives the new value of each channel of the pixel according to the algorithm calculation.
      */
-    private float calcPixelNewVal(Pixel pixel) {
-        float numerator = 0, denominator = 0;
-
-        for (Pixel boundaryPixel : this.boundary) {
-            float weightingFunctionResult = this.weightingFunction.calculate(pixel, boundaryPixel);
-            numerator += weightingFunctionResult * this.image.get(boundaryPixel.getY(), boundaryPixel.getX())[0];
-            denominator += weightingFunctionResult;
-        }
+    private static void calcPixelNewVal(WeightingFunction weightingFunction, Boundary boundary,
+                                        int x, int y, float[] weights, float[] values) {
+        boundary.interpolate(weightingFunction, x, y, weights, values);
+    }
 
-        return numerator / denominator;
+    /**
+     * Find all the holes in the image and fill each one of them against its own boundary.
+     */
+    @Override
+    protected void process(Raster raster, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(raster, this.pixelConnectivity, boundaries);
+        recorder.lap(Phase.HoleDetection);
+        fillHoles(raster, holes, boundaries, listener);
     }
 
     @Override
-    public Mat invoke(Mat image) {
-        this.image = image;
-        fillHole();
-        return image;
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        fillHoles(raster, holes, null, listener);
+    }
+
+    /**
+     * @param boundaries the boundary of each hole, or null to find the boundary of each hole on its own.
+     */
+    private void fillHoles(Raster raster, List<PixelSet> holes, List<PixelSet> boundaries,
+                           AlgorithmListener listener) {
+        HoleFillTask.forEachHole(this.pool, holes.size(), hole -> fillHole(raster, holes.get(hole),
+                boundaries == null ? null : boundaries.get(hole), listener));
     }
 }
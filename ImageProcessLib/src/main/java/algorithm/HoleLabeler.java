@@ -0,0 +1,225 @@
+package algorithm;
+
+import image.Raster;
+import utils.ConnectedPixels;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import utils.ScratchBuffers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds every hole of a raster with a two-pass connected component labeling, where hole pixels are connected
+ * according to the 8-connected neighbors method. <br>
+ * The first pass only looks at the current row and the one above it, so it's fed one row at a time - e.g. by
+ * the pass that writes the rows of the raster, right after each row is written - and the holes are collected
+ * by finish(). <br>
+ * The labels are kept in a scratch array of the calling thread, so a labeler must be fed and finished on a single
+ * thread, without finding other holes on it in between.
+ */
+public class HoleLabeler {
+    private final Raster raster;
+    private final int[] labels;
+    private int[] parents = new int[16];
+    private int labelsCount;
+    private int nextRow;
+
+    public HoleLabeler(Raster raster) {
+        this.raster = raster;
+        // Every label is written by the first pass, so the reused array doesn't have to be cleared
+        this.labels = ScratchBuffers.current().ints(ScratchBuffers.Slot.Labels,
+                raster.getWidth() * raster.getHeight());
+    }
+
+    /**
+     * First pass over the next row - assign provisional labels and record which labels are connected.
+     * The rows must be scanned in order, from the first row.
+     *
+     * @param y the row, whose holes must be already marked in the raster.
+     */
+    public void scanRow(int y) {
+        if (y != this.nextRow) {
+            throw new IllegalArgumentException("Expected row " + this.nextRow + ", got " + y);
+        }
+
+        int width = this.raster.getWidth();
+        int[] labels = this.labels;
+
+        for (int x = 0; x < width; x++) {
+            if (this.raster.isHole(x, y)) {
+                int label = 0;
+                if (x > 0) {
+                    label = joinLabels(label, labels[y * width + x - 1]);
+                }
+                if (y > 0) {
+                    int above = (y - 1) * width + x;
+                    if (x > 0) {
+                        label = joinLabels(label, labels[above - 1]);
+                    }
+                    label = joinLabels(label, labels[above]);
+                    if (x < width - 1) {
+                        label = joinLabels(label, labels[above + 1]);
+                    }
+                }
+
+                if (label == 0) {
+                    label = ++this.labelsCount;
+                    if (label == this.parents.length) {
+                        this.parents = Arrays.copyOf(this.parents, this.parents.length * 2);
+                    }
+                    this.parents[label] = label;
+                }
+
+                labels[y * width + x] = label;
+            } else {
+                labels[y * width + x] = 0;
+            }
+        }
+
+        this.nextRow++;
+    }
+
+    /**
+     * @return true if a hole pixel was scanned so far.
+     */
+    public boolean hasHoles() {
+        return this.labelsCount > 0;
+    }
+
+    /**
+     * Scan the rows that weren't scanned yet, and collect the holes.
+     *
+     * @return A list of pixel sets where each set represents a different hole, ordered by the position
+     * of the first pixel of each hole in a linear scan. The pixels of each hole are in scan order.
+     */
+    public List<PixelSet> finish() {
+        return finish(null, null);
+    }
+
+    /**
+     * Scan the rows that weren't scanned yet, and collect the holes together with their boundaries - each hole
+     * pixel is checked against its neighbors as it's grouped, instead of walking every hole again.
+     *
+     * @param pixelConnectivity the neighbors method of the boundaries, or null if they aren't needed.
+     * @param boundaries        receives the boundary of each hole, in the order of the holes. Each boundary is
+     *                          identical to CommonOp.findBoundaryPixels, in the same order.
+     * @return A list of pixel sets where each set represents a different hole, ordered by the position
+     * of the first pixel of each hole in a linear scan. The pixels of each hole are in scan order.
+     */
+    public List<PixelSet> finish(PixelConnectivity pixelConnectivity, List<PixelSet> boundaries) {
+        int width = this.raster.getWidth();
+        int height = this.raster.getHeight();
+        int[] labels = this.labels;
+
+        while (this.nextRow < height) {
+            scanRow(this.nextRow);
+        }
+        int labelsCount = this.labelsCount;
+
+        // Measure the bounding box and the size of each hole
+        int[] minX = new int[labelsCount + 1], minY = new int[labelsCount + 1];
+        int[] maxX = new int[labelsCount + 1], maxY = new int[labelsCount + 1];
+        int[] counts = new int[labelsCount + 1];
+        Arrays.fill(minX, width);
+        Arrays.fill(minY, height);
+        Arrays.fill(maxX, -1);
+        Arrays.fill(maxY, -1);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int label = labels[y * width + x];
+                if (label != 0) {
+                    int root = find(label);
+                    labels[y * width + x] = root;
+                    minX[root] = Math.min(minX[root], x);
+                    maxX[root] = Math.max(maxX[root], x);
+                    minY[root] = Math.min(minY[root], y);
+                    maxY[root] = Math.max(maxY[root], y);
+                    counts[root]++;
+                }
+            }
+        }
+
+        // Second pass - group the pixels by the root of their label
+        PixelSet[] holeOfRoot = new PixelSet[labelsCount + 1];
+        PixelSet[] boundaryOfRoot = pixelConnectivity == null ? null : new PixelSet[labelsCount + 1];
+        int[] xOffsets = pixelConnectivity == null ? null : ConnectedPixels.getNeighborsXOffsets(pixelConnectivity);
+        int[] yOffsets = pixelConnectivity == null ? null : ConnectedPixels.getNeighborsYOffsets(pixelConnectivity);
+        List<PixelSet> holes = new ArrayList<>();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int root = labels[y * width + x];
+                if (root != 0) {
+                    if (holeOfRoot[root] == null) {
+                        holeOfRoot[root] = new PixelSet(width, minX[root], minY[root],
+                                maxX[root] - minX[root] + 1, maxY[root] - minY[root] + 1, counts[root]);
+                        holes.add(holeOfRoot[root]);
+                        if (boundaryOfRoot != null) {
+                            // The boundary lies within the bounding box of the hole grown by a single pixel
+                            int boundaryMinX = Math.max(minX[root] - 1, 0);
+                            int boundaryMinY = Math.max(minY[root] - 1, 0);
+                            boundaryOfRoot[root] = new PixelSet(width, boundaryMinX, boundaryMinY,
+                                    Math.min(maxX[root] + 1, width - 1) - boundaryMinX + 1,
+                                    Math.min(maxY[root] + 1, height - 1) - boundaryMinY + 1, 16);
+                            boundaries.add(boundaryOfRoot[root]);
+                        }
+                    }
+                    holeOfRoot[root].add(x, y);
+
+                    if (boundaryOfRoot != null) {
+                        // The labels mark the holes as they were scanned, the neighbors without a label aren't holes
+                        for (int n = 0; n < xOffsets.length; n++) {
+                            int neighborX = x + xOffsets[n];
+                            int neighborY = y + yOffsets[n];
+                            if (neighborX >= 0 && neighborX < width && neighborY >= 0 && neighborY < height &&
+                                    labels[neighborY * width + neighborX] == 0) {
+                                boundaryOfRoot[root].add(neighborX, neighborY);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return holes;
+    }
+
+    /**
+     * @return the label of a pixel that has both the given label and a previously scanned neighbor
+     * with neighborLabel (0 stands for no label). Both labels are marked as connected.
+     */
+    private int joinLabels(int label, int neighborLabel) {
+        if (neighborLabel == 0) {
+            return label;
+        }
+        if (label == 0) {
+            return neighborLabel;
+        }
+
+        union(label, neighborLabel);
+        return label;
+    }
+
+    private int find(int label) {
+        int[] parents = this.parents;
+        while (parents[label] != label) {
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
+    }
+
+    private void union(int firstLabel, int secondLabel) {
+        int firstRoot = find(firstLabel);
+        int secondRoot = find(secondLabel);
+
+        if (firstRoot < secondRoot) {
+            this.parents[secondRoot] = firstRoot;
+        } else if (secondRoot < firstRoot) {
+            this.parents[firstRoot] = secondRoot;
+        }
+    }
+}
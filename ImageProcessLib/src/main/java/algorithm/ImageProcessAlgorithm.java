@@ -1,7 +1,22 @@
 package algorithm;
 
+import metrics.AlgorithmListener;
+import metrics.PhaseRecorder;
 import org.opencv.core.Mat;
 
 public interface ImageProcessAlgorithm {
     Mat invoke(Mat image);
+
+    /**
+     * Same as invoke(Mat), and report the measurements of the invocation to the listener.
+     * Algorithms that don't report their phases only report the invocation itself.
+     */
+    default Mat invoke(Mat image, AlgorithmListener listener) {
+        listener.invocationStarted(this, image.width(), image.height());
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        Mat result = invoke(image);
+        recorder.invocationCompleted(this);
+
+        return result;
+    }
 }
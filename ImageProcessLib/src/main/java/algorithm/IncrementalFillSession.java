@@ -0,0 +1,454 @@
+package algorithm;
+
+import image.FloatRaster;
+import utils.ConnectedPixels;
+import utils.IntStack;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps an image filled by the hole filling algorithm while its hole is edited. <br>
+ * Every hole pixel keeps the numerator and the denominator of its value. When the hole is edited, a hole that
+ * grew, shrank or was split is updated with the contributions of the boundary pixels that appeared or disappeared,
+ * and only the new hole pixels are computed against the whole boundary. A hole that was merged with another hole
+ * or created by the edit is computed from scratch. <br>
+ * The sums are kept in double precision, so the values may differ from HoleFillingAlgorithm in the last bit. <br>
+ * An edit is given the pixels that were added to the hole and removed from it, e.g. by a brush stroke, and the
+ * bookkeeping of every pixel is kept in primitive arrays, so an edit allocates nothing per pixel.
+ * A session is not thread safe.
+ */
+public class IncrementalFillSession {
+    private static final int NOT_A_HOLE = -1;
+    private static final int ADDED = -2;
+    private static final int SEVERAL_HOLES = -3;
+    private static final int[] HOLE_X_OFFSETS = ConnectedPixels.getNeighborsXOffsets(PixelConnectivity.EightConnected);
+    private static final int[] HOLE_Y_OFFSETS = ConnectedPixels.getNeighborsYOffsets(PixelConnectivity.EightConnected);
+
+    private final WeightingFunction weightingFunction;
+    private final int[] boundaryXOffsets;
+    private final int[] boundaryYOffsets;
+    private final int width;
+    private final int height;
+    private final float[] original;
+    private final FloatRaster raster;
+    // The id of the hole each pixel belongs to, or NOT_A_HOLE
+    private final int[] holeOf;
+    // The accumulators slot of each hole pixel
+    private final int[] slotOf;
+    private final int[] marks;
+    private int marksEpoch;
+    private double[] numerators = new double[64];
+    private double[] denominators = new double[64];
+    private int[] freeSlots = new int[16];
+    private int freeSlotsCount;
+    private int slotsCount;
+    // The holes by their ids, where the ids of the holes that were edited away are reused
+    private Hole[] holes = new Hole[16];
+    private final IntStack freeHoleIds = new IntStack();
+    private int holeIdsCount;
+    private int editsCount;
+    private float[] weights = new float[16];
+
+    /**
+     * @param image the image without a hole. It is copied, so it's not changed by the session.
+     */
+    IncrementalFillSession(WeightingFunction weightingFunction,
+                           PixelConnectivity pixelConnectivity,
+                           FloatRaster image) {
+        if (image.getChannels() != 1) {
+            throw new IllegalArgumentException("Incremental fill sessions support single channel images only.");
+        }
+
+        this.weightingFunction = weightingFunction;
+        this.boundaryXOffsets = ConnectedPixels.getNeighborsXOffsets(pixelConnectivity);
+        this.boundaryYOffsets = ConnectedPixels.getNeighborsYOffsets(pixelConnectivity);
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.original = image.getData().clone();
+        this.raster = FloatRaster.create(this.width, this.height);
+        System.arraycopy(this.original, 0, this.raster.getData(), 0, this.original.length);
+        this.holeOf = new int[this.width * this.height];
+        this.slotOf = new int[this.width * this.height];
+        this.marks = new int[this.width * this.height];
+        Arrays.fill(this.holeOf, NOT_A_HOLE);
+    }
+
+    /**
+     * @return the image with the current hole filled. It's updated in place by every edit.
+     */
+    public FloatRaster getRaster() {
+        return this.raster;
+    }
+
+    public boolean isHole(int x, int y) {
+        return this.holeOf[y * this.width + x] != NOT_A_HOLE;
+    }
+
+    /**
+     * Add pixels to the hole and remove pixels from it, and update the filled image.
+     *
+     * @param added   pixels to add to the hole, or null. Pixels that are already in the hole are ignored.
+     * @param removed pixels to remove from the hole, or null. Pixels that aren't in the hole are ignored.
+     */
+    public void edit(PixelSet added, PixelSet removed) {
+        edit(indicesOf(added), indicesOf(removed));
+    }
+
+    /**
+     * Replace the hole with the given one, and update the filled image according to the difference. <br>
+     * Finding the difference visits every pixel of the current hole and of the new one, so an editor that
+     * knows which pixels a stroke added or removed should pass them to edit() instead.
+     */
+    public void setHole(PixelSet hole) {
+        int epoch = nextMarksEpoch();
+        for (int i = 0; i < hole.size(); i++) {
+            this.marks[hole.indexAt(i)] = epoch;
+        }
+
+        IntStack removed = new IntStack();
+        for (int id = 0; id < this.holeIdsCount; id++) {
+            if (this.holes[id] != null) {
+                for (int pixel : this.holes[id].pixels) {
+                    if (this.marks[pixel] != epoch) {
+                        removed.push(pixel);
+                    }
+                }
+            }
+        }
+
+        edit(indicesOf(hole), removed.toArray());
+    }
+
+    /**
+     * Same as edit(PixelSet, PixelSet), for pixels given by their packed (y * width + x) indices.
+     *
+     * @param added   indices of the pixels to add to the hole. Pixels that are already in the hole are ignored.
+     * @param removed indices of the pixels to remove from the hole. Pixels that aren't in the hole are ignored.
+     */
+    public void edit(int[] added, int[] removed) {
+        int edit = ++this.editsCount;
+        IntStack touchedHoles = new IntStack();
+        IntStack seeds = new IntStack(added.length + 16);
+
+        // Update the hole, and find the holes that may have changed
+        for (int pixel : removed) {
+            if (this.holeOf[pixel] >= 0) {
+                touch(this.holeOf[pixel], edit, touchedHoles);
+                this.holeOf[pixel] = NOT_A_HOLE;
+                releaseSlot(this.slotOf[pixel]);
+                this.raster.getData()[pixel] = this.original[pixel];
+            }
+        }
+        for (int pixel : added) {
+            if (this.holeOf[pixel] == NOT_A_HOLE) {
+                this.holeOf[pixel] = ADDED;
+                seeds.push(pixel);
+            }
+        }
+        int addedCount = seeds.size();
+        int[] addedPixels = seeds.toArray();
+        for (int i = 0; i < addedCount; i++) {
+            int x = addedPixels[i] % this.width;
+            int y = addedPixels[i] / this.width;
+            for (int n = 0; n < HOLE_X_OFFSETS.length; n++) {
+                int neighborX = x + HOLE_X_OFFSETS[n];
+                int neighborY = y + HOLE_Y_OFFSETS[n];
+                if (contains(neighborX, neighborY) && this.holeOf[neighborY * this.width + neighborX] >= 0) {
+                    touch(this.holeOf[neighborY * this.width + neighborX], edit, touchedHoles);
+                }
+            }
+        }
+        int[] touchedIds = touchedHoles.toArray();
+        for (int id : touchedIds) {
+            for (int pixel : this.holes[id].pixels) {
+                if (this.holeOf[pixel] == id) {
+                    seeds.push(pixel);
+                }
+            }
+        }
+
+        // Find the holes the touched holes and the added pixels form now
+        for (int[] pixels : findConnectedHoles(seeds.toArray())) {
+            // The kept pixels of a hole can be updated only if they all came from the same hole
+            int predecessor = NOT_A_HOLE;
+            for (int pixel : pixels) {
+                int id = this.holeOf[pixel];
+                if (id >= 0 && id != predecessor) {
+                    predecessor = predecessor == NOT_A_HOLE ? id : SEVERAL_HOLES;
+                }
+            }
+
+            int[] boundary = findBoundary(pixels);
+            if (predecessor >= 0) {
+                update(pixels, this.holes[predecessor].boundary, boundary);
+            } else {
+                fill(pixels, boundary);
+            }
+
+            // The ids of the touched holes are only freed below, so a new hole never takes one of them
+            int id = acquireHoleId();
+            for (int pixel : pixels) {
+                this.holeOf[pixel] = id;
+                this.raster.getData()[pixel] =
+                        (float) (this.numerators[this.slotOf[pixel]] / this.denominators[this.slotOf[pixel]]);
+            }
+            this.holes[id] = new Hole(pixels, boundary);
+        }
+
+        for (int id : touchedIds) {
+            this.holes[id] = null;
+            this.freeHoleIds.push(id);
+        }
+    }
+
+    /**
+     * Record that the hole may be changed by the current edit, once.
+     */
+    private void touch(int id, int edit, IntStack touchedHoles) {
+        Hole hole = this.holes[id];
+        if (hole.touchedByEdit != edit) {
+            hole.touchedByEdit = edit;
+            touchedHoles.push(id);
+        }
+    }
+
+    /**
+     * Compute a hole that was created or merged by the edit from scratch.
+     */
+    private void fill(int[] pixels, int[] boundary) {
+        for (int pixel : pixels) {
+            if (this.holeOf[pixel] == ADDED) {
+                this.slotOf[pixel] = acquireSlot();
+            }
+            this.numerators[this.slotOf[pixel]] = 0;
+            this.denominators[this.slotOf[pixel]] = 0;
+        }
+
+        accumulate(pixels, false, boundary, 1);
+    }
+
+    /**
+     * Update a hole whose kept pixels all came from the same hole, whose boundary was the previous boundary.
+     */
+    private void update(int[] pixels, int[] previousBoundary, int[] boundary) {
+        int[] appeared = difference(boundary, previousBoundary);
+        int[] disappeared = difference(previousBoundary, boundary);
+        int[] addedPixels = Arrays.stream(pixels).filter(pixel -> this.holeOf[pixel] == ADDED).toArray();
+
+        for (int pixel : addedPixels) {
+            this.slotOf[pixel] = acquireSlot();
+            this.numerators[this.slotOf[pixel]] = 0;
+            this.denominators[this.slotOf[pixel]] = 0;
+        }
+
+        accumulate(pixels, true, appeared, 1);
+        accumulate(pixels, true, disappeared, -1);
+        accumulate(addedPixels, false, boundary, 1);
+    }
+
+    /**
+     * Add the contributions of the boundary pixels to the accumulators of the hole pixels.
+     *
+     * @param keptOnly true to skip the pixels that were added by the current edit.
+     * @param sign     1 to add the contributions, -1 to subtract them.
+     */
+    private void accumulate(int[] pixels, boolean keptOnly, int[] boundary, int sign) {
+        if (boundary.length == 0) {
+            return;
+        }
+
+        int[] xs = new int[boundary.length];
+        int[] ys = new int[boundary.length];
+        for (int i = 0; i < boundary.length; i++) {
+            xs[i] = boundary[i] % this.width;
+            ys[i] = boundary[i] / this.width;
+        }
+        if (this.weights.length < boundary.length) {
+            this.weights = new float[boundary.length];
+        }
+
+        for (int pixel : pixels) {
+            if (keptOnly && this.holeOf[pixel] == ADDED) {
+                continue;
+            }
+
+            this.weightingFunction.calculate(pixel % this.width, pixel / this.width,
+                    xs, ys, boundary.length, this.weights);
+            double numerator = 0;
+            double denominator = 0;
+            for (int i = 0; i < boundary.length; i++) {
+                numerator += this.weights[i] * this.original[boundary[i]];
+                denominator += this.weights[i];
+            }
+
+            this.numerators[this.slotOf[pixel]] += sign * numerator;
+            this.denominators[this.slotOf[pixel]] += sign * denominator;
+        }
+    }
+
+    /**
+     * @param seeds hole pixels.
+     * @return the 8-connected holes that contain the seeds, each as an array of packed indices.
+     */
+    private List<int[]> findConnectedHoles(int[] seeds) {
+        List<int[]> connectedHoles = new ArrayList<>();
+        int epoch = nextMarksEpoch();
+        IntStack stack = new IntStack();
+
+        for (int seed : seeds) {
+            if (this.marks[seed] == epoch) {
+                continue;
+            }
+
+            IntStack pixels = new IntStack();
+            stack.push(seed);
+            this.marks[seed] = epoch;
+
+            while (!stack.isEmpty()) {
+                int current = stack.pop();
+                pixels.push(current);
+
+                int x = current % this.width;
+                int y = current / this.width;
+                for (int n = 0; n < HOLE_X_OFFSETS.length; n++) {
+                    int neighborX = x + HOLE_X_OFFSETS[n];
+                    int neighborY = y + HOLE_Y_OFFSETS[n];
+                    int neighbor = neighborY * this.width + neighborX;
+
+                    if (contains(neighborX, neighborY) && this.holeOf[neighbor] != NOT_A_HOLE &&
+                            this.marks[neighbor] != epoch) {
+                        this.marks[neighbor] = epoch;
+                        stack.push(neighbor);
+                    }
+                }
+            }
+
+            connectedHoles.add(pixels.toArray());
+        }
+
+        return connectedHoles;
+    }
+
+    /**
+     * @return the sorted packed indices of the boundary pixels of the hole.
+     */
+    private int[] findBoundary(int[] pixels) {
+        int epoch = nextMarksEpoch();
+        int[] boundary = new int[16];
+        int boundaryCount = 0;
+
+        for (int pixel : pixels) {
+            int x = pixel % this.width;
+            int y = pixel / this.width;
+            for (int n = 0; n < this.boundaryXOffsets.length; n++) {
+                int neighborX = x + this.boundaryXOffsets[n];
+                int neighborY = y + this.boundaryYOffsets[n];
+                int neighbor = neighborY * this.width + neighborX;
+
+                if (contains(neighborX, neighborY) && this.holeOf[neighbor] == NOT_A_HOLE &&
+                        this.marks[neighbor] != epoch) {
+                    this.marks[neighbor] = epoch;
+                    if (boundaryCount == boundary.length) {
+                        boundary = Arrays.copyOf(boundary, boundaryCount * 2);
+                    }
+                    boundary[boundaryCount++] = neighbor;
+                }
+            }
+        }
+
+        boundary = Arrays.copyOf(boundary, boundaryCount);
+        Arrays.sort(boundary);
+        return boundary;
+    }
+
+    /**
+     * @return the elements of the sorted array first that aren't in the sorted array second.
+     */
+    private static int[] difference(int[] first, int[] second) {
+        int[] result = new int[first.length];
+        int resultCount = 0;
+        int j = 0;
+
+        for (int value : first) {
+            while (j < second.length && second[j] < value) {
+                j++;
+            }
+            if (j == second.length || second[j] != value) {
+                result[resultCount++] = value;
+            }
+        }
+
+        return Arrays.copyOf(result, resultCount);
+    }
+
+    private int acquireHoleId() {
+        if (!this.freeHoleIds.isEmpty()) {
+            return this.freeHoleIds.pop();
+        }
+
+        if (this.holeIdsCount == this.holes.length) {
+            this.holes = Arrays.copyOf(this.holes, this.holeIdsCount * 2);
+        }
+        return this.holeIdsCount++;
+    }
+
+    private int acquireSlot() {
+        if (this.freeSlotsCount > 0) {
+            return this.freeSlots[--this.freeSlotsCount];
+        }
+
+        if (this.slotsCount == this.numerators.length) {
+            this.numerators = Arrays.copyOf(this.numerators, this.slotsCount * 2);
+            this.denominators = Arrays.copyOf(this.denominators, this.slotsCount * 2);
+        }
+        return this.slotsCount++;
+    }
+
+    private void releaseSlot(int slot) {
+        if (this.freeSlotsCount == this.freeSlots.length) {
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlotsCount * 2);
+        }
+        this.freeSlots[this.freeSlotsCount++] = slot;
+    }
+
+    private int nextMarksEpoch() {
+        if (++this.marksEpoch == 0) {
+            Arrays.fill(this.marks, 0);
+            this.marksEpoch = 1;
+        }
+        return this.marksEpoch;
+    }
+
+    private boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height;
+    }
+
+    private static int[] indicesOf(PixelSet pixels) {
+        if (pixels == null) {
+            return new int[0];
+        }
+
+        int[] indices = new int[pixels.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = pixels.indexAt(i);
+        }
+        return indices;
+    }
+
+    private static class Hole {
+        private final int[] pixels;
+        private final int[] boundary;
+        // The last edit that may have changed the hole
+        private int touchedByEdit;
+
+        Hole(int[] pixels, int[] boundary) {
+            this.pixels = pixels;
+            this.boundary = boundary;
+        }
+    }
+}
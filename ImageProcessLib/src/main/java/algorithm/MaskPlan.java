@@ -0,0 +1,463 @@
+package algorithm;
+
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.Phase;
+import metrics.PhaseRecorder;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import utils.ScratchBuffers;
+import weighting.function.WeightingFunction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The holes of a fixed mask compiled together with a weighting function and a pixels connectivity,
+ * so that images that share the mask are filled without detecting the holes or evaluating the weighting
+ * function again. <br>
+ * The boundary of the holes is kept as column groups, where the value of a group is the average of its
+ * pixels (a single pixel for the exact algorithm, a boundary section for the quick one), and the hole pixels
+ * are kept as the rows of a sparse matrix of normalized weights against the groups (compressed sparse rows).
+ * Filling an image is then a single sparse matrix-vector product, for every channel. <br>
+ * The exact plan holds (hole pixels x boundary pixels) weights of each hole, 8 bytes each with their columns -
+ * e.g. about 4 GB for a 500x500 hole with 2000 boundary pixels - while the quick plan holds at most
+ * (hole pixels x sections). A plan is limited to MAX_WEIGHTS weights, and compiling a larger one fails. <br>
+ * The holes of the processed image itself are ignored, the pixels of the compiled mask are filled instead.
+ * A plan is immutable, so a single instance may be applied by many threads at once.
+ */
+public class MaskPlan extends RasterProcessAlgorithm {
+    private static final int MAGIC = 0x4D504C4E;
+    private static final int VERSION = 1;
+    // The largest array the JVMs reliably allocate
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    // A boundary pixel has 8 neighbours, so it borders at most 4 separate holes
+    private static final int MAX_HOLES_PER_PIXEL = 4;
+
+    /**
+     * The largest number of weights of a plan.
+     */
+    public static final int MAX_WEIGHTS = MAX_ARRAY_LENGTH;
+
+    private final int width;
+    private final int height;
+    // Hole h owns the rows [holeRows[h], holeRows[h + 1]) and the groups [holeGroups[h], holeGroups[h + 1])
+    private final int[] holeRows;
+    private final int[] holeGroups;
+    // Group g is the average of the pixels groupPixels[groupStarts[g]..groupStarts[g + 1])
+    private final int[] groupStarts;
+    private final int[] groupPixels;
+    // Row r is the hole pixel rowPixels[r], computed from the entries [rowStarts[r], rowStarts[r + 1])
+    private final int[] rowPixels;
+    private final int[] rowStarts;
+    private final int[] columns;
+    private final float[] weights;
+
+    private MaskPlan(int width, int height, int[] holeRows, int[] holeGroups, int[] groupStarts, int[] groupPixels,
+                     int[] rowPixels, int[] rowStarts, int[] columns, float[] weights) {
+        this.width = width;
+        this.height = height;
+        this.holeRows = holeRows;
+        this.holeGroups = holeGroups;
+        this.groupStarts = groupStarts;
+        this.groupPixels = groupPixels;
+        this.rowPixels = rowPixels;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.weights = weights;
+    }
+
+    /**
+     * Compile the plan of the exact algorithm, where every hole pixel is weighted against every pixel
+     * of its boundary. The plan holds (hole pixels x boundary pixels) weights of each hole.
+     *
+     * @param mask a raster whose holes are the holes of the plan. The values of the other pixels are ignored.
+     * @throws IllegalArgumentException if the plan needs more than MAX_WEIGHTS weights.
+     */
+    static MaskPlan compile(WeightingFunction weightingFunction, PixelConnectivity pixelConnectivity,
+                            Raster mask) {
+        return compile(weightingFunction, pixelConnectivity, 0, mask);
+    }
+
+    /**
+     * Compile the plan of the quick algorithm, where every hole pixel is weighted against the averages
+     * of at most boundarySize sections of its boundary.
+     *
+     * @param boundarySize the number of boundary sections, or 0 to weight against every boundary pixel.
+     * @throws IllegalArgumentException if the plan needs more than MAX_WEIGHTS weights.
+     */
+    static MaskPlan compile(WeightingFunction weightingFunction, PixelConnectivity pixelConnectivity,
+                            int boundarySize, Raster mask) {
+        Builder builder = new Builder();
+
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(mask, pixelConnectivity, boundaries);
+
+        for (int holeIndex = 0; holeIndex < holes.size(); holeIndex++) {
+            PixelSet hole = holes.get(holeIndex);
+            PixelSet boundary = boundaries.get(holeIndex);
+            if (boundary.isEmpty()) {
+                continue;
+            }
+
+            int[] xs;
+            int[] ys;
+            if (boundarySize > 0) {
+                List<PixelSet> sections = QuickHoleFillingAlgorithm.splitBoundaryToSections(
+                        QuickHoleFillingAlgorithm.floodFillOverBoundary(boundary), mask.getWidth(),
+                        boundary.size(), Math.min(boundarySize, boundary.size()));
+                xs = new int[sections.size()];
+                ys = new int[sections.size()];
+                int size = 0;
+                for (PixelSet section : sections) {
+                    if (!section.isEmpty()) {
+                        // The first pixel of the section represents it, like in the quick algorithm
+                        xs[size] = section.xAt(0);
+                        ys[size] = section.yAt(0);
+                        builder.addGroup(section);
+                        size++;
+                    }
+                }
+                xs = Arrays.copyOf(xs, size);
+                ys = Arrays.copyOf(ys, size);
+            } else {
+                xs = new int[boundary.size()];
+                ys = new int[boundary.size()];
+                for (int i = 0; i < boundary.size(); i++) {
+                    xs[i] = boundary.xAt(i);
+                    ys[i] = boundary.yAt(i);
+                    builder.addGroup(boundary.indexAt(i));
+                }
+            }
+
+            // Checked before the rows are added, so an oversized mask fails before the weights are allocated
+            if ((long) hole.size() * xs.length > MAX_WEIGHTS - builder.weightsCount()) {
+                throw new IllegalArgumentException(String.format("The mask plan needs more than %d weights, " +
+                        "compile a quick plan with fewer boundary sections instead.", MAX_WEIGHTS));
+            }
+
+            float[] rowWeights = new float[xs.length];
+            for (int i = 0; i < hole.size(); i++) {
+                weightingFunction.calculate(hole.xAt(i), hole.yAt(i), xs, ys, xs.length, rowWeights);
+                builder.addRow(hole.indexAt(i), rowWeights);
+            }
+            builder.endHole();
+        }
+
+        return builder.build(mask.getWidth(), mask.getHeight());
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return the number of hole pixels the plan fills.
+     */
+    public int getHolePixels() {
+        return this.rowPixels.length;
+    }
+
+    /**
+     * @return the number of non zero weights of the plan.
+     */
+    public int getWeights() {
+        return this.weights.length;
+    }
+
+    /**
+     * Fill the pixels of the compiled mask in the raster.
+     */
+    @Override
+    protected void process(Raster raster, AlgorithmListener listener) {
+        if (raster.getWidth() != this.width || raster.getHeight() != this.height) {
+            throw new IllegalArgumentException("Image size doesn't match the mask size of the plan.");
+        }
+
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        int channels = raster.getChannels();
+        int groups = this.groupStarts.length - 1;
+        float[] groupValues = ScratchBuffers.current().floats(ScratchBuffers.Slot.Weights, groups * channels);
+
+        // All the groups are read before any hole pixel is written, as holes may share boundary pixels
+        for (int group = 0; group < groups; group++) {
+            int from = this.groupStarts[group];
+            int to = this.groupStarts[group + 1];
+            for (int channel = 0; channel < channels; channel++) {
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += raster.get(this.groupPixels[i] % this.width, this.groupPixels[i] / this.width, channel);
+                }
+                groupValues[group * channels + channel] = (float) (sum / (to - from));
+            }
+        }
+        recorder.lap(Phase.SectionAveraging);
+
+        for (int row = 0; row < this.rowPixels.length; row++) {
+            int x = this.rowPixels[row] % this.width;
+            int y = this.rowPixels[row] / this.width;
+            for (int channel = 0; channel < channels; channel++) {
+                float value = 0;
+                for (int i = this.rowStarts[row]; i < this.rowStarts[row + 1]; i++) {
+                    value += this.weights[i] * groupValues[this.columns[i] * channels + channel];
+                }
+                raster.set(x, y, channel, value);
+            }
+            raster.clearHole(x, y);
+        }
+        recorder.lap(Phase.Interpolation);
+
+        for (int hole = 0; hole < this.holeRows.length - 1; hole++) {
+            recorder.holeProcessed(this.holeRows[hole + 1] - this.holeRows[hole],
+                    this.holeGroups[hole + 1] - this.holeGroups[hole]);
+        }
+    }
+
+    /**
+     * Write the plan to a file, so it may be loaded after a restart instead of being compiled again.
+     */
+    public void save(Path path) throws IOException {
+        try (OutputStream output = Files.newOutputStream(path)) {
+            writeTo(output);
+        }
+    }
+
+    public static MaskPlan load(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return readFrom(input);
+        }
+    }
+
+    /**
+     * Write the plan to the stream, in big-endian order. The stream isn't closed.
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(this.width);
+        output.writeInt(this.height);
+        for (int[] array : new int[][]{this.holeRows, this.holeGroups, this.groupStarts, this.groupPixels,
+                this.rowPixels, this.rowStarts, this.columns}) {
+            output.writeInt(array.length);
+            for (int value : array) {
+                output.writeInt(value);
+            }
+        }
+        output.writeInt(this.weights.length);
+        for (float weight : this.weights) {
+            output.writeFloat(weight);
+        }
+        output.flush();
+    }
+
+    /**
+     * Read a plan that was written by writeTo. The stream isn't closed. <br>
+     * Every length is checked against the size of the mask before its array is allocated, and every index
+     * against the size of its target, so a corrupted plan fails with an IOException.
+     */
+    public static MaskPlan readFrom(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a mask plan.");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported mask plan version " + version);
+        }
+
+        int width = input.readInt();
+        int height = input.readInt();
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_ARRAY_LENGTH) {
+            throw new IOException("Invalid mask plan size " + width + "x" + height);
+        }
+
+        int pixels = width * height;
+        int maxGroupPixels = (int) Math.min((long) MAX_HOLES_PER_PIXEL * pixels, MAX_ARRAY_LENGTH - 1);
+        int[] holeRows = readInts(input, pixels + 1L);
+        int[] holeGroups = readInts(input, holeRows.length, holeRows.length);
+        int[] groupStarts = readInts(input, maxGroupPixels + 1L);
+        int[] groupPixels = readInts(input, maxGroupPixels);
+        int[] rowPixels = readInts(input, pixels);
+        int[] rowStarts = readInts(input, rowPixels.length + 1L, rowPixels.length + 1L);
+        int groups = groupStarts.length - 1;
+        int[] columns = readInts(input, Math.min((long) rowPixels.length * groups, MAX_WEIGHTS));
+
+        int length = readLength(input, columns.length, columns.length);
+        float[] weights = new float[length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = input.readFloat();
+        }
+
+        checkOffsets(holeRows, rowPixels.length);
+        checkOffsets(holeGroups, groups);
+        checkOffsets(groupStarts, groupPixels.length);
+        checkOffsets(rowStarts, columns.length);
+        checkIndices(groupPixels, pixels);
+        checkIndices(rowPixels, pixels);
+        checkIndices(columns, groups);
+
+        return new MaskPlan(width, height, holeRows, holeGroups, groupStarts, groupPixels, rowPixels, rowStarts,
+                columns, weights);
+    }
+
+    private static int[] readInts(DataInputStream input, long maxLength) throws IOException {
+        return readInts(input, 0, maxLength);
+    }
+
+    private static int[] readInts(DataInputStream input, long minLength, long maxLength) throws IOException {
+        int[] values = new int[readLength(input, minLength, maxLength)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = input.readInt();
+        }
+
+        return values;
+    }
+
+    private static int readLength(DataInputStream input, long minLength, long maxLength) throws IOException {
+        int length = input.readInt();
+        if (length < minLength || length > maxLength) {
+            throw new IOException("Invalid mask plan array length " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Check that the offsets start at 0, never decrease and end at the length of the array they point into.
+     */
+    private static void checkOffsets(int[] offsets, int end) throws IOException {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != end) {
+            throw new IOException("Invalid mask plan offsets.");
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new IOException("Invalid mask plan offsets.");
+            }
+        }
+    }
+
+    private static void checkIndices(int[] indices, int bound) throws IOException {
+        for (int index : indices) {
+            if (index < 0 || index >= bound) {
+                throw new IOException("Invalid mask plan index " + index);
+            }
+        }
+    }
+
+    /**
+     * Collects the holes of a plan one after the other.
+     */
+    private static class Builder {
+        private final IntArray holeRows = new IntArray();
+        private final IntArray holeGroups = new IntArray();
+        private final IntArray groupStarts = new IntArray();
+        private final IntArray groupPixels = new IntArray();
+        private final IntArray rowPixels = new IntArray();
+        private final IntArray rowStarts = new IntArray();
+        private final IntArray columns = new IntArray();
+        private float[] weights = new float[16];
+        private int holeGroupStart;
+
+        Builder() {
+            this.holeRows.add(0);
+            this.holeGroups.add(0);
+            this.groupStarts.add(0);
+            this.rowStarts.add(0);
+        }
+
+        void addGroup(int pixel) {
+            this.groupPixels.add(pixel);
+            this.groupStarts.add(this.groupPixels.size);
+        }
+
+        void addGroup(PixelSet pixels) {
+            for (int i = 0; i < pixels.size(); i++) {
+                this.groupPixels.add(pixels.indexAt(i));
+            }
+            this.groupStarts.add(this.groupPixels.size);
+        }
+
+        /**
+         * @param rowWeights the weights of the pixel against each group of the current hole, in the order
+         *                   the groups were added.
+         */
+        void addRow(int pixel, float[] rowWeights) {
+            float denominator = 0;
+            for (float weight : rowWeights) {
+                denominator += weight;
+            }
+
+            for (int group = 0; group < rowWeights.length; group++) {
+                if (rowWeights[group] != 0) {
+                    if (this.columns.size == this.weights.length) {
+                        this.weights = Arrays.copyOf(this.weights, grownLength(this.weights.length));
+                    }
+                    this.weights[this.columns.size] = rowWeights[group] / denominator;
+                    this.columns.add(this.holeGroupStart + group);
+                }
+            }
+            this.rowPixels.add(pixel);
+            this.rowStarts.add(this.columns.size);
+        }
+
+        int weightsCount() {
+            return this.columns.size;
+        }
+
+        void endHole() {
+            this.holeGroupStart = this.groupStarts.size - 1;
+            this.holeRows.add(this.rowPixels.size);
+            this.holeGroups.add(this.holeGroupStart);
+        }
+
+        MaskPlan build(int width, int height) {
+            return new MaskPlan(width, height, this.holeRows.toArray(), this.holeGroups.toArray(),
+                    this.groupStarts.toArray(), this.groupPixels.toArray(), this.rowPixels.toArray(),
+                    this.rowStarts.toArray(), this.columns.toArray(), Arrays.copyOf(this.weights, this.columns.size));
+        }
+    }
+
+    private static class IntArray {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, grownLength(this.size));
+            }
+            this.values[this.size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+    /**
+     * @return the doubled length of a full array, up to the largest array length.
+     */
+    private static int grownLength(int length) {
+        if (length >= MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("The mask plan exceeds " + MAX_ARRAY_LENGTH + " entries.");
+        }
+
+        return (int) Math.min(2L * length, MAX_ARRAY_LENGTH);
+    }
+}
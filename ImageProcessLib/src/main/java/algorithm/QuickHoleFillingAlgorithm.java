@@ -1,141 +1,219 @@
 package algorithm;
 
-import image.Pixel;
-import org.opencv.core.Mat;
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.Phase;
+import metrics.PhaseRecorder;
 import utils.ConnectedPixels;
+import utils.IntStack;
 import utils.PixelConnectivity;
+import utils.PixelSet;
 import weighting.function.WeightingFunction;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-public class QuickHoleFillingAlgorithm implements ImageProcessAlgorithm {
-    private static int setIndex = 0;
+public class QuickHoleFillingAlgorithm extends RasterProcessAlgorithm {
     private final WeightingFunction weightingFunction;
     private final PixelConnectivity pixelConnectivity;
-    private final List<Set<Pixel>> boundarySectionsList;
-    private int sectionsCount;
-    private Set<Pixel> boundary;
-    private Set<Pixel> holePixelsSet;
-    private Mat image;
+    private final ForkJoinPool pool;
+    private final int boundarySize;
 
     public QuickHoleFillingAlgorithm(WeightingFunction weightingFunction,
                                      PixelConnectivity pixelConnectivity,
                                      int boundarySize) {
-        this.weightingFunction = weightingFunction;
-        this.pixelConnectivity = pixelConnectivity;
-        this.holePixelsSet = new HashSet<>();
-        this.boundarySectionsList = new ArrayList<>();
-        this.sectionsCount = boundarySize;
-        this.boundary = new HashSet<>();
-        initSetsList();
+        this(weightingFunction, pixelConnectivity, boundarySize, null);
     }
 
     /**
-     * Creates sectionsCount number of hash sets and add them into the boundary sections list.
+     * @param pool the pool to compute the hole pixels on, or null to compute them serially.
      */
-    private void initSetsList() {
-        for (int i = 0; i < this.sectionsCount; i++) {
-            this.boundarySectionsList.add(new HashSet<>());
-        }
+    public QuickHoleFillingAlgorithm(WeightingFunction weightingFunction,
+                                     PixelConnectivity pixelConnectivity,
+                                     int boundarySize,
+                                     ForkJoinPool pool) {
+        this.pool = pool;
+        this.weightingFunction = weightingFunction;
+        this.pixelConnectivity = pixelConnectivity;
+        this.boundarySize = boundarySize;
     }
 
     /**
-     * @return A list which contains the boundary pixels ordered in flood fill order.
+     * @return An array which contains the packed indices of the boundary pixels ordered in flood fill order.
+     * Only the pixels that are 4-connected to the first boundary pixel are reached.
      */
-    private List<Pixel> floodFillOverBoundary() {
-        List<Pixel> orderedListOfBoundary = new LinkedList<>();
-        Set<Pixel> handled = new HashSet<>();
-        Stack<Pixel> stack = new Stack<>();
-        stack.add(this.boundary.iterator().next());
+    static int[] floodFillOverBoundary(PixelSet boundary) {
+        int width = boundary.getImageWidth();
+        int[] xOffsets = ConnectedPixels.getNeighborsXOffsets(PixelConnectivity.FourConnected);
+        int[] yOffsets = ConnectedPixels.getNeighborsYOffsets(PixelConnectivity.FourConnected);
+        int[] orderedBoundary = new int[boundary.size()];
+        int orderedCount = 0;
+        PixelSet handled = boundary.createEmptyCopy(boundary.size());
+        IntStack stack = new IntStack();
+        stack.push(boundary.indexAt(0));
 
         while (!stack.isEmpty()) {
-            Pixel current = stack.pop();
-            if (!handled.contains(current)) {
-                orderedListOfBoundary.add(current);
-                handled.add(current);
-                List<Pixel> neighbors =
-                        ConnectedPixels.getPixelNeighbors(current, PixelConnectivity.FourConnected).stream()
-                                .filter(neighbor -> !handled.contains(neighbor))
-                                .filter(this.boundary::contains)
-                                .collect(Collectors.toList());
-
-                neighbors.forEach(stack::push);
+            int current = stack.pop();
+            int x = current % width;
+            int y = current / width;
+
+            if (handled.add(x, y)) {
+                orderedBoundary[orderedCount++] = current;
+
+                for (int n = 0; n < xOffsets.length; n++) {
+                    int neighborX = x + xOffsets[n];
+                    int neighborY = y + yOffsets[n];
+
+                    if (!handled.contains(neighborX, neighborY) && boundary.contains(neighborX, neighborY)) {
+                        stack.push(neighborY * width + neighborX);
+                    }
+                }
             }
         }
 
-        return orderedListOfBoundary;
+        return Arrays.copyOf(orderedBoundary, orderedCount);
     }
 
     /**
-     * @return the index of the current set that need to be filled.
+     * @param pixels        array of ordered packed pixel indices.
+     * @param boundarySize  the number of pixels in the whole boundary.
+     * @param sectionsCount the number of sections to split the pixels into.
+     * @return The pixels split into sections where each section is in a different set.
      */
-    private int getSetIndex() {
-        int maxPerSection = this.boundary.size() / this.sectionsCount;
+    static List<PixelSet> splitBoundaryToSections(int[] pixels, int width, int boundarySize, int sectionsCount) {
+        int maxPerSection = boundarySize / sectionsCount;
+        int[] sectionOfPixel = new int[pixels.length];
+        int[] sectionSizes = new int[sectionsCount];
+        int[] minX = new int[sectionsCount], minY = new int[sectionsCount];
+        int[] maxX = new int[sectionsCount], maxY = new int[sectionsCount];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        Arrays.fill(maxX, -1);
+        Arrays.fill(maxY, -1);
+        int setIndex = 0;
+
+        // Assign each pixel to its section and measure the bounding box of each section
+        for (int i = 0; i < pixels.length; i++) {
+            if (sectionSizes[setIndex] >= maxPerSection) {
+                setIndex = (setIndex + 1) % sectionsCount;
+            }
 
-        if (this.boundarySectionsList.get(setIndex).size() >= maxPerSection) {
-            setIndex = (setIndex + 1) % this.sectionsCount;
+            int x = pixels[i] % width;
+            int y = pixels[i] / width;
+            sectionOfPixel[i] = setIndex;
+            sectionSizes[setIndex]++;
+            minX[setIndex] = Math.min(minX[setIndex], x);
+            maxX[setIndex] = Math.max(maxX[setIndex], x);
+            minY[setIndex] = Math.min(minY[setIndex], y);
+            maxY[setIndex] = Math.max(maxY[setIndex], y);
         }
 
-        return setIndex;
-    }
+        List<PixelSet> boundarySectionsList = new ArrayList<>(sectionsCount);
+        for (int section = 0; section < sectionsCount; section++) {
+            boundarySectionsList.add(sectionSizes[section] == 0 ?
+                    new PixelSet(width, 0, 0, 0, 0, 1) :
+                    new PixelSet(width, minX[section], minY[section], maxX[section] - minX[section] + 1,
+                            maxY[section] - minY[section] + 1, sectionSizes[section]));
+        }
 
-    /**
-     * @param pixels list of ordered pixels.
-     *               The method will split the pixels into sections where each section is in a different set.
-     */
-    private void splitBoundaryToSections(List<Pixel> pixels) {
-        pixels.forEach(pixel -> this.boundarySectionsList.get(getSetIndex()).add(pixel));
+        for (int i = 0; i < pixels.length; i++) {
+            boundarySectionsList.get(sectionOfPixel[i]).addIndex(pixels[i]);
+        }
+
+        return boundarySectionsList;
     }
 
     /**
-     * - Clear the current boundary set.
-     * - For each section set, calculate it's pixels values average.
-     * - Take the first pixel of the set and change it's value to the average value calculated above.
-     * - Add that pixel into the empty boundary.
+     * - For each section set, calculate it's pixels values average, for every channel.
+     * - Take the first pixel of the set as the representative of the section, with the average value
+     * calculated above.
+     * - Add that pixel into a new, smaller boundary.
      */
-    private void createSmallerBoundarySet() {
-        this.boundary.clear();
-        for (Set<Pixel> group : this.boundarySectionsList) {
+    private Boundary createSmallerBoundarySet(Raster raster, List<PixelSet> boundarySectionsList) {
+        int channels = raster.getChannels();
+        int[] xs = new int[boundarySectionsList.size()];
+        int[] ys = new int[boundarySectionsList.size()];
+        float[] values = new float[boundarySectionsList.size() * channels];
+        int size = 0;
+
+        for (PixelSet group : boundarySectionsList) {
             if (!group.isEmpty()) {
-                Pixel rep = (Pixel) group.toArray()[0];
-                rep.setValue((float) group.stream()
-                        .mapToDouble(pixel -> this.image.get(pixel.getY(), pixel.getX())[0])
-                        .average()
-                        .getAsDouble());
-                this.boundary.add(rep);
+                for (int channel = 0; channel < channels; channel++) {
+                    double sum = 0;
+                    for (int i = 0; i < group.size(); i++) {
+                        sum += raster.get(group.xAt(i), group.yAt(i), channel);
+                    }
+                    values[size * channels + channel] = (float) (sum / group.size());
+                }
+
+                xs[size] = group.xAt(0);
+                ys[size] = group.yAt(0);
+                size++;
             }
         }
+        return new Boundary(xs, ys, values, size, channels);
     }
 
     /**
-     * @param pixel a pixel that is a part of the hole.
-     * @return the new value of the pixel according to the algorithm calculation.
+     * @param x       the column of a pixel that is a part of the hole.
+     * @param y       the row of a pixel that is a part of the hole.
+     * @param weights scratch array for the weights of the pixel against the boundary.
+     * @param values  receives the new value of each channel of the pixel according to the algorithm calculation.
      */
-    private float calcPixelNewVal(Pixel pixel) {
-        float numerator = 0, denominator = 0;
+    private static void calcPixelNewVal(WeightingFunction weightingFunction, Boundary boundary,
+                                        int x, int y, float[] weights, float[] values) {
+        boundary.interpolate(weightingFunction, x, y, weights, values);
+    }
 
-        for (Pixel boundaryPixel : this.boundary) {
-            float weightingFunctionResult = this.weightingFunction.calculate(pixel, boundaryPixel);
-            numerator += weightingFunctionResult * boundaryPixel.getValue();
-            denominator += weightingFunctionResult;
+    private void fillHole(Raster raster, PixelSet holePixelsSet, PixelSet foundBoundary, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        WeightingFunction weightingFunction = recorder.countEvaluations(this.weightingFunction);
+        PixelSet boundary = foundBoundary != null ? foundBoundary :
+                CommonOp.findBoundaryPixels(raster, holePixelsSet, this.pixelConnectivity);
+        recorder.lap(Phase.BoundaryExtraction);
+        if (boundary.isEmpty()) {
+            return;
         }
 
-        return numerator / denominator;
+        int sectionsCount = Math.min(this.boundarySize, boundary.size());
+        int[] orderedBoundary = floodFillOverBoundary(boundary);
+        recorder.lap(Phase.BoundaryOrdering);
+        List<PixelSet> boundarySectionsList =
+                splitBoundaryToSections(orderedBoundary, raster.getWidth(), boundary.size(), sectionsCount);
+        Boundary smallerBoundary = createSmallerBoundarySet(raster, boundarySectionsList);
+        recorder.lap(Phase.SectionAveraging);
+        HoleFillTask.fill(this.pool, holePixelsSet, smallerBoundary.size(),
+                (x, y, weights, values) ->
+                        calcPixelNewVal(weightingFunction, smallerBoundary, x, y, weights, values), raster);
+        recorder.lap(Phase.Interpolation);
+        recorder.holeProcessed(holePixelsSet.size(), boundary.size());
     }
 
+    /**
+     * Find all the holes in the image and fill each one of them against its own boundary.
+     */
     @Override
-    public Mat invoke(Mat image) {
-        this.image = image;
-        this.holePixelsSet = CommonOp.findHolePixels(this.image);
-        this.boundary = CommonOp.findBoundaryPixels(this.image, this.holePixelsSet, this.pixelConnectivity);
-        this.sectionsCount = Math.min(this.sectionsCount, this.boundary.size());
-        List<Pixel> orderedBoundary = floodFillOverBoundary();
-        splitBoundaryToSections(orderedBoundary);
-        createSmallerBoundarySet();
-        this.holePixelsSet.forEach(holePixel ->
-                this.image.put(holePixel.getY(), holePixel.getX(), calcPixelNewVal(holePixel)));
-
-        return this.image;
+    protected void process(Raster raster, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(raster, this.pixelConnectivity, boundaries);
+        recorder.lap(Phase.HoleDetection);
+        fillHoles(raster, holes, boundaries, listener);
+    }
+
+    @Override
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        fillHoles(raster, holes, null, listener);
+    }
+
+    /**
+     * @param boundaries the boundary of each hole, or null to find the boundary of each hole on its own.
+     */
+    private void fillHoles(Raster raster, List<PixelSet> holes, List<PixelSet> boundaries,
+                           AlgorithmListener listener) {
+        HoleFillTask.forEachHole(this.pool, holes.size(), hole -> fillHole(raster, holes.get(hole),
+                boundaries == null ? null : boundaries.get(hole), listener));
     }
 }
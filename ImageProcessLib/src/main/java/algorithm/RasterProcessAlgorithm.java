@@ -0,0 +1,85 @@
+package algorithm;
+
+import image.FloatRaster;
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.PhaseRecorder;
+import org.opencv.core.Mat;
+import utils.PixelSet;
+import utils.ScratchBuffers;
+
+import java.util.List;
+
+/**
+ * Base class of the algorithms that process a Raster, either a FloatRaster or an IntegerRaster. <br>
+ * Implementations keep all the state of an invocation on the stack or in the ScratchBuffers of the invoking thread,
+ * so a single instance may be invoked again and again, and by many threads at once.
+ */
+public abstract class RasterProcessAlgorithm implements ImageProcessAlgorithm {
+
+    @Override
+    public Mat invoke(Mat image) {
+        return invoke(image, AlgorithmListener.NONE);
+    }
+
+    /**
+     * Copy the image into a raster with one bulk transfer, process the raster
+     * and write the result back into the image with one bulk transfer.
+     * The raster is backed by a scratch array of the calling thread, so it's not allocated again for images
+     * of the same size.
+     */
+    @Override
+    public Mat invoke(Mat image, AlgorithmListener listener) {
+        FloatRaster raster = FloatRaster.fromMat(image, ScratchBuffers.current()
+                .exactFloats(ScratchBuffers.Slot.Raster, image.width() * image.height() * image.channels()));
+        invoke(raster, listener);
+        raster.syncTo(image);
+
+        return image;
+    }
+
+    /**
+     * @param raster the raster to process in place.
+     */
+    public void invoke(Raster raster) {
+        invoke(raster, AlgorithmListener.NONE);
+    }
+
+    /**
+     * @param raster   the raster to process in place.
+     * @param listener receives the measurements of the invocation.
+     */
+    public void invoke(Raster raster, AlgorithmListener listener) {
+        listener.invocationStarted(this, raster.getWidth(), raster.getHeight());
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        process(raster, listener);
+        recorder.invocationCompleted(this);
+    }
+
+    /**
+     * Same as invoke(Raster, AlgorithmListener), for a raster whose holes were already found,
+     * e.g. by the pass that merged the mask into it.
+     *
+     * @param holes the holes of the raster, as found by CommonOp.findAllHoles. The sets may be changed.
+     */
+    public void invoke(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        listener.invocationStarted(this, raster.getWidth(), raster.getHeight());
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        process(raster, holes, listener);
+        recorder.invocationCompleted(this);
+    }
+
+    /**
+     * @param raster   the raster to process in place.
+     * @param listener receives the phases and the holes of the invocation.
+     */
+    protected abstract void process(Raster raster, AlgorithmListener listener);
+
+    /**
+     * Process a raster whose holes were already found. Algorithms that start by finding the holes
+     * override it to skip that, the others ignore the holes.
+     */
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        process(raster, listener);
+    }
+}
@@ -0,0 +1,296 @@
+package algorithm;
+
+import image.Raster;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The hole pixels of a raster and the boundary of each hole, in a memory-mapped file that several processes
+ * share, so the holes are filled by the hole filling algorithm on worker processes instead of on a single heap. <br>
+ * The coordinator creates the job from the raster, hands ranges of the hole pixels to the workers, and copies
+ * the results back into the raster once every range is filled. A worker opens the job and fills the ranges it's
+ * given into the output region of the file - the ranges don't overlap, so the workers never write the same
+ * values, and a range that was lost with its worker is simply filled again. <br>
+ * Each boundary is computed from the raster before any hole is filled, like the hole filling algorithm does,
+ * so the result is identical to filling the raster in a single process. <br>
+ * The file is laid out as: a header of HEADER_INTS ints, the offset of each hole in the pixels and in the
+ * boundaries (holesCount + 1 ints each), the boundary xs, ys and values, the packed (y * width + x) index of
+ * every hole pixel in hole order and scan order, and the output values. Every region must fit in 2 GB. <br>
+ * Not thread safe.
+ */
+public class SharedFillJob implements Closeable {
+    private static final int MAGIC = 0x53464a31;
+    private static final int HEADER_INTS = 5;
+
+    private final RandomAccessFile file;
+    private final int width;
+    private final int channels;
+    private final int[] pixelOffsets;
+    private final int[] boundaryOffsets;
+    private final IntBuffer xs;
+    private final IntBuffer ys;
+    private final FloatBuffer values;
+    private final IntBuffer pixels;
+    private final MappedByteBuffer outputRegion;
+    private final FloatBuffer output;
+
+    private SharedFillJob(RandomAccessFile file, int width, int channels, int[] pixelOffsets, int[] boundaryOffsets)
+            throws IOException {
+        int holesCount = pixelOffsets.length - 1;
+        long boundaryLength = boundaryOffsets[holesCount];
+        long pixelsCount = pixelOffsets[holesCount];
+        long position = 4L * (HEADER_INTS + 2 * (holesCount + 1));
+
+        this.file = file;
+        this.width = width;
+        this.channels = channels;
+        this.pixelOffsets = pixelOffsets;
+        this.boundaryOffsets = boundaryOffsets;
+        this.xs = map(position, 4 * boundaryLength).asIntBuffer();
+        position += 4 * boundaryLength;
+        this.ys = map(position, 4 * boundaryLength).asIntBuffer();
+        position += 4 * boundaryLength;
+        this.values = map(position, 4 * boundaryLength * channels).asFloatBuffer();
+        position += 4 * boundaryLength * channels;
+        this.pixels = map(position, 4 * pixelsCount).asIntBuffer();
+        position += 4 * pixelsCount;
+        this.outputRegion = map(position, 4 * pixelsCount * channels);
+        this.output = this.outputRegion.asFloatBuffer();
+    }
+
+    /**
+     * Find the holes of the raster and their boundaries, and write them into a new job file.
+     *
+     * @param path              the file to keep the job in, e.g. on storage that every worker can map.
+     *                          It is created, or overwritten if it exists.
+     * @param pixelConnectivity the neighbors method of the boundaries.
+     */
+    public static SharedFillJob create(Path path, Raster raster, PixelConnectivity pixelConnectivity)
+            throws IOException {
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(raster, pixelConnectivity, boundaries);
+        int[] pixelOffsets = new int[holes.size() + 1];
+        int[] boundaryOffsets = new int[holes.size() + 1];
+
+        for (int hole = 0; hole < holes.size(); hole++) {
+            pixelOffsets[hole + 1] = pixelOffsets[hole] + holes.get(hole).size();
+            boundaryOffsets[hole + 1] = boundaryOffsets[hole] + boundaries.get(hole).size();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        SharedFillJob job;
+
+        try {
+            int channels = raster.getChannels();
+            file.setLength(4L * (HEADER_INTS + 2 * (holes.size() + 1)) +
+                    4L * boundaryOffsets[holes.size()] * (2 + channels) +
+                    4L * pixelOffsets[holes.size()] * (1 + channels));
+            IntBuffer header = map(file, 0, 4L * (HEADER_INTS + 2 * (holes.size() + 1))).asIntBuffer();
+            header.put(new int[]{MAGIC, raster.getWidth(), raster.getHeight(), channels, holes.size()});
+            header.put(pixelOffsets);
+            header.put(boundaryOffsets);
+            job = new SharedFillJob(file, raster.getWidth(), channels, pixelOffsets, boundaryOffsets);
+
+            for (int hole = 0; hole < holes.size(); hole++) {
+                job.writeHole(holes.get(hole), pixelOffsets[hole], Boundary.create(raster, boundaries.get(hole)),
+                        boundaryOffsets[hole]);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        return job;
+    }
+
+    /**
+     * Map a job file that a coordinator created, to fill ranges of it.
+     */
+    public static SharedFillJob open(Path path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+
+        try {
+            IntBuffer header = map(file, 0, 4L * HEADER_INTS).asIntBuffer();
+            if (header.get(0) != MAGIC) {
+                throw new IOException("Not a fill job file: " + path);
+            }
+
+            int holesCount = header.get(4);
+            IntBuffer offsets = map(file, 4L * HEADER_INTS, 8L * (holesCount + 1)).asIntBuffer();
+            int[] pixelOffsets = new int[holesCount + 1];
+            int[] boundaryOffsets = new int[holesCount + 1];
+            offsets.get(pixelOffsets);
+            offsets.get(boundaryOffsets);
+
+            return new SharedFillJob(file, header.get(1), header.get(3), pixelOffsets, boundaryOffsets);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of hole pixels, the end of the last range.
+     */
+    public int getPixelsCount() {
+        return this.pixelOffsets[this.pixelOffsets.length - 1];
+    }
+
+    /**
+     * Split the hole pixels into ranges of about the same work - the cost of a pixel is the boundary size
+     * of its hole.
+     *
+     * @param count the number of ranges to split into. Fewer ranges are returned if there are fewer pixels.
+     * @return the bounds of the ranges, where range i is [bounds[i], bounds[i + 1]).
+     */
+    public int[] split(int count) {
+        long total = 0;
+        for (int hole = 0; hole + 1 < this.pixelOffsets.length; hole++) {
+            total += (long) (this.pixelOffsets[hole + 1] - this.pixelOffsets[hole]) * cost(hole);
+        }
+
+        int[] bounds = new int[count + 1];
+        int ranges = 0;
+        long done = 0;
+
+        for (int hole = 0; hole + 1 < this.pixelOffsets.length; hole++) {
+            long cost = cost(hole);
+            for (int pixel = this.pixelOffsets[hole]; pixel < this.pixelOffsets[hole + 1]; pixel++) {
+                done += cost;
+                if (ranges + 1 < count && done * count >= total * (ranges + 1) && pixel + 1 < getPixelsCount()) {
+                    bounds[++ranges] = pixel + 1;
+                }
+            }
+        }
+        bounds[++ranges] = getPixelsCount();
+
+        return Arrays.copyOf(bounds, getPixelsCount() == 0 ? 1 : ranges + 1);
+    }
+
+    /**
+     * Compute the hole pixels of the range into the output region.
+     *
+     * @param from the first pixel of the range, as returned by split().
+     * @param to   the end of the range, exclusive.
+     */
+    public void fill(int from, int to, WeightingFunction weightingFunction) {
+        if (from < 0 || from > to || to > getPixelsCount()) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + ")");
+        }
+
+        float[] result = new float[this.channels];
+        int hole = Arrays.binarySearch(this.pixelOffsets, from);
+        // The range may start inside a hole
+        if (hole < 0) {
+            hole = -hole - 2;
+        }
+
+        for (int pixel = from; pixel < to; hole++) {
+            Boundary boundary = readBoundary(hole);
+            float[] weights = new float[boundary.size()];
+
+            for (; pixel < Math.min(to, this.pixelOffsets[hole + 1]); pixel++) {
+                int index = this.pixels.get(pixel);
+                boundary.interpolate(weightingFunction, index % this.width, index / this.width, weights, result);
+                for (int channel = 0; channel < this.channels; channel++) {
+                    this.output.put(pixel * this.channels + channel, result[channel]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the output values through to the file, so that a filled range outlives the worker that filled it,
+     * also where the processes don't share the page cache (e.g. a network file system). A worker forces its
+     * ranges before reporting them as filled.
+     */
+    public void force() {
+        this.outputRegion.force();
+    }
+
+    /**
+     * Copy the output values into the hole pixels of the raster, and unmark them.
+     *
+     * @param raster the raster the job was created from. All the ranges must be filled.
+     */
+    public void copyTo(Raster raster) {
+        for (int pixel = 0; pixel < getPixelsCount(); pixel++) {
+            int index = this.pixels.get(pixel);
+            int x = index % this.width;
+            int y = index / this.width;
+            for (int channel = 0; channel < this.channels; channel++) {
+                raster.set(x, y, channel, this.output.get(pixel * this.channels + channel));
+            }
+            raster.clearHole(x, y);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+    private long cost(int hole) {
+        return Math.max(1, this.boundaryOffsets[hole + 1] - this.boundaryOffsets[hole]);
+    }
+
+    private void writeHole(PixelSet hole, int pixelOffset, Boundary boundary, int boundaryOffset) {
+        for (int i = 0; i < hole.size(); i++) {
+            this.pixels.put(pixelOffset + i, hole.indexAt(i));
+        }
+
+        for (int i = 0; i < boundary.size(); i++) {
+            this.xs.put(boundaryOffset + i, boundary.getXs()[i]);
+            this.ys.put(boundaryOffset + i, boundary.getYs()[i]);
+        }
+        for (int i = 0; i < boundary.size() * this.channels; i++) {
+            this.values.put(boundaryOffset * this.channels + i, boundary.getValues()[i]);
+        }
+    }
+
+    private Boundary readBoundary(int hole) {
+        int offset = this.boundaryOffsets[hole];
+        int size = this.boundaryOffsets[hole + 1] - offset;
+        int[] xs = new int[size];
+        int[] ys = new int[size];
+        float[] values = new float[size * this.channels];
+
+        for (int i = 0; i < size; i++) {
+            xs[i] = this.xs.get(offset + i);
+            ys[i] = this.ys.get(offset + i);
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.values.get(offset * this.channels + i);
+        }
+
+        return new Boundary(xs, ys, values, size, this.channels);
+    }
+
+    private MappedByteBuffer map(long position, long bytes) throws IOException {
+        return map(this.file, position, bytes);
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file, long position, long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A region of the fill job doesn't fit in 2 GB.");
+        }
+
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, bytes);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+}
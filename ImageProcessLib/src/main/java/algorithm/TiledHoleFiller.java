@@ -0,0 +1,217 @@
+package algorithm;
+
+import image.FloatRaster;
+import image.MappedTileStore;
+import metrics.AlgorithmListener;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import utils.PixelSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fills the holes of an image that is kept in a MappedTileStore, one hole at a time. <br>
+ * The holes are found by a streaming connected component labeling that keeps only two rows in memory,
+ * and each hole is then filled by the given algorithm on a window that covers only the hole and its boundary. <br>
+ * The window is a FloatRaster on the heap, so the peak memory is bounded by the tiles that are mapped and by
+ * the bounding box of the largest hole (a few bytes per pixel of it, with the scratch arrays of the algorithm),
+ * not by the tile size. An image whose holes are small next to it is filled in little memory, a hole whose
+ * bounding box doesn't fit in the heap can't be filled.
+ */
+public class TiledHoleFiller {
+
+    /**
+     * @param store     the image to fill, where hole pixels hold FloatRaster.HOLE_VALUE.
+     * @param algorithm the algorithm that fills the holes of a single window.
+     */
+    public static void fill(MappedTileStore store, ImageProcessAlgorithm algorithm) {
+        fill(store, algorithm, AlgorithmListener.NONE);
+    }
+
+    /**
+     * @param store     the image to fill, where hole pixels hold FloatRaster.HOLE_VALUE.
+     * @param algorithm the algorithm that fills the holes of a single window.
+     * @param listener  receives the measurements of every window the algorithm is invoked on.
+     */
+    public static void fill(MappedTileStore store, ImageProcessAlgorithm algorithm, AlgorithmListener listener) {
+        int width = store.getWidth();
+        int height = store.getHeight();
+        int[] previousLabels = new int[width];
+        int[] labels = new int[width];
+        float[] row = new float[width];
+        HoleBounds bounds = new HoleBounds();
+
+        // Label the hole pixels row by row, keeping the bounding box and a representative pixel of each label
+        for (int y = 0; y < height; y++) {
+            store.readRow(y, row);
+            for (int x = 0; x < width; x++) {
+                if (row[x] != FloatRaster.HOLE_VALUE) {
+                    labels[x] = 0;
+                    continue;
+                }
+
+                int label = x > 0 ? labels[x - 1] : 0;
+                for (int neighborX = Math.max(x - 1, 0); neighborX <= Math.min(x + 1, width - 1); neighborX++) {
+                    int neighborLabel = previousLabels[neighborX];
+                    if (neighborLabel != 0) {
+                        if (label == 0) {
+                            label = neighborLabel;
+                        } else {
+                            bounds.union(label, neighborLabel);
+                        }
+                    }
+                }
+
+                if (label == 0) {
+                    label = bounds.newLabel(y * (long) width + x);
+                }
+                bounds.include(label, x, y);
+                labels[x] = label;
+            }
+
+            int[] swap = previousLabels;
+            previousLabels = labels;
+            labels = swap;
+        }
+
+        for (int label = 1; label <= bounds.count; label++) {
+            int root = bounds.find(label);
+            if (root == label) {
+                long representative = bounds.representatives[root];
+                int representativeX = (int) (representative % width);
+                int representativeY = (int) (representative / width);
+
+                // A hole that was completely inside the window of a previous hole is already filled
+                if (store.get(representativeX, representativeY) == FloatRaster.HOLE_VALUE) {
+                    fillWindow(store, algorithm, listener,
+                            Math.max(bounds.minX[root] - 1, 0), Math.max(bounds.minY[root] - 1, 0),
+                            Math.min(bounds.maxX[root] + 1, width - 1), Math.min(bounds.maxY[root] + 1, height - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Fill the holes that lie completely inside the window [minX, maxX] x [minY, maxY].
+     * Holes that are cut by the window edges are hidden from the algorithm and left for their own window.
+     */
+    private static void fillWindow(MappedTileStore store, ImageProcessAlgorithm algorithm,
+                                   AlgorithmListener listener, int minX, int minY, int maxX, int maxY) {
+        FloatRaster window = store.read(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        List<PixelSet> cutHoles = new ArrayList<>();
+        List<PixelSet> innerHoles = new ArrayList<>();
+        for (PixelSet hole : CommonOp.findAllHoles(window)) {
+            (isCut(hole, window, minX, minY, store) ? cutHoles : innerHoles).add(hole);
+        }
+
+        for (PixelSet hole : cutHoles) {
+            for (int i = 0; i < hole.size(); i++) {
+                window.set(hole.xAt(i), hole.yAt(i), 0);
+            }
+        }
+
+        // The holes of the window were just found, so a raster algorithm is handed them instead of finding them again
+        if (algorithm instanceof RasterProcessAlgorithm) {
+            ((RasterProcessAlgorithm) algorithm).invoke(window, innerHoles, listener);
+        } else {
+            Mat mat = new Mat(window.getHeight(), window.getWidth(), CvType.CV_32FC1);
+            window.syncTo(mat);
+            System.arraycopy(FloatRaster.fromMat(algorithm.invoke(mat, listener)).getData(), 0,
+                    window.getData(), 0, window.getData().length);
+            mat.release();
+        }
+
+        for (PixelSet hole : cutHoles) {
+            for (int i = 0; i < hole.size(); i++) {
+                window.set(hole.xAt(i), hole.yAt(i), FloatRaster.HOLE_VALUE);
+            }
+        }
+
+        store.write(window, minX, minY);
+    }
+
+    /**
+     * @return true if the hole touches an edge of the window that isn't an edge of the image as well.
+     */
+    private static boolean isCut(PixelSet hole, FloatRaster window, int windowX, int windowY, MappedTileStore store) {
+        for (int i = 0; i < hole.size(); i++) {
+            int x = hole.xAt(i);
+            int y = hole.yAt(i);
+            if ((x == 0 && windowX > 0) || (y == 0 && windowY > 0) ||
+                    (x == window.getWidth() - 1 && windowX + x < store.getWidth() - 1) ||
+                    (y == window.getHeight() - 1 && windowY + y < store.getHeight() - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Union-find over the provisional labels, with the bounding box and the first pixel of each label.
+     */
+    private static class HoleBounds {
+        private int count;
+        private int[] parents = new int[16];
+        private int[] minX = new int[16];
+        private int[] minY = new int[16];
+        private int[] maxX = new int[16];
+        private int[] maxY = new int[16];
+        private long[] representatives = new long[16];
+
+        int newLabel(long representative) {
+            int label = ++this.count;
+            if (label == this.parents.length) {
+                int capacity = this.parents.length * 2;
+                this.parents = Arrays.copyOf(this.parents, capacity);
+                this.minX = Arrays.copyOf(this.minX, capacity);
+                this.minY = Arrays.copyOf(this.minY, capacity);
+                this.maxX = Arrays.copyOf(this.maxX, capacity);
+                this.maxY = Arrays.copyOf(this.maxY, capacity);
+                this.representatives = Arrays.copyOf(this.representatives, capacity);
+            }
+
+            this.parents[label] = label;
+            this.minX[label] = Integer.MAX_VALUE;
+            this.minY[label] = Integer.MAX_VALUE;
+            this.maxX[label] = -1;
+            this.maxY[label] = -1;
+            this.representatives[label] = representative;
+            return label;
+        }
+
+        void include(int label, int x, int y) {
+            int root = find(label);
+            this.minX[root] = Math.min(this.minX[root], x);
+            this.minY[root] = Math.min(this.minY[root], y);
+            this.maxX[root] = Math.max(this.maxX[root], x);
+            this.maxY[root] = Math.max(this.maxY[root], y);
+        }
+
+        int find(int label) {
+            while (this.parents[label] != label) {
+                this.parents[label] = this.parents[this.parents[label]];
+                label = this.parents[label];
+            }
+            return label;
+        }
+
+        void union(int firstLabel, int secondLabel) {
+            int firstRoot = find(firstLabel);
+            int secondRoot = find(secondLabel);
+            if (firstRoot == secondRoot) {
+                return;
+            }
+
+            int root = Math.min(firstRoot, secondRoot);
+            int child = Math.max(firstRoot, secondRoot);
+            this.parents[child] = root;
+            this.minX[root] = Math.min(this.minX[root], this.minX[child]);
+            this.minY[root] = Math.min(this.minY[root], this.minY[child]);
+            this.maxX[root] = Math.max(this.maxX[root], this.maxX[child]);
+            this.maxY[root] = Math.max(this.maxY[root], this.maxY[child]);
+            this.representatives[root] = Math.min(this.representatives[root], this.representatives[child]);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package algorithm;
+
+import image.Raster;
+import metrics.AlgorithmListener;
+import metrics.Phase;
+import metrics.PhaseRecorder;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Same as HoleFillingAlgorithm, but every hole pixel is only weighted against the part of the boundary around it
+ * that is needed to keep the error of its value within maxError times the range of the boundary values
+ * (see BoundaryGrid.interpolate). With a large zFactor the weights fall off so fast that only a few cells of the
+ * boundary are visited for most pixels. <br>
+ * A weighting function that isn't radial gives no such bound, so every hole pixel is weighted against the whole
+ * boundary, like in HoleFillingAlgorithm.
+ */
+public class TruncatedHoleFillingAlgorithm extends RasterProcessAlgorithm {
+
+    private final PixelConnectivity pixelConnectivity;
+    private final WeightingFunction weightingFunction;
+    private final float maxError;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param maxError the maximal error of a pixel value, relative to the range of the boundary values.
+     * @param pool     the pool to compute the hole pixels on, or null to compute them serially.
+     */
+    TruncatedHoleFillingAlgorithm(WeightingFunction weightingFunction,
+                                  PixelConnectivity pixelConnectivity,
+                                  float maxError,
+                                  ForkJoinPool pool) {
+        this.pool = pool;
+        this.weightingFunction = weightingFunction;
+        this.pixelConnectivity = pixelConnectivity;
+        this.maxError = maxError;
+    }
+
+    private void fillHole(Raster raster, PixelSet holeCoords, PixelSet foundBoundary, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        WeightingFunction weightingFunction = recorder.countEvaluations(this.weightingFunction);
+        Boundary boundary = Boundary.create(raster, foundBoundary != null ? foundBoundary :
+                CommonOp.findBoundaryPixels(raster, holeCoords, this.pixelConnectivity));
+        recorder.lap(Phase.BoundaryExtraction);
+        if (boundary.size() == 0) {
+            return;
+        }
+
+        if (weightingFunction.isRadial()) {
+            BoundaryGrid grid = BoundaryGrid.create(boundary, weightingFunction);
+            recorder.lap(Phase.BoundaryOrdering);
+            HoleFillTask.fill(this.pool, holeCoords, grid.size(),
+                    (x, y, weights, values) ->
+                            grid.interpolate(weightingFunction, x, y, this.maxError, weights, values), raster);
+        } else {
+            HoleFillTask.fill(this.pool, holeCoords, boundary.size(),
+                    (x, y, weights, values) ->
+                            boundary.interpolate(weightingFunction, x, y, weights, values), raster);
+        }
+        recorder.lap(Phase.Interpolation);
+        recorder.holeProcessed(holeCoords.size(), boundary.size());
+    }
+
+    /**
+     * Find all the holes in the image and fill each one of them against its own boundary.
+     */
+    @Override
+    protected void process(Raster raster, AlgorithmListener listener) {
+        PhaseRecorder recorder = PhaseRecorder.start(listener);
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(raster, this.pixelConnectivity, boundaries);
+        recorder.lap(Phase.HoleDetection);
+        fillHoles(raster, holes, boundaries, listener);
+    }
+
+    @Override
+    protected void process(Raster raster, List<PixelSet> holes, AlgorithmListener listener) {
+        fillHoles(raster, holes, null, listener);
+    }
+
+    /**
+     * @param boundaries the boundary of each hole, or null to find the boundary of each hole on its own.
+     */
+    private void fillHoles(Raster raster, List<PixelSet> holes, List<PixelSet> boundaries,
+                           AlgorithmListener listener) {
+        HoleFillTask.forEachHole(this.pool, holes.size(), hole -> fillHole(raster, holes.get(hole),
+                boundaries == null ? null : boundaries.get(hole), listener));
+    }
+}
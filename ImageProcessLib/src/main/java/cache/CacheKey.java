@@ -0,0 +1,155 @@
+package cache;
+
+import image.FloatRaster;
+import image.Raster;
+
+/**
+ * A 128 bit content hash of a raster (its size, values and holes) together with the parameters
+ * of the algorithm that processes it. <br>
+ * The hash is a fast non-cryptographic one: two 64 bit multiply-rotate lanes over the raw bits of the values,
+ * so accidental collisions are negligible, but it must not be trusted with rasters crafted to collide.
+ */
+public final class CacheKey {
+    private static final long PRIME1 = 0x9E3779B97F4A7C15L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private final long high;
+    private final long low;
+
+    private CacheKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param parameters identifies the algorithm and its parameters, e.g. its name with the z factor,
+     *                   the epsilon and the pixels connectivity.
+     */
+    public static CacheKey of(Raster raster, String parameters) {
+        Hasher hasher = new Hasher();
+        hasher.add(((long) raster.getWidth() << 32) | raster.getHeight());
+        hasher.add(raster.getChannels());
+
+        // The values are hashed by their raw bits, two values per step for a float raster
+        if (raster instanceof FloatRaster) {
+            float[] data = ((FloatRaster) raster).getData();
+            int length = raster.getWidth() * raster.getHeight() * raster.getChannels();
+            int i = 0;
+            for (; i + 1 < length; i += 2) {
+                hasher.add(((long) Float.floatToRawIntBits(data[i]) << 32) |
+                        (Float.floatToRawIntBits(data[i + 1]) & 0xFFFFFFFFL));
+            }
+            if (i < length) {
+                hasher.add(Float.floatToRawIntBits(data[i]));
+            }
+        } else {
+            for (int y = 0; y < raster.getHeight(); y++) {
+                for (int x = 0; x < raster.getWidth(); x++) {
+                    for (int channel = 0; channel < raster.getChannels(); channel++) {
+                        hasher.add(Float.floatToRawIntBits(raster.get(x, y, channel)));
+                    }
+                }
+            }
+        }
+
+        // The holes of a mask aren't part of the values, so they are hashed as a bitmap of 64 pixels per step
+        if (raster.hasHoleMask()) {
+            long bits = 0;
+            int pixel = 0;
+            for (int y = 0; y < raster.getHeight(); y++) {
+                for (int x = 0; x < raster.getWidth(); x++, pixel++) {
+                    if (raster.isHole(x, y)) {
+                        bits |= 1L << (pixel & 63);
+                    }
+                    if ((pixel & 63) == 63) {
+                        hasher.add(bits);
+                        bits = 0;
+                    }
+                }
+            }
+            hasher.add(bits);
+        }
+
+        hasher.add(parameters.length());
+        for (int c = 0; c < parameters.length(); c++) {
+            hasher.add(parameters.charAt(c));
+        }
+
+        return hasher.finish();
+    }
+
+    /**
+     * @param hex 32 hexadecimal digits, as returned by toString().
+     */
+    public static CacheKey parse(String hex) {
+        if (hex.length() != 32) {
+            throw new IllegalArgumentException("Expected 32 hexadecimal digits, got " + hex);
+        }
+
+        return new CacheKey(Long.parseUnsignedLong(hex.substring(0, 16), 16),
+                Long.parseUnsignedLong(hex.substring(16), 16));
+    }
+
+    long getHigh() {
+        return this.high;
+    }
+
+    long getLow() {
+        return this.low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+
+        CacheKey key = (CacheKey) o;
+        return this.high == key.high && this.low == key.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (this.low ^ (this.low >>> 32));
+    }
+
+    /**
+     * @return the key as 32 hexadecimal digits, e.g. for a file name.
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", this.high, this.low);
+    }
+
+    private static class Hasher {
+        private long high = PRIME3;
+        private long low = PRIME4;
+        private long length;
+
+        void add(long value) {
+            this.high = Long.rotateLeft(this.high ^ value * PRIME1, 29) * PRIME2;
+            this.low = Long.rotateLeft(this.low + value * PRIME2, 31) * PRIME1;
+            this.length++;
+        }
+
+        CacheKey finish() {
+            long high = mix(this.high ^ this.length);
+            long low = mix(this.low + high);
+            return new CacheKey(high, low);
+        }
+
+        /**
+         * The 64 bit finalizer of MurmurHash3, so every input bit affects every output bit.
+         */
+        private static long mix(long value) {
+            value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+            value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            return value ^ (value >>> 33);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cache;
+
+import image.FloatRaster;
+import image.Raster;
+
+import java.util.Arrays;
+
+/**
+ * The values of a processed raster, together with the pixels that were left as holes (e.g. a hole that
+ * covers the whole raster). <br>
+ * Immutable, so a single instance may be applied by many threads at once.
+ */
+public final class CachedResult {
+    // Rough size of the objects and array headers of an entry, for the memory budget
+    private static final long OVERHEAD_BYTES = 96;
+
+    private final float[] data;
+    private final int[] remainingHoles;
+
+    CachedResult(float[] data, int[] remainingHoles) {
+        this.data = data;
+        this.remainingHoles = remainingHoles;
+    }
+
+    /**
+     * @param raster a processed raster. Its values are copied, so the raster may be reused.
+     */
+    public static CachedResult of(Raster raster) {
+        int length = raster.getWidth() * raster.getHeight() * raster.getChannels();
+        int[] remainingHoles = new int[0];
+        int count = 0;
+
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                if (raster.isHole(x, y)) {
+                    if (count == remainingHoles.length) {
+                        remainingHoles = Arrays.copyOf(remainingHoles, Math.max(16, 2 * count));
+                    }
+                    remainingHoles[count++] = y * raster.getWidth() + x;
+                }
+            }
+        }
+
+        float[] data;
+        if (raster instanceof FloatRaster) {
+            data = Arrays.copyOf(((FloatRaster) raster).getData(), length);
+        } else {
+            data = new float[length];
+            for (int y = 0, i = 0; y < raster.getHeight(); y++) {
+                for (int x = 0; x < raster.getWidth(); x++) {
+                    for (int channel = 0; channel < raster.getChannels(); channel++) {
+                        data[i++] = raster.get(x, y, channel);
+                    }
+                }
+            }
+        }
+
+        return new CachedResult(data, Arrays.copyOf(remainingHoles, count));
+    }
+
+    /**
+     * Copy the values into the raster and unmark the holes of its mask that were filled.
+     *
+     * @param raster a raster with the size of the processed one.
+     */
+    public void applyTo(Raster raster) {
+        if (raster.getWidth() * raster.getHeight() * raster.getChannels() != this.data.length) {
+            throw new IllegalArgumentException("The raster doesn't have the size of the cached result.");
+        }
+
+        if (raster instanceof FloatRaster) {
+            System.arraycopy(this.data, 0, ((FloatRaster) raster).getData(), 0, this.data.length);
+        } else {
+            for (int y = 0, i = 0; y < raster.getHeight(); y++) {
+                for (int x = 0; x < raster.getWidth(); x++) {
+                    for (int channel = 0; channel < raster.getChannels(); channel++) {
+                        raster.set(x, y, channel, this.data[i++]);
+                    }
+                }
+            }
+        }
+        if (raster.hasHoleMask()) {
+            int next = 0;
+            for (int y = 0, pixel = 0; y < raster.getHeight(); y++) {
+                for (int x = 0; x < raster.getWidth(); x++, pixel++) {
+                    if (next < this.remainingHoles.length && this.remainingHoles[next] == pixel) {
+                        next++;
+                    } else {
+                        raster.clearHole(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the approximate number of bytes the result takes in memory.
+     */
+    public long getBytes() {
+        return OVERHEAD_BYTES + 4L * this.data.length + 4L * this.remainingHoles.length;
+    }
+
+    float[] getData() {
+        return this.data;
+    }
+
+    int[] getRemainingHoles() {
+        return this.remainingHoles;
+    }
+}
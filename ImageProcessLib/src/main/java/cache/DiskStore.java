@@ -0,0 +1,232 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The on-disk tier of a ResultCache: a file per result, named by its key, in a directory that outlives the JVM.
+ * The files are evicted in least recently used order once their total size exceeds the byte budget, where
+ * the use of a file is kept as its modification time, so the order survives a restart. <br>
+ * The files are read and written outside the lock of the index, and a file is only moved into place once it's
+ * complete, so concurrent readers never see a partial result. <br>
+ * A file is [magic][version][key][values length][remaining holes length][values][remaining holes].
+ */
+class DiskStore {
+    private static final int MAGIC = 0x52435348;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final String SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long budget;
+    // The size of every file in the directory, from the least to the most recently used
+    private final LinkedHashMap<CacheKey, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long evictions;
+
+    /**
+     * Index the results that are already in the directory, and drop the files left over by an interrupted write.
+     */
+    DiskStore(Path directory, long budget) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.budget = budget;
+
+        List<Path> results = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                } else if (name.endsWith(SUFFIX) && name.length() == 32 + SUFFIX.length()) {
+                    results.add(path);
+                }
+            }
+        }
+        results.sort(Comparator.comparing(DiskStore::lastModified));
+
+        synchronized (this.files) {
+            for (Path path : results) {
+                String name = path.getFileName().toString();
+                try {
+                    long size = Files.size(path);
+                    this.files.put(CacheKey.parse(name.substring(0, 32)), size);
+                    this.bytes += size;
+                } catch (IllegalArgumentException e) {
+                    // Not a file of the cache
+                }
+            }
+            evict();
+        }
+    }
+
+    /**
+     * @return the result of the key, or null if it isn't in the directory.
+     * @throws IOException if the file can't be read or isn't a valid result, in which case it's dropped.
+     */
+    CachedResult read(CacheKey key) throws IOException {
+        synchronized (this.files) {
+            if (this.files.get(key) == null) {
+                return null;
+            }
+        }
+
+        Path path = path(key);
+        try {
+            CachedResult result = decode(key, ByteBuffer.wrap(Files.readAllBytes(path)));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return result;
+        } catch (NoSuchFileException e) {
+            // Evicted while it was being looked up
+            forget(key);
+            return null;
+        } catch (IOException | RuntimeException e) {
+            forget(key);
+            Files.deleteIfExists(path);
+            throw e instanceof IOException ? (IOException) e : new IOException("Invalid cache file " + path, e);
+        }
+    }
+
+    /**
+     * Store the result, unless it alone exceeds the budget, and evict the least recently used results
+     * that no longer fit.
+     */
+    void write(CacheKey key, CachedResult result) throws IOException {
+        ByteBuffer buffer = encode(key, result);
+        long size = buffer.capacity();
+        if (size > this.budget) {
+            return;
+        }
+
+        Path temporary = Files.createTempFile(this.directory, key.toString(), TEMPORARY_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            synchronized (this.files) {
+                Files.move(temporary, path(key), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                Long previous = this.files.put(key, size);
+                this.bytes += size - (previous != null ? previous : 0);
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    int getEntries() {
+        synchronized (this.files) {
+            return this.files.size();
+        }
+    }
+
+    long getBytes() {
+        synchronized (this.files) {
+            return this.bytes;
+        }
+    }
+
+    long getEvictions() {
+        synchronized (this.files) {
+            return this.evictions;
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the rest fit in the budget. Called with the lock of the index.
+     */
+    private void evict() throws IOException {
+        Iterator<Map.Entry<CacheKey, Long>> eldest = this.files.entrySet().iterator();
+
+        while (this.bytes > this.budget && eldest.hasNext()) {
+            Map.Entry<CacheKey, Long> entry = eldest.next();
+            eldest.remove();
+            this.bytes -= entry.getValue();
+            this.evictions++;
+            Files.deleteIfExists(path(entry.getKey()));
+        }
+    }
+
+    private void forget(CacheKey key) {
+        synchronized (this.files) {
+            Long size = this.files.remove(key);
+            if (size != null) {
+                this.bytes -= size;
+            }
+        }
+    }
+
+    private Path path(CacheKey key) {
+        return this.directory.resolve(key + SUFFIX);
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static ByteBuffer encode(CacheKey key, CachedResult result) {
+        float[] data = result.getData();
+        int[] remainingHoles = result.getRemainingHoles();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * data.length + 4 * remainingHoles.length);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(key.getHigh()).putLong(key.getLow())
+                .putInt(data.length).putInt(remainingHoles.length);
+        buffer.asFloatBuffer().put(data);
+        ((Buffer) buffer).position(buffer.position() + 4 * data.length);
+        buffer.asIntBuffer().put(remainingHoles);
+        ((Buffer) buffer).rewind();
+
+        return buffer;
+    }
+
+    private static CachedResult decode(CacheKey key, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a cached result.");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cached result version " + version);
+        }
+        if (buffer.getLong() != key.getHigh() || buffer.getLong() != key.getLow()) {
+            throw new IOException("The cached result doesn't belong to the key " + key);
+        }
+
+        int dataLength = buffer.getInt();
+        int remainingHolesLength = buffer.getInt();
+        if (dataLength < 0 || remainingHolesLength < 0 ||
+                buffer.remaining() != 4L * dataLength + 4L * remainingHolesLength) {
+            throw new IOException("Truncated cached result.");
+        }
+
+        float[] data = new float[dataLength];
+        int[] remainingHoles = new int[remainingHolesLength];
+        buffer.asFloatBuffer().get(data);
+        ((Buffer) buffer).position(buffer.position() + 4 * data.length);
+        buffer.asIntBuffer().get(remainingHoles);
+
+        return new CachedResult(data, remainingHoles);
+    }
+}
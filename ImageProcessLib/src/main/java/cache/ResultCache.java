@@ -0,0 +1,167 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A content-addressed cache of processed rasters, so a raster that was already processed with the same
+ * parameters (a retry, a duplicate upload, the same mask on the same image) is copied instead of processed. <br>
+ * Results are kept in a memory tier, evicted in least recently used order by a byte budget, and optionally
+ * written through to a disk tier (see DiskStore) that has its own byte budget and outlives the JVM. A result
+ * found on disk is promoted back into memory. <br>
+ * The cache is best effort: a disk tier that fails to read or write is counted and treated as a miss, so it never
+ * fails the processing. Thread safe - two threads that miss the same key at once both process it.
+ */
+public class ResultCache {
+    private final long memoryBudget;
+    // From the least to the most recently used
+    private final LinkedHashMap<CacheKey, CachedResult> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final DiskStore disk;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder memoryEvictions = new LongAdder();
+    private final LongAdder diskErrors = new LongAdder();
+
+    /**
+     * @param memoryBudget the number of bytes the results in memory may take.
+     */
+    public ResultCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.disk = null;
+    }
+
+    /**
+     * @param memoryBudget the number of bytes the results in memory may take.
+     * @param directory    the directory of the disk tier. The results already in it are reused.
+     * @param diskBudget   the number of bytes the files of the disk tier may take.
+     */
+    public ResultCache(long memoryBudget, Path directory, long diskBudget) throws IOException {
+        this.memoryBudget = memoryBudget;
+        this.disk = new DiskStore(directory, diskBudget);
+    }
+
+    /**
+     * @return the result of the key, or null on a miss.
+     */
+    public CachedResult get(CacheKey key) {
+        CachedResult result;
+        synchronized (this.memory) {
+            result = this.memory.get(key);
+        }
+        if (result != null) {
+            this.memoryHits.increment();
+            return result;
+        }
+
+        if (this.disk != null) {
+            try {
+                result = this.disk.read(key);
+            } catch (IOException e) {
+                this.diskErrors.increment();
+            }
+            if (result != null) {
+                this.diskHits.increment();
+                putInMemory(key, result);
+                return result;
+            }
+        }
+
+        this.misses.increment();
+        return null;
+    }
+
+    public void put(CacheKey key, CachedResult result) {
+        putInMemory(key, result);
+
+        if (this.disk != null) {
+            try {
+                this.disk.write(key, result);
+            } catch (IOException e) {
+                this.diskErrors.increment();
+            }
+        }
+    }
+
+    private void putInMemory(CacheKey key, CachedResult result) {
+        if (result.getBytes() > this.memoryBudget) {
+            return;
+        }
+
+        synchronized (this.memory) {
+            CachedResult previous = this.memory.put(key, result);
+            this.memoryBytes += result.getBytes() - (previous != null ? previous.getBytes() : 0);
+
+            Iterator<Map.Entry<CacheKey, CachedResult>> eldest = this.memory.entrySet().iterator();
+            while (this.memoryBytes > this.memoryBudget) {
+                this.memoryBytes -= eldest.next().getValue().getBytes();
+                eldest.remove();
+                this.memoryEvictions.increment();
+            }
+        }
+    }
+
+    public long getMemoryHits() {
+        return this.memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return this.diskHits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getMemoryEvictions() {
+        return this.memoryEvictions.sum();
+    }
+
+    public long getDiskEvictions() {
+        return this.disk != null ? this.disk.getEvictions() : 0;
+    }
+
+    /**
+     * @return the number of disk reads and writes that failed and were treated as misses.
+     */
+    public long getDiskErrors() {
+        return this.diskErrors.sum();
+    }
+
+    public int getMemoryEntries() {
+        synchronized (this.memory) {
+            return this.memory.size();
+        }
+    }
+
+    public long getMemoryBytes() {
+        synchronized (this.memory) {
+            return this.memoryBytes;
+        }
+    }
+
+    public int getDiskEntries() {
+        return this.disk != null ? this.disk.getEntries() : 0;
+    }
+
+    public long getDiskBytes() {
+        return this.disk != null ? this.disk.getBytes() : 0;
+    }
+
+    /**
+     * @return the counters and the occupancy of the tiers as key=value lines.
+     */
+    @Override
+    public String toString() {
+        return String.format("cache.hits.memory=%d%ncache.hits.disk=%d%ncache.misses=%d%n" +
+                        "cache.evictions.memory=%d%ncache.evictions.disk=%d%ncache.errors.disk=%d%n" +
+                        "cache.entries.memory=%d%ncache.bytes.memory=%d%ncache.entries.disk=%d%ncache.bytes.disk=%d%n",
+                getMemoryHits(), getDiskHits(), getMisses(), getMemoryEvictions(), getDiskEvictions(),
+                getDiskErrors(), getMemoryEntries(), getMemoryBytes(), getDiskEntries(), getDiskBytes());
+    }
+}
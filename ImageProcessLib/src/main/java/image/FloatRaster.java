@@ -0,0 +1,159 @@
+package image;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * The pixels of an image with one or more float channels, interleaved row by row. <br>
+ * The holes are either marked by HOLE_VALUE in the first channel, or by a separate hole mask,
+ * in which case the values of the hole pixels are ignored.
+ */
+public class FloatRaster implements Raster {
+    public static final float HOLE_VALUE = -1f;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final float[] data;
+    private boolean[] holes;
+
+    private FloatRaster(int width, int height, int channels, float[] data) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.data = data;
+    }
+
+    public static FloatRaster create(int width, int height) {
+        return create(width, height, 1);
+    }
+
+    public static FloatRaster create(int width, int height, int channels) {
+        return new FloatRaster(width, height, channels, new float[width * height * channels]);
+    }
+
+    /**
+     * @param image Mat object of type CV_32FC1, or CV_32F with more channels.
+     * @return a raster that holds a copy of the image pixels, copied with a single bulk transfer.
+     */
+    public static FloatRaster fromMat(Mat image) {
+        return fromMat(image, new float[image.width() * image.height() * image.channels()]);
+    }
+
+    /**
+     * Same as fromMat(Mat), but the pixels are copied into the given array instead of a new one.
+     *
+     * @param data an array of exactly width * height * channels floats, that backs the returned raster.
+     */
+    public static FloatRaster fromMat(Mat image, float[] data) {
+        if (image.depth() != CvType.CV_32F) {
+            throw new IllegalArgumentException("Expected a CV_32F image, got " + CvType.typeToString(image.type()));
+        }
+        if (data.length != image.width() * image.height() * image.channels()) {
+            throw new IllegalArgumentException("Array length doesn't match the image size.");
+        }
+
+        FloatRaster raster = new FloatRaster(image.width(), image.height(), image.channels(), data);
+        image.get(0, 0, raster.data);
+
+        return raster;
+    }
+
+    /**
+     * @param image Mat object of type CV_32F with the same size and channels as the raster.
+     */
+    @Override
+    public void syncTo(Mat image) {
+        if (image.width() != this.width || image.height() != this.height || image.channels() != this.channels) {
+            throw new IllegalArgumentException("Image size doesn't match the raster size.");
+        }
+
+        image.put(0, 0, this.data);
+    }
+
+    /**
+     * Mark the holes by a mask instead of by HOLE_VALUE.
+     *
+     * @param mask Mat object of type CV_8UC1 with the size of the raster, where every non zero pixel is a hole.
+     */
+    public void setHoleMask(Mat mask) {
+        if (mask.type() != CvType.CV_8UC1 || mask.width() != this.width || mask.height() != this.height) {
+            throw new IllegalArgumentException("Expected a CV_8UC1 mask with the size of the raster.");
+        }
+
+        byte[] maskData = new byte[this.width * this.height];
+        mask.get(0, 0, maskData);
+        this.holes = new boolean[maskData.length];
+        for (int i = 0; i < maskData.length; i++) {
+            this.holes[i] = maskData[i] != 0;
+        }
+    }
+
+    @Override
+    public boolean hasHoleMask() {
+        return this.holes != null;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return the backing array, laid out row by row with interleaved channels
+     * (index = (y * width + x) * channels + channel).
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    @Override
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height;
+    }
+
+    @Override
+    public float get(int x, int y) {
+        return this.data[(y * this.width + x) * this.channels];
+    }
+
+    @Override
+    public void set(int x, int y, float value) {
+        this.data[(y * this.width + x) * this.channels] = value;
+    }
+
+    @Override
+    public float get(int x, int y, int channel) {
+        return this.data[(y * this.width + x) * this.channels + channel];
+    }
+
+    @Override
+    public void set(int x, int y, int channel, float value) {
+        this.data[(y * this.width + x) * this.channels + channel] = value;
+    }
+
+    @Override
+    public boolean isHole(int x, int y) {
+        return this.holes != null ? this.holes[y * this.width + x] : get(x, y) == HOLE_VALUE;
+    }
+
+    /**
+     * Pixels marked by HOLE_VALUE are unmarked by setting their value.
+     */
+    @Override
+    public void clearHole(int x, int y) {
+        if (this.holes != null) {
+            this.holes[y * this.width + x] = false;
+        }
+    }
+}
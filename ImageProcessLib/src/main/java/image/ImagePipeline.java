@@ -0,0 +1,322 @@
+package image;
+
+import algorithm.HoleLabeler;
+import algorithm.ImageProcessAlgorithm;
+import algorithm.RasterProcessAlgorithm;
+import metrics.AlgorithmListener;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import utils.PixelSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the operations that take an image from its file to the filled file - load, normalize, merge the mask,
+ * fill, denormalize and save - and runs them only once a sink (save, encode or toImageWrapper) needs the result,
+ * without materializing a Mat between them: <br>
+ * - a single pass over the rows of the decoded image and mask normalizes the image, merges the mask into it and
+ * labels the holes, and the first fill gets the labeled holes instead of scanning the image for them again. <br>
+ * - the fills process the raster in place, and are skipped if the mask has no holes. <br>
+ * - the denormalization rounds the raster straight into the 8 bit pixels the sink writes. <br>
+ * Without normalize(), the image is filled in its own depth and colors, like ImageWrapper.create(Mat, Mat). <br>
+ * The Mat objects given to a pipeline are owned by it: the mask is released once it's merged, and the image is
+ * released, or kept by the returned ImageWrapper.
+ */
+public class ImagePipeline {
+    // The largest sum of the three channels of a dark mask pixel, whose average is below 0.5
+    private static final int MAX_HOLE_SUM = 382;
+    // The normalized average of every sum of the three channels of an 8 bit pixel, as a float division gives it
+    private static final float[] AVERAGES = new float[3 * 255 + 1];
+
+    static {
+        for (int sum = 0; sum < AVERAGES.length; sum++) {
+            AVERAGES[sum] = sum / (3 * 255f);
+        }
+    }
+
+    private String imagePath;
+    private Mat image;
+    private boolean normalized;
+    private String maskPath;
+    private Mat mask;
+    private final List<ImageProcessAlgorithm> algorithms = new ArrayList<>();
+    private final List<AlgorithmListener> listeners = new ArrayList<>();
+    private boolean denormalized;
+
+    ImagePipeline() {
+    }
+
+    /**
+     * @param imagePath path to an RGB image, of 8 or 16 bits per channel.
+     */
+    public ImagePipeline load(String imagePath) {
+        checkStage(!isLoaded(), "The image is already loaded.");
+        this.imagePath = imagePath;
+        return this;
+    }
+
+    /**
+     * @param image Mat object of type CV_8U or CV_16U with any number of channels, that was already decoded.
+     */
+    public ImagePipeline load(Mat image) {
+        checkStage(!isLoaded(), "The image is already loaded.");
+        this.image = image;
+        return this;
+    }
+
+    /**
+     * Average the channels of the image into a normalized grayscale image, where the holes are marked by
+     * FloatRaster.HOLE_VALUE. The image must be of type CV_8UC3.
+     */
+    public ImagePipeline normalize() {
+        checkStage(isLoaded() && this.algorithms.isEmpty(), "Only a loaded image that wasn't filled is normalized.");
+        this.normalized = true;
+        return this;
+    }
+
+    /**
+     * @param maskPath path to an RGB image with the size of the image, where the dark pixels are holes.
+     */
+    public ImagePipeline mergeMask(String maskPath) {
+        checkStage(isLoaded() && !hasMask() && this.algorithms.isEmpty(),
+                "Only a single mask is merged, into a loaded image that wasn't filled.");
+        this.maskPath = maskPath;
+        return this;
+    }
+
+    /**
+     * @param mask Mat object of type CV_8UC3 with the size of the image, where the dark pixels are holes.
+     */
+    public ImagePipeline mergeMask(Mat mask) {
+        checkStage(isLoaded() && !hasMask() && this.algorithms.isEmpty(),
+                "Only a single mask is merged, into a loaded image that wasn't filled.");
+        this.mask = mask;
+        return this;
+    }
+
+    public ImagePipeline fill(ImageProcessAlgorithm algorithm) {
+        return fill(algorithm, AlgorithmListener.NONE);
+    }
+
+    /**
+     * @param algorithm the algorithm to fill the holes with. An image that isn't normalized keeps its holes in
+     *                  a separate mask, so only a RasterProcessAlgorithm can fill it.
+     * @param listener  receives the measurements of the algorithm invocation.
+     */
+    public ImagePipeline fill(ImageProcessAlgorithm algorithm, AlgorithmListener listener) {
+        checkStage(isLoaded() && !this.denormalized, "Only a loaded image that wasn't denormalized is filled.");
+        if (!this.normalized && !(algorithm instanceof RasterProcessAlgorithm)) {
+            throw new IllegalArgumentException("The holes of an image that isn't normalized can't be marked " +
+                    "by a value, so it's only filled by a RasterProcessAlgorithm.");
+        }
+
+        this.algorithms.add(algorithm);
+        this.listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Round a normalized image back to 8 bits, saturating the holes that were left. An image that wasn't
+     * normalized is left as it is.
+     */
+    public ImagePipeline denormalize() {
+        checkStage(isLoaded(), "Only a loaded image is denormalized.");
+        this.denormalized = true;
+        return this;
+    }
+
+    /**
+     * @return the result of the pipeline. Its Mat is only created once ImageWrapper.getImage() is called.
+     */
+    public ImageWrapper toImageWrapper() {
+        ImageWrapper result = run();
+
+        if (this.normalized && this.denormalized) {
+            // A normalized image is kept in a FloatRaster, even after an algorithm that only gets a Mat
+            result = ImageWrapper.create(null, denormalize((FloatRaster) result.getRaster()));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param path the location where the image should be saved into, its extension is the format.
+     */
+    public void save(String path) {
+        checkStage(!this.normalized || this.denormalized, "A normalized image must be denormalized to be saved.");
+        Mat result = toImageWrapper().getImage();
+
+        Imgcodecs.imwrite(path, result);
+        result.release();
+    }
+
+    /**
+     * @param extension the format to encode the image in, e.g. ".png".
+     * @return the encoded image.
+     */
+    public byte[] encode(String extension) {
+        checkStage(!this.normalized || this.denormalized, "A normalized image must be denormalized to be encoded.");
+        Mat result = toImageWrapper().getImage();
+        MatOfByte buffer = new MatOfByte();
+
+        try {
+            if (!Imgcodecs.imencode(extension, result, buffer)) {
+                throw new IllegalArgumentException("Image couldn't be encoded as " + extension);
+            }
+            return buffer.toArray();
+        } finally {
+            buffer.release();
+            result.release();
+        }
+    }
+
+    private boolean isLoaded() {
+        return this.imagePath != null || this.image != null;
+    }
+
+    private boolean hasMask() {
+        return this.maskPath != null || this.mask != null;
+    }
+
+    private static void checkStage(boolean allowed, String message) {
+        if (!allowed) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Decode the image and the mask, merge them in a single pass and fill the result.
+     *
+     * @return the filled image, with the Mat it was decoded into if it wasn't normalized.
+     */
+    private ImageWrapper run() {
+        Mat image = this.image != null ? this.image : Imgcodecs.imread(this.imagePath,
+                this.normalized ? Imgcodecs.IMREAD_COLOR : Imgcodecs.IMREAD_ANYDEPTH | Imgcodecs.IMREAD_COLOR);
+        Mat mask = this.mask != null ? this.mask :
+                this.maskPath != null ? Imgcodecs.imread(this.maskPath, Imgcodecs.IMREAD_COLOR) : null;
+        Raster raster;
+        HoleLabeler labeler;
+
+        try {
+            validate(image, mask);
+            boolean[] holes = mask != null && !this.normalized ? new boolean[image.width() * image.height()] : null;
+            raster = this.normalized ? FloatRaster.create(image.width(), image.height()) :
+                    IntegerRaster.fromMat(image, holes);
+            // The holes are only labeled for the fills, and only once
+            labeler = mask != null && !this.algorithms.isEmpty() ? new HoleLabeler(raster) : null;
+            merge(image, mask, raster, holes, labeler);
+        } catch (RuntimeException e) {
+            image.release();
+            throw e;
+        } finally {
+            if (mask != null) {
+                mask.release();
+            }
+        }
+
+        if (this.normalized) {
+            image.release();
+            image = null;
+        }
+
+        ImageWrapper result = ImageWrapper.create(image, raster);
+        if (labeler != null && labeler.hasHoles()) {
+            List<PixelSet> holes = this.algorithms.get(0) instanceof RasterProcessAlgorithm ? labeler.finish() : null;
+
+            for (int i = 0; i < this.algorithms.size(); i++) {
+                if (holes != null) {
+                    ((RasterProcessAlgorithm) this.algorithms.get(i)).invoke(result.getRaster(), holes,
+                            this.listeners.get(i));
+                    // The holes of the next fills are what this one left, so they find them on their own
+                    holes = null;
+                } else {
+                    result.applyAlgorithm(this.algorithms.get(i), this.listeners.get(i));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void validate(Mat image, Mat mask) {
+        if (image.empty()) {
+            throw new IllegalArgumentException("Image couldn't be loaded");
+        }
+        if (mask != null && mask.empty()) {
+            throw new IllegalArgumentException("Mask couldn't be loaded");
+        }
+        if (mask != null && (image.width() != mask.width() || image.height() != mask.height())) {
+            throw new IllegalArgumentException("Mask size doesn't match the image size");
+        }
+        if (mask != null && mask.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Expected a CV_8UC3 mask, got " + CvType.typeToString(mask.type()));
+        }
+        if (this.normalized && image.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Expected a CV_8UC3 image to normalize, got " +
+                    CvType.typeToString(image.type()));
+        }
+    }
+
+    /**
+     * Normalize the image into the raster if it's normalized, and mark the dark pixels of the mask as its holes,
+     * one row at a time. Each row is labeled right after it's merged, while it's still in the cache.
+     *
+     * @param holes the hole mask of an IntegerRaster, or null for a FloatRaster.
+     */
+    private void merge(Mat image, Mat mask, Raster raster, boolean[] holes, HoleLabeler labeler) {
+        if (!this.normalized && mask == null) {
+            return;
+        }
+
+        int width = image.width();
+        float[] data = this.normalized ? ((FloatRaster) raster).getData() : null;
+        byte[] imageRow = this.normalized ? new byte[width * 3] : null;
+        byte[] maskRow = mask != null ? new byte[width * 3] : null;
+
+        for (int y = 0; y < image.height(); y++) {
+            if (maskRow != null) {
+                mask.get(y, 0, maskRow);
+            }
+
+            if (this.normalized) {
+                image.get(y, 0, imageRow);
+                for (int x = 0; x < width; x++) {
+                    data[y * width + x] = maskRow != null && sumOf(maskRow, x) <= MAX_HOLE_SUM ?
+                            FloatRaster.HOLE_VALUE : AVERAGES[sumOf(imageRow, x)];
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    holes[y * width + x] = sumOf(maskRow, x) <= MAX_HOLE_SUM;
+                }
+            }
+
+            if (labeler != null) {
+                labeler.scanRow(y);
+            }
+        }
+    }
+
+    /**
+     * @return the raster rounded to 8 bits, saturating the values outside of [0, 1] (e.g. holes).
+     */
+    private static IntegerRaster denormalize(FloatRaster raster) {
+        float[] data = raster.getData();
+        byte[] pixels = new byte[raster.getWidth() * raster.getHeight() * raster.getChannels()];
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) Math.max(0, Math.min(255, Math.round(data[i] * 255.0)));
+        }
+
+        return IntegerRaster.wrap(raster.getWidth(), raster.getHeight(), raster.getChannels(), pixels, null);
+    }
+
+    /**
+     * @return the sum of the three channels of the pixel x in a CV_8UC3 row.
+     */
+    private static int sumOf(byte[] row, int x) {
+        return (row[x * 3] & 0xFF) + (row[x * 3 + 1] & 0xFF) + (row[x * 3 + 2] & 0xFF);
+    }
+}
@@ -1,25 +1,116 @@
 package image;
 
 import algorithm.ImageProcessAlgorithm;
+import algorithm.RasterProcessAlgorithm;
+import metrics.AlgorithmListener;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 
 public class ImageWrapper {
     private Mat image;
+    private Mat mask;
+    private Raster raster;
+    private boolean rasterDirty;
 
-    private ImageWrapper(Mat image) {
+    private ImageWrapper(Mat image, Mat mask) {
         this.image = image;
+        this.mask = mask;
     }
 
+    /**
+     * @param image Mat object of type CV_32FC1 where the holes are marked by FloatRaster.HOLE_VALUE.
+     */
     public static ImageWrapper create(Mat image) {
-        return new ImageWrapper(image);
+        return new ImageWrapper(image, null);
+    }
+
+    /**
+     * @param image Mat object of type CV_32F with any number of channels (e.g. CV_32FC3 for color images),
+     *              or of type CV_8U / CV_16U, which is then filled in its own depth (see IntegerRaster).
+     * @param mask  Mat object of type CV_8UC1 with the size of the image, where every non zero pixel is a hole.
+     */
+    public static ImageWrapper create(Mat image, Mat mask) {
+        return new ImageWrapper(image, mask);
+    }
+
+    /**
+     * @param image Mat object the raster is written back into, or null to create one only when it's needed.
+     * @param raster the pixels of the image, with their holes.
+     */
+    static ImageWrapper create(Mat image, Raster raster) {
+        ImageWrapper wrapper = new ImageWrapper(image, null);
+        wrapper.raster = raster;
+        wrapper.rasterDirty = true;
+
+        return wrapper;
+    }
+
+    /**
+     * @return a new pipeline, which records the operations from loading an image to saving it filled
+     * and runs them together, in as few passes as it can.
+     */
+    public static ImagePipeline pipeline() {
+        return new ImagePipeline();
     }
 
     public Mat getImage() {
+        if (this.image == null) {
+            this.image = new Mat(this.raster.getHeight(), this.raster.getWidth(), typeOf(this.raster));
+        }
+        if (this.rasterDirty) {
+            this.raster.syncTo(this.image);
+            this.rasterDirty = false;
+        }
+
         return image;
     }
 
+    /**
+     * Replace the image. The hole mask, if there was one, is dropped.
+     */
     public void setImage(Mat image) {
         this.image = image;
+        this.mask = null;
+        this.raster = null;
+        this.rasterDirty = false;
+    }
+
+    /**
+     * @return a raster view of the image - a FloatRaster for a CV_32F image, or an IntegerRaster for
+     * a CV_8U / CV_16U one. The raster is copied from the image once and kept,
+     * changes made through it are written back to the image on the next call to getImage().
+     */
+    public Raster getRaster() {
+        if (this.raster == null) {
+            if (this.image.depth() == CvType.CV_32F) {
+                FloatRaster floatRaster = FloatRaster.fromMat(this.image);
+                if (this.mask != null) {
+                    floatRaster.setHoleMask(this.mask);
+                }
+                this.raster = floatRaster;
+            } else {
+                if (this.mask == null) {
+                    throw new IllegalArgumentException("The holes of an integer image must be given by a mask.");
+                }
+                this.raster = IntegerRaster.fromMat(this.image, this.mask);
+            }
+        }
+
+        this.rasterDirty = true;
+        return this.raster;
+    }
+
+    /**
+     * Release the native memory of the image and of its hole mask, without creating the image if it wasn't
+     * created yet. The wrapper must not be used afterwards.
+     */
+    public void release() {
+        if (this.image != null) {
+            this.image.release();
+        }
+        if (this.mask != null) {
+            this.mask.release();
+        }
     }
 
     /**
@@ -27,6 +118,55 @@ public class ImageWrapper {
      *                  to apply on the image in this wrapper.
      */
     public void applyAlgorithm(ImageProcessAlgorithm algorithm) {
-        this.image = algorithm.invoke(this.image);
+        applyAlgorithm(algorithm, AlgorithmListener.NONE);
+    }
+
+    /**
+     * @param algorithm an implementation of the interface ImageProcessAlgorithm
+     *                  to apply on the image in this wrapper.
+     * @param listener  receives the measurements of the algorithm invocation.
+     */
+    public void applyAlgorithm(ImageProcessAlgorithm algorithm, AlgorithmListener listener) {
+        if (algorithm instanceof RasterProcessAlgorithm) {
+            ((RasterProcessAlgorithm) algorithm).invoke(getRaster(), listener);
+        } else {
+            if (this.mask != null) {
+                markHoles();
+            }
+
+            this.image = algorithm.invoke(getImage(), listener);
+            this.mask = null;
+            this.raster = null;
+        }
+    }
+
+    /**
+     * @return the type of a Mat that keeps the values of the raster as they are.
+     */
+    private static int typeOf(Raster raster) {
+        if (raster instanceof IntegerRaster) {
+            return ((IntegerRaster) raster).getMaxValue() == 0xFF ? CvType.CV_8UC(raster.getChannels()) :
+                    CvType.CV_16UC(raster.getChannels());
+        }
+
+        return CvType.CV_32FC(raster.getChannels());
+    }
+
+    /**
+     * Mark the holes of the mask by FloatRaster.HOLE_VALUE, for algorithms that only get the image.
+     */
+    private void markHoles() {
+        if (this.image.depth() != CvType.CV_32F) {
+            throw new IllegalArgumentException("The holes of an integer image can't be marked by a value.");
+        }
+        Raster holes = getRaster();
+
+        for (int y = 0; y < holes.getHeight(); y++) {
+            for (int x = 0; x < holes.getWidth(); x++) {
+                if (holes.isHole(x, y)) {
+                    holes.set(x, y, FloatRaster.HOLE_VALUE);
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package image;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * The pixels of an 8 or 16 bit image with one or more channels, interleaved row by row, kept in their own depth
+ * instead of being normalized to floats - a quarter (or a half) of the memory of a FloatRaster, without the
+ * conversion passes. <br>
+ * The values are normalized to [0, 1] as they are read, by the same float scale the conversion of an image to
+ * a FloatRaster multiplies by, and a written value is scaled back, rounded and saturated like the denormalization
+ * of a float image - so the algorithms accumulate the same floats as on the float path, and the result is
+ * rounded the same way. <br>
+ * The holes can't be marked in the values, so they are kept in a separate hole mask.
+ */
+public class IntegerRaster implements Raster {
+    private final int width;
+    private final int height;
+    private final int channels;
+    // Exactly one of them backs the raster, by the depth of the image
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final int maxValue;
+    private final float scale;
+    private final boolean[] holes;
+
+    private IntegerRaster(int width, int height, int channels, byte[] bytes, short[] shorts, boolean[] holes) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.bytes = bytes;
+        this.shorts = shorts;
+        this.maxValue = bytes != null ? 0xFF : 0xFFFF;
+        this.scale = 1f / this.maxValue;
+        this.holes = holes;
+    }
+
+    /**
+     * @param image Mat object of type CV_8U or CV_16U with any number of channels.
+     * @param mask  Mat object of type CV_8UC1 with the size of the image, where every non zero pixel is a hole.
+     * @return a raster that holds a copy of the image pixels, copied with a single bulk transfer.
+     */
+    public static IntegerRaster fromMat(Mat image, Mat mask) {
+        if (mask.type() != CvType.CV_8UC1 || mask.width() != image.width() || mask.height() != image.height()) {
+            throw new IllegalArgumentException("Expected a CV_8UC1 mask with the size of the image.");
+        }
+
+        byte[] maskData = new byte[image.width() * image.height()];
+        boolean[] holes = new boolean[maskData.length];
+        mask.get(0, 0, maskData);
+        for (int i = 0; i < maskData.length; i++) {
+            holes[i] = maskData[i] != 0;
+        }
+
+        return fromMat(image, holes);
+    }
+
+    /**
+     * Same as fromMat(Mat, Mat), for holes that are already in memory.
+     *
+     * @param holes the holes, one per pixel, or null for a raster without holes. The raster keeps the array,
+     *              so holes may still be marked in it after the raster is created.
+     */
+    public static IntegerRaster fromMat(Mat image, boolean[] holes) {
+        int length = image.width() * image.height() * image.channels();
+        IntegerRaster raster;
+
+        if (holes != null && holes.length != image.width() * image.height()) {
+            throw new IllegalArgumentException("Array length doesn't match the image size.");
+        }
+
+        if (image.depth() == CvType.CV_8U) {
+            raster = new IntegerRaster(image.width(), image.height(), image.channels(), new byte[length], null,
+                    holes);
+            image.get(0, 0, raster.bytes);
+        } else if (image.depth() == CvType.CV_16U) {
+            raster = new IntegerRaster(image.width(), image.height(), image.channels(), null, new short[length],
+                    holes);
+            image.get(0, 0, raster.shorts);
+        } else {
+            throw new IllegalArgumentException("Expected a CV_8U or CV_16U image, got " +
+                    CvType.typeToString(image.type()));
+        }
+
+        return raster;
+    }
+
+    /**
+     * A raster of 8 bit pixels that are already in memory, e.g. a raw video frame.
+     *
+     * @param data  the pixels, laid out row by row with interleaved channels. The raster writes into it.
+     * @param holes the holes, one per pixel, or null for a raster without holes (e.g. for a MaskPlan, which fills
+     *              the holes of its own mask).
+     */
+    public static IntegerRaster wrap(int width, int height, int channels, byte[] data, boolean[] holes) {
+        if (data.length != width * height * channels || (holes != null && holes.length != width * height)) {
+            throw new IllegalArgumentException("Array length doesn't match the raster size.");
+        }
+
+        return new IntegerRaster(width, height, channels, data, null, holes);
+    }
+
+    /**
+     * @param image Mat object with the depth of the raster (CV_8U or CV_16U), and the same size and channels.
+     */
+    @Override
+    public void syncTo(Mat image) {
+        if (image.width() != this.width || image.height() != this.height || image.channels() != this.channels) {
+            throw new IllegalArgumentException("Image size doesn't match the raster size.");
+        }
+
+        if (this.bytes != null) {
+            image.put(0, 0, this.bytes);
+        } else {
+            image.put(0, 0, this.shorts);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * @return the largest value of a channel, 255 or 65535.
+     */
+    public int getMaxValue() {
+        return this.maxValue;
+    }
+
+    @Override
+    public float get(int x, int y) {
+        return get(x, y, 0);
+    }
+
+    @Override
+    public float get(int x, int y, int channel) {
+        int index = (y * this.width + x) * this.channels + channel;
+        return (this.bytes != null ? this.bytes[index] & 0xFF : this.shorts[index] & 0xFFFF) * this.scale;
+    }
+
+    @Override
+    public void set(int x, int y, float value) {
+        set(x, y, 0, value);
+    }
+
+    @Override
+    public void set(int x, int y, int channel, float value) {
+        int index = (y * this.width + x) * this.channels + channel;
+        int rounded = (int) Math.max(0, Math.min(this.maxValue, Math.round(value * (double) this.maxValue)));
+
+        if (this.bytes != null) {
+            this.bytes[index] = (byte) rounded;
+        } else {
+            this.shorts[index] = (short) rounded;
+        }
+    }
+
+    @Override
+    public boolean isHole(int x, int y) {
+        return this.holes != null && this.holes[y * this.width + x];
+    }
+
+    @Override
+    public boolean hasHoleMask() {
+        return true;
+    }
+
+    @Override
+    public void clearHole(int x, int y) {
+        if (this.holes != null) {
+            this.holes[y * this.width + x] = false;
+        }
+    }
+}
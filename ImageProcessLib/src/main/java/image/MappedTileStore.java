@@ -0,0 +1,180 @@
+package image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A float raster kept in a raw file instead of on the heap. <br>
+ * The file is split into square tiles that are stored one after the other, and only a bounded number of
+ * recently used tiles is memory-mapped at a time - at least a whole row of tiles and one more, so a scan of the
+ * rows maps each tile once per row of tiles instead of once per row. Pixels are accessed either one by one,
+ * by rows or by rectangular windows, so the memory a job needs is bounded by the tiles and windows it touches
+ * rather than by the size of the image. <br>
+ * Not thread safe.
+ */
+public class MappedTileStore implements Closeable {
+    private static final int DEFAULT_MAPPED_TILES = 256;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesPerRow;
+    private final Map<Integer, FloatBuffer> mappedTiles;
+
+    private MappedTileStore(RandomAccessFile file, int width, int height, int tileSize, int maxMappedTiles) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesPerRow = (width + tileSize - 1) / tileSize;
+        int capacity = Math.max(maxMappedTiles, this.tilesPerRow + 1);
+        this.mappedTiles = new LinkedHashMap<Integer, FloatBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FloatBuffer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param path     the raw file to keep the raster in. It is created, or overwritten if it exists.
+     * @param tileSize the side of a tile in pixels.
+     */
+    public static MappedTileStore create(Path path, int width, int height, int tileSize) throws IOException {
+        return create(path, width, height, tileSize, DEFAULT_MAPPED_TILES);
+    }
+
+    /**
+     * @param maxMappedTiles the maximal number of tiles that are mapped into memory at the same time.
+     *                       It's raised to a row of tiles and one more for wide images.
+     */
+    public static MappedTileStore create(Path path, int width, int height, int tileSize, int maxMappedTiles)
+            throws IOException {
+        if (width <= 0 || height <= 0 || tileSize <= 0 || maxMappedTiles <= 0) {
+            throw new IllegalArgumentException("Invalid tile store dimensions.");
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        MappedTileStore store = new MappedTileStore(file, width, height, tileSize, maxMappedTiles);
+        long tilesCount = (long) store.tilesPerRow * ((height + tileSize - 1) / tileSize);
+        file.setLength(tilesCount * tileSize * tileSize * Float.BYTES);
+
+        return store;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float get(int x, int y) {
+        return tile(x, y).get(offsetInTile(x, y));
+    }
+
+    public void set(int x, int y, float value) {
+        tile(x, y).put(offsetInTile(x, y), value);
+    }
+
+    /**
+     * @param row receives the pixels of row y, must hold at least getWidth() floats.
+     */
+    public void readRow(int y, float[] row) {
+        for (int x = 0; x < this.width; x += this.tileSize) {
+            FloatBuffer tile = tile(x, y);
+            ((Buffer) tile).position(offsetInTile(x, y));
+            tile.get(row, x, Math.min(this.tileSize, this.width - x));
+        }
+    }
+
+    /**
+     * @param row the new pixels of row y, at least getWidth() floats.
+     */
+    public void writeRow(int y, float[] row) {
+        for (int x = 0; x < this.width; x += this.tileSize) {
+            FloatBuffer tile = tile(x, y);
+            ((Buffer) tile).position(offsetInTile(x, y));
+            tile.put(row, x, Math.min(this.tileSize, this.width - x));
+        }
+    }
+
+    /**
+     * @return a copy of the pixels in the given rectangle.
+     */
+    public FloatRaster read(int x0, int y0, int width, int height) {
+        FloatRaster window = FloatRaster.create(width, height);
+        float[] data = window.getData();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x += this.tileSize - (x0 + x) % this.tileSize) {
+                int length = Math.min(this.tileSize - (x0 + x) % this.tileSize, width - x);
+                FloatBuffer tile = tile(x0 + x, y0 + y);
+                ((Buffer) tile).position(offsetInTile(x0 + x, y0 + y));
+                tile.get(data, y * width + x, length);
+            }
+        }
+
+        return window;
+    }
+
+    /**
+     * Copy the pixels of the window into the rectangle of the same size that starts at (x0, y0).
+     */
+    public void write(FloatRaster window, int x0, int y0) {
+        float[] data = window.getData();
+        int width = window.getWidth();
+
+        for (int y = 0; y < window.getHeight(); y++) {
+            for (int x = 0; x < width; x += this.tileSize - (x0 + x) % this.tileSize) {
+                int length = Math.min(this.tileSize - (x0 + x) % this.tileSize, width - x);
+                FloatBuffer tile = tile(x0 + x, y0 + y);
+                ((Buffer) tile).position(offsetInTile(x0 + x, y0 + y));
+                tile.put(data, y * width + x, length);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.mappedTiles.clear();
+        this.channel.close();
+        this.file.close();
+    }
+
+    private int offsetInTile(int x, int y) {
+        return (y % this.tileSize) * this.tileSize + x % this.tileSize;
+    }
+
+    private FloatBuffer tile(int x, int y) {
+        int tileIndex = (y / this.tileSize) * this.tilesPerRow + x / this.tileSize;
+        FloatBuffer tile = this.mappedTiles.get(tileIndex);
+
+        if (tile == null) {
+            long tileBytes = (long) this.tileSize * this.tileSize * Float.BYTES;
+            try {
+                MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                        tileIndex * tileBytes, tileBytes);
+                tile = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+            } catch (IOException e) {
+                throw new IllegalStateException("Couldn't map tile " + tileIndex, e);
+            }
+            this.mappedTiles.put(tileIndex, tile);
+        }
+
+        return tile;
+    }
+}
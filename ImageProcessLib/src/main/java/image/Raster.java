@@ -0,0 +1,56 @@
+package image;
+
+import org.opencv.core.Mat;
+
+/**
+ * The pixels of an image as the hole filling algorithms see them: one or more interleaved channels whose values
+ * are read and written as floats, and holes that are marked either in the values or by a separate hole mask. <br>
+ * Implemented by FloatRaster for normalized float images, and by IntegerRaster for 8 and 16 bit images that are
+ * filled in their own depth.
+ */
+public interface Raster {
+
+    int getWidth();
+
+    int getHeight();
+
+    int getChannels();
+
+    default boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < getWidth() && y < getHeight();
+    }
+
+    /**
+     * @return the value of the first channel of the pixel.
+     */
+    float get(int x, int y);
+
+    float get(int x, int y, int channel);
+
+    /**
+     * Set the value of the first channel of the pixel.
+     */
+    void set(int x, int y, float value);
+
+    void set(int x, int y, int channel, float value);
+
+    boolean isHole(int x, int y);
+
+    /**
+     * @return true if the holes are marked by a separate mask rather than by the values.
+     */
+    boolean hasHoleMask();
+
+    /**
+     * Unmark a pixel of the hole mask once it's filled. Pixels marked by their value are unmarked
+     * by setting it.
+     */
+    void clearHole(int x, int y);
+
+    /**
+     * Write the raster pixels back into the given image with a single bulk transfer.
+     *
+     * @param image Mat object with the depth of the raster, and the same size and channels.
+     */
+    void syncTo(Mat image);
+}
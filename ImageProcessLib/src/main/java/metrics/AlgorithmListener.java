@@ -0,0 +1,90 @@
+package metrics;
+
+import algorithm.ImageProcessAlgorithm;
+
+import java.util.Arrays;
+
+/**
+ * Receives measurements from an algorithm invocation. All the methods do nothing by default. <br>
+ * Holes may be processed concurrently, so implementations must be thread safe.
+ */
+public interface AlgorithmListener {
+    AlgorithmListener NONE = new AlgorithmListener() {
+    };
+
+    /**
+     * Called once, before the algorithm starts processing a width x height image.
+     */
+    default void invocationStarted(ImageProcessAlgorithm algorithm, int width, int height) {
+    }
+
+    /**
+     * @param nanos          the time the phase took. Phases of different holes may overlap.
+     * @param allocatedBytes the bytes allocated by the thread that ran the phase,
+     *                       or 0 if the JVM doesn't measure allocations.
+     */
+    default void phaseCompleted(Phase phase, long nanos, long allocatedBytes) {
+    }
+
+    /**
+     * @param holePixels        the number of pixels in the hole.
+     * @param boundaryPixels    the number of pixels in the boundary of the hole.
+     * @param weightEvaluations the number of times the weighting function was evaluated for the hole.
+     */
+    default void holeProcessed(int holePixels, int boundaryPixels, long weightEvaluations) {
+    }
+
+    /**
+     * Called once, after the algorithm is done.
+     *
+     * @param nanos          the time the whole invocation took.
+     * @param allocatedBytes the bytes allocated by the thread that invoked the algorithm.
+     */
+    default void invocationCompleted(ImageProcessAlgorithm algorithm, long nanos, long allocatedBytes) {
+    }
+
+    /**
+     * @return a listener that forwards every measurement to all of the given listeners.
+     */
+    static AlgorithmListener combine(AlgorithmListener... listeners) {
+        AlgorithmListener[] targets = Arrays.stream(listeners)
+                .filter(listener -> listener != NONE)
+                .toArray(AlgorithmListener[]::new);
+
+        if (targets.length == 0) {
+            return NONE;
+        } else if (targets.length == 1) {
+            return targets[0];
+        }
+
+        return new AlgorithmListener() {
+            @Override
+            public void invocationStarted(ImageProcessAlgorithm algorithm, int width, int height) {
+                for (AlgorithmListener target : targets) {
+                    target.invocationStarted(algorithm, width, height);
+                }
+            }
+
+            @Override
+            public void phaseCompleted(Phase phase, long nanos, long allocatedBytes) {
+                for (AlgorithmListener target : targets) {
+                    target.phaseCompleted(phase, nanos, allocatedBytes);
+                }
+            }
+
+            @Override
+            public void holeProcessed(int holePixels, int boundaryPixels, long weightEvaluations) {
+                for (AlgorithmListener target : targets) {
+                    target.holeProcessed(holePixels, boundaryPixels, weightEvaluations);
+                }
+            }
+
+            @Override
+            public void invocationCompleted(ImageProcessAlgorithm algorithm, long nanos, long allocatedBytes) {
+                for (AlgorithmListener target : targets) {
+                    target.invocationCompleted(algorithm, nanos, allocatedBytes);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package metrics;
+
+import algorithm.ImageProcessAlgorithm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that sums up the measurements of one or more invocations, for a per-job breakdown.
+ */
+public class AlgorithmStats implements AlgorithmListener {
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder holes = new LongAdder();
+    private final LongAdder holePixels = new LongAdder();
+    private final LongAdder boundaryPixels = new LongAdder();
+    private final LongAdder weightEvaluations = new LongAdder();
+    private final LongAdder[] phaseNanos = createAdders(Phase.values().length);
+    private final LongAdder[] phaseAllocatedBytes = createAdders(Phase.values().length);
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos, long allocatedBytes) {
+        this.phaseNanos[phase.ordinal()].add(nanos);
+        this.phaseAllocatedBytes[phase.ordinal()].add(allocatedBytes);
+    }
+
+    @Override
+    public void holeProcessed(int holePixels, int boundaryPixels, long weightEvaluations) {
+        this.holes.increment();
+        this.holePixels.add(holePixels);
+        this.boundaryPixels.add(boundaryPixels);
+        this.weightEvaluations.add(weightEvaluations);
+    }
+
+    @Override
+    public void invocationCompleted(ImageProcessAlgorithm algorithm, long nanos, long allocatedBytes) {
+        this.invocations.increment();
+        this.nanos.add(nanos);
+        this.allocatedBytes.add(allocatedBytes);
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return this.phaseNanos[phase.ordinal()].sum();
+    }
+
+    public long getPhaseAllocatedBytes(Phase phase) {
+        return this.phaseAllocatedBytes[phase.ordinal()].sum();
+    }
+
+    public long getHoles() {
+        return this.holes.sum();
+    }
+
+    public long getHolePixels() {
+        return this.holePixels.sum();
+    }
+
+    public long getBoundaryPixels() {
+        return this.boundaryPixels.sum();
+    }
+
+    public long getWeightEvaluations() {
+        return this.weightEvaluations.sum();
+    }
+
+    public long getNanos() {
+        return this.nanos.sum();
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.sum();
+    }
+
+    /**
+     * @return a multi line breakdown of the measurements. The time of a phase is summed over all the holes,
+     * so with parallel holes it may exceed the total time.
+     */
+    @Override
+    public String toString() {
+        StringBuilder stats = new StringBuilder();
+
+        stats.append(String.format("%d invocation(s) in %.1f ms, %.1f MB allocated by the invoking thread%n",
+                this.invocations.sum(), getNanos() / 1e6, getAllocatedBytes() / 1e6));
+        stats.append(String.format("%d hole(s), %d hole pixels, %d boundary pixels, %d weight evaluations%n",
+                getHoles(), getHolePixels(), getBoundaryPixels(), getWeightEvaluations()));
+
+        for (Phase phase : Phase.values()) {
+            if (this.phaseNanos[phase.ordinal()].sum() > 0) {
+                stats.append(String.format("\t%-20s %10.1f ms %10.1f MB%n", phase,
+                        getPhaseNanos(phase) / 1e6, getPhaseAllocatedBytes(phase) / 1e6));
+            }
+        }
+
+        return stats.toString();
+    }
+
+    private static LongAdder[] createAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
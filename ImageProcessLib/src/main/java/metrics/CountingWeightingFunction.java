@@ -0,0 +1,45 @@
+package metrics;
+
+import image.Pixel;
+import weighting.function.WeightingFunction;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the evaluations of another weighting function.
+ */
+class CountingWeightingFunction implements WeightingFunction {
+    private final WeightingFunction weightingFunction;
+    private final LongAdder evaluations = new LongAdder();
+
+    CountingWeightingFunction(WeightingFunction weightingFunction) {
+        this.weightingFunction = weightingFunction;
+    }
+
+    long getEvaluations() {
+        return this.evaluations.sum();
+    }
+
+    @Override
+    public float calculate(Pixel firstPixelCoord, Pixel secondPixelCoord) {
+        this.evaluations.increment();
+        return this.weightingFunction.calculate(firstPixelCoord, secondPixelCoord);
+    }
+
+    @Override
+    public float calculate(int firstX, int firstY, int secondX, int secondY) {
+        this.evaluations.increment();
+        return this.weightingFunction.calculate(firstX, firstY, secondX, secondY);
+    }
+
+    @Override
+    public void calculate(int x, int y, int[] xs, int[] ys, int count, float[] weights) {
+        this.evaluations.add(count);
+        this.weightingFunction.calculate(x, y, xs, ys, count, weights);
+    }
+
+    @Override
+    public boolean isRadial() {
+        return this.weightingFunction.isRadial();
+    }
+}
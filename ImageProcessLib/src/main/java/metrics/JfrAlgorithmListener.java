@@ -0,0 +1,40 @@
+package metrics;
+
+/**
+ * Creates the listener that emits the measurements as JDK Flight Recorder events. <br>
+ * The events extend jdk.jfr.Event, so they are compiled for Java 11 apart from the rest of the library
+ * (src/main/java11, built by the jfr profile on JDK 11 or later) and loaded by reflection - on an older JVM,
+ * or in a build without them, there is simply no recording listener.
+ */
+public final class JfrAlgorithmListener {
+    private static final String LISTENER_CLASS = "metrics.FlightRecorderListener";
+
+    private JfrAlgorithmListener() {
+    }
+
+    /**
+     * @return true if the JVM supports JFR and a recording is running (e.g. with -XX:StartFlightRecording).
+     */
+    public static boolean isRecording() {
+        try {
+            return (Boolean) Class.forName(LISTENER_CLASS).getDeclaredMethod("isRecording").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return a listener that emits JFR events if a recording is running, or AlgorithmListener.NONE otherwise.
+     */
+    public static AlgorithmListener create() {
+        if (!isRecording()) {
+            return AlgorithmListener.NONE;
+        }
+
+        try {
+            return (AlgorithmListener) Class.forName(LISTENER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return AlgorithmListener.NONE;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package metrics;
+
+/**
+ * The phases a hole filling algorithm goes through. Not every algorithm goes through all of them.
+ */
+public enum Phase {
+    HoleDetection,
+    BoundaryExtraction,
+    BoundaryOrdering,
+    SectionAveraging,
+    Interpolation
+}
@@ -0,0 +1,104 @@
+package metrics;
+
+import algorithm.ImageProcessAlgorithm;
+import weighting.function.WeightingFunction;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the phases of an algorithm on the current thread and reports them to a listener. <br>
+ * A recorder of the NONE listener does nothing, so algorithms can record unconditionally.
+ */
+public class PhaseRecorder {
+    private static final PhaseRecorder DISABLED = new PhaseRecorder(AlgorithmListener.NONE);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATIONS_SUPPORTED = isAllocationMeasurementSupported();
+
+    private final AlgorithmListener listener;
+    private final long startNanos;
+    private final long startBytes;
+    private long lapNanos;
+    private long lapBytes;
+    private CountingWeightingFunction countingWeightingFunction;
+
+    private PhaseRecorder(AlgorithmListener listener) {
+        this.listener = listener;
+        this.startNanos = this.lapNanos = listener == AlgorithmListener.NONE ? 0 : System.nanoTime();
+        this.startBytes = this.lapBytes = listener == AlgorithmListener.NONE ? 0 : allocatedBytes();
+    }
+
+    /**
+     * Start measuring the first phase.
+     */
+    public static PhaseRecorder start(AlgorithmListener listener) {
+        return listener == AlgorithmListener.NONE ? DISABLED : new PhaseRecorder(listener);
+    }
+
+    /**
+     * Report the phase that ended now, and start measuring the next one.
+     */
+    public void lap(Phase phase) {
+        if (this == DISABLED) {
+            return;
+        }
+
+        long nanos = System.nanoTime();
+        long bytes = allocatedBytes();
+        this.listener.phaseCompleted(phase, nanos - this.lapNanos, bytes - this.lapBytes);
+        this.lapNanos = nanos;
+        this.lapBytes = bytes;
+    }
+
+    /**
+     * @return a weighting function that counts its evaluations for holeProcessed(),
+     * or the given function itself if nothing is recorded.
+     */
+    public WeightingFunction countEvaluations(WeightingFunction weightingFunction) {
+        if (this == DISABLED) {
+            return weightingFunction;
+        }
+
+        this.countingWeightingFunction = new CountingWeightingFunction(weightingFunction);
+        return this.countingWeightingFunction;
+    }
+
+    /**
+     * Report a hole, with the evaluations of the function returned by countEvaluations().
+     */
+    public void holeProcessed(int holePixels, int boundaryPixels) {
+        if (this == DISABLED) {
+            return;
+        }
+
+        this.listener.holeProcessed(holePixels, boundaryPixels,
+                this.countingWeightingFunction == null ? 0 : this.countingWeightingFunction.getEvaluations());
+    }
+
+    /**
+     * Report the whole invocation, since this recorder was started.
+     */
+    public void invocationCompleted(ImageProcessAlgorithm algorithm) {
+        if (this == DISABLED) {
+            return;
+        }
+
+        this.listener.invocationCompleted(algorithm, System.nanoTime() - this.startNanos,
+                allocatedBytes() - this.startBytes);
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS_SUPPORTED ?
+                ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId()) :
+                0;
+    }
+
+    private static boolean isAllocationMeasurementSupported() {
+        try {
+            return THREADS instanceof com.sun.management.ThreadMXBean &&
+                    ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
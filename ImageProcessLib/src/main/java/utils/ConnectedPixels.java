@@ -6,6 +6,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ConnectedPixels {
+    private static final int[] FOUR_CONNECTED_X_OFFSETS = {0, 1, 0, -1};
+    private static final int[] FOUR_CONNECTED_Y_OFFSETS = {-1, 0, 1, 0};
+    private static final int[] EIGHT_CONNECTED_X_OFFSETS = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] EIGHT_CONNECTED_Y_OFFSETS = {-1, -1, 0, 1, 1, 1, 0, -1};
+
     /**
      * @param pixel              A pixel to get it's neighbors.
      * @param connectivityMethod A flag (enum) that indicates how to decide whether a particular pixel
@@ -53,4 +58,22 @@ public class ConnectedPixels {
 
         return neighbors;
     }
-}
\ No newline at end of file
+
+    /**
+     * @param connectivityMethod A flag (enum) that indicates which pixels are considered neighbors.
+     * @return the x offsets of the neighbors from a pixel, in the same order as getPixelNeighbors.
+     */
+    public static int[] getNeighborsXOffsets(PixelConnectivity connectivityMethod) {
+        return connectivityMethod == PixelConnectivity.FourConnected ?
+                FOUR_CONNECTED_X_OFFSETS.clone() : EIGHT_CONNECTED_X_OFFSETS.clone();
+    }
+
+    /**
+     * @param connectivityMethod A flag (enum) that indicates which pixels are considered neighbors.
+     * @return the y offsets of the neighbors from a pixel, in the same order as getPixelNeighbors.
+     */
+    public static int[] getNeighborsYOffsets(PixelConnectivity connectivityMethod) {
+        return connectivityMethod == PixelConnectivity.FourConnected ?
+                FOUR_CONNECTED_Y_OFFSETS.clone() : EIGHT_CONNECTED_Y_OFFSETS.clone();
+    }
+}
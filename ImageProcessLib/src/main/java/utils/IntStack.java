@@ -0,0 +1,53 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * A growable stack of primitive ints, e.g. the packed indices of the pixels a flood fill still has to visit,
+ * so no object is allocated per pushed value.
+ */
+public class IntStack {
+    private int[] values;
+    private int size;
+
+    public IntStack() {
+        this(16);
+    }
+
+    public IntStack(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    public void push(int value) {
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * @return the value that was pushed last. The stack must not be empty.
+     */
+    public int pop() {
+        return this.values[--this.size];
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * @return the values of the stack from the bottom to the top.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+}
@@ -0,0 +1,128 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * A compact set of pixel coordinates. <br>
+ * Each pixel is stored as the packed index y * imageWidth + x. Membership is kept in a bitset over a
+ * rectangular region of the image and the pixels themselves are kept in insertion order in a dense int array,
+ * so no object is allocated per pixel.
+ */
+public class PixelSet {
+    private final int imageWidth;
+    private final int regionX;
+    private final int regionY;
+    private final int regionWidth;
+    private final int regionHeight;
+    private final long[] bits;
+    private int[] indices;
+    private int size;
+
+    /**
+     * Create a set that may hold any pixel of a width x height image.
+     */
+    public PixelSet(int width, int height) {
+        this(width, 0, 0, width, height, 16);
+    }
+
+    /**
+     * Create a set that may only hold pixels inside the given region of the image.
+     *
+     * @param imageWidth   the width of the image the pixels belong to.
+     * @param regionX      the left column of the region.
+     * @param regionY      the top row of the region.
+     * @param regionWidth  the width of the region.
+     * @param regionHeight the height of the region.
+     * @param capacity     the number of pixels the set is expected to hold.
+     */
+    public PixelSet(int imageWidth, int regionX, int regionY, int regionWidth, int regionHeight, int capacity) {
+        this.imageWidth = imageWidth;
+        this.regionX = regionX;
+        this.regionY = regionY;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+        this.bits = new long[(int) (((long) regionWidth * regionHeight + 63) >>> 6)];
+        this.indices = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @param capacity the number of pixels the new set is expected to hold.
+     * @return an empty set that may hold the same pixels as this set.
+     */
+    public PixelSet createEmptyCopy(int capacity) {
+        return new PixelSet(this.imageWidth, this.regionX, this.regionY, this.regionWidth, this.regionHeight, capacity);
+    }
+
+    /**
+     * @return true if the pixel wasn't in the set already. The pixel must be inside the set region.
+     */
+    public boolean add(int x, int y) {
+        int bit = bitOf(x, y);
+        long mask = 1L << bit;
+
+        if ((this.bits[bit >>> 6] & mask) != 0) {
+            return false;
+        }
+
+        this.bits[bit >>> 6] |= mask;
+        if (this.size == this.indices.length) {
+            this.indices = Arrays.copyOf(this.indices, this.size * 2);
+        }
+        this.indices[this.size++] = y * this.imageWidth + x;
+
+        return true;
+    }
+
+    public boolean addIndex(int index) {
+        return add(index % this.imageWidth, index / this.imageWidth);
+    }
+
+    /**
+     * @return true if the pixel is in the set. Pixels outside of the set region are never in the set.
+     */
+    public boolean contains(int x, int y) {
+        if (x < this.regionX || y < this.regionY ||
+                x >= this.regionX + this.regionWidth || y >= this.regionY + this.regionHeight) {
+            return false;
+        }
+
+        int bit = bitOf(x, y);
+        return (this.bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    public boolean containsIndex(int index) {
+        return contains(index % this.imageWidth, index / this.imageWidth);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param i the insertion position of a pixel, in the range [0, size).
+     * @return the packed index of the pixel.
+     */
+    public int indexAt(int i) {
+        return this.indices[i];
+    }
+
+    public int xAt(int i) {
+        return this.indices[i] % this.imageWidth;
+    }
+
+    public int yAt(int i) {
+        return this.indices[i] / this.imageWidth;
+    }
+
+    public int getImageWidth() {
+        return this.imageWidth;
+    }
+
+    private int bitOf(int x, int y) {
+        return (y - this.regionY) * this.regionWidth + (x - this.regionX);
+    }
+}
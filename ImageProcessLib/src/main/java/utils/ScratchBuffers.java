@@ -0,0 +1,80 @@
+package utils;
+
+/**
+ * Per-thread scratch arrays that are reused by every invocation on the thread, so a long running process
+ * that applies the algorithms many times doesn't allocate them again for every image. <br>
+ * An array is only valid until the next request of the same slot on the same thread, so it must never
+ * escape the method that requested it, and that method must not request the same slot again while using it
+ * (e.g. by invoking another algorithm on a Mat). <br>
+ * Arrays longer than MAX_RETAINED_LENGTH are handed out but not kept.
+ */
+public class ScratchBuffers {
+    public static final int MAX_RETAINED_LENGTH = 1 << 24;
+
+    private static final ThreadLocal<ScratchBuffers> BUFFERS = ThreadLocal.withInitial(ScratchBuffers::new);
+
+    public enum Slot {
+        Labels,
+        Weights,
+        Raster,
+        NearbyXs,
+        NearbyYs,
+        NearbyValues
+    }
+
+    private final int[][] ints = new int[Slot.values().length][];
+    private final float[][] floats = new float[Slot.values().length][];
+
+    private ScratchBuffers() {
+    }
+
+    /**
+     * @return the scratch arrays of the calling thread.
+     */
+    public static ScratchBuffers current() {
+        return BUFFERS.get();
+    }
+
+    /**
+     * @return an array of at least minLength elements, with arbitrary content.
+     */
+    public int[] ints(Slot slot, int minLength) {
+        int[] array = this.ints[slot.ordinal()];
+
+        if (array == null || array.length < minLength) {
+            array = new int[minLength];
+            this.ints[slot.ordinal()] = minLength <= MAX_RETAINED_LENGTH ? array : null;
+        }
+
+        return array;
+    }
+
+    /**
+     * @return an array of at least minLength elements, with arbitrary content.
+     */
+    public float[] floats(Slot slot, int minLength) {
+        float[] array = this.floats[slot.ordinal()];
+
+        if (array == null || array.length < minLength) {
+            array = new float[minLength];
+            this.floats[slot.ordinal()] = minLength <= MAX_RETAINED_LENGTH ? array : null;
+        }
+
+        return array;
+    }
+
+    /**
+     * @return an array of exactly length elements, with arbitrary content. The retained array is reused
+     * when the requested length doesn't change between calls, e.g. for images of the same size.
+     */
+    public float[] exactFloats(Slot slot, int length) {
+        float[] array = this.floats[slot.ordinal()];
+
+        if (array == null || array.length != length) {
+            array = new float[length];
+            this.floats[slot.ordinal()] = length <= MAX_RETAINED_LENGTH ? array : null;
+        }
+
+        return array;
+    }
+}
@@ -2,6 +2,11 @@ package weighting.function;
 
 import image.Pixel;
 
+/**
+ * w(a, b) = 1 / (||a - b|| ^ z + epsilon) <br>
+ * The power is computed by multiplications of the squared distance (and a single square root for an odd z),
+ * which is both faster than Math.pow and lets the batch loops below be vectorized by the JIT.
+ */
 public class DefaultWeightingFunction implements WeightingFunction {
     private final float epsilon;
     private final int zFactor;
@@ -13,10 +18,94 @@ public class DefaultWeightingFunction implements WeightingFunction {
 
     @Override
     public float calculate(Pixel firstPixelCoord, Pixel secondPixelCoord) {
-        double distanceElOne = Math.pow(secondPixelCoord.getX() - firstPixelCoord.getX(), 2);
-        double distanceElTwo = Math.pow(secondPixelCoord.getY() - firstPixelCoord.getY(), 2);
-        double distance = Math.sqrt(distanceElOne + distanceElTwo);
+        return calculate(firstPixelCoord.getX(), firstPixelCoord.getY(),
+                secondPixelCoord.getX(), secondPixelCoord.getY());
+    }
+
+    @Override
+    public float calculate(int firstX, int firstY, int secondX, int secondY) {
+        double distanceX = secondX - firstX;
+        double distanceY = secondY - firstY;
+
+        return weight(distanceX * distanceX + distanceY * distanceY);
+    }
+
+    /**
+     * The common zFactor values get their own branch free loop, so each one of them can be compiled
+     * into SIMD instructions.
+     */
+    @Override
+    public void calculate(int x, int y, int[] xs, int[] ys, int count, float[] weights) {
+        double epsilon = this.epsilon;
 
-        return (float) (1 / (Math.pow(distance, this.zFactor) + this.epsilon));
+        switch (this.zFactor) {
+            case 1:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    weights[i] = (float) (1 / (Math.sqrt(dx * dx + dy * dy) + epsilon));
+                }
+                break;
+            case 2:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    weights[i] = (float) (1 / ((dx * dx + dy * dy) + epsilon));
+                }
+                break;
+            case 3:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    double squared = dx * dx + dy * dy;
+                    weights[i] = (float) (1 / (Math.sqrt(squared) * squared + epsilon));
+                }
+                break;
+            case 4:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    double squared = dx * dx + dy * dy;
+                    weights[i] = (float) (1 / (squared * squared + epsilon));
+                }
+                break;
+            case 5:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    double squared = dx * dx + dy * dy;
+                    weights[i] = (float) (1 / (Math.sqrt(squared) * squared * squared + epsilon));
+                }
+                break;
+            case 6:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    double squared = dx * dx + dy * dy;
+                    weights[i] = (float) (1 / (squared * squared * squared + epsilon));
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    weights[i] = weight(dx * dx + dy * dy);
+                }
+        }
+    }
+
+    /**
+     * @param squaredDistance the squared euclidean distance between two pixels.
+     */
+    float weight(double squaredDistance) {
+        int power = Math.abs(this.zFactor);
+        double result = (power & 1) == 1 ? Math.sqrt(squaredDistance) : 1;
+
+        for (int i = 0; i < power / 2; i++) {
+            result *= squaredDistance;
+        }
+        if (this.zFactor < 0) {
+            result = 1 / result;
+        }
+
+        return (float) (1 / (result + this.epsilon));
+    }
+
+    @Override
+    public boolean isRadial() {
+        return this.zFactor >= 0;
     }
 }
@@ -0,0 +1,114 @@
+package weighting.function;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A table of the default weighting function values indexed by the squared distance between two pixels. <br>
+ * Kernels are shared by every weighting function with the same zFactor and epsilon through a small LRU cache,
+ * which is bounded by the total size of the tables it holds (MAX_CACHED_BYTES) - an evicted kernel is still used
+ * by the functions that already have it, and is collected with them.
+ * A kernel's table grows on demand (by doubling) up to MAX_TABLE_SIZE entries, larger distances are
+ * computed directly.
+ */
+class RadialKernel {
+    static final int MAX_TABLE_SIZE = 1 << 24;
+    private static final int INITIAL_TABLE_SIZE = 1 << 12;
+    // Two tables of the largest size
+    private static final long MAX_CACHED_BYTES = 2L * Float.BYTES * MAX_TABLE_SIZE;
+    private static final LinkedHashMap<Long, RadialKernel> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final DefaultWeightingFunction function;
+    private volatile float[] table;
+
+    private RadialKernel(int zFactor, float epsilon) {
+        this.function = new DefaultWeightingFunction(zFactor, epsilon);
+        this.table = new float[0];
+        ensureCapacity(INITIAL_TABLE_SIZE - 1);
+    }
+
+    /**
+     * @return the shared kernel of the given parameters.
+     */
+    static RadialKernel of(int zFactor, float epsilon) {
+        Long key = ((long) zFactor << 32) | (Float.floatToIntBits(epsilon) & 0xFFFFFFFFL);
+
+        synchronized (cache) {
+            RadialKernel kernel = cache.get(key);
+            if (kernel == null) {
+                kernel = new RadialKernel(zFactor, epsilon);
+                cache.put(key, kernel);
+                trimCache();
+            }
+            return kernel;
+        }
+    }
+
+    /**
+     * Evict the least recently used kernels until the tables of the cached kernels fit in MAX_CACHED_BYTES.
+     * The most recently used kernel is kept, whatever its size.
+     */
+    private static void trimCache() {
+        long bytes = 0;
+        for (RadialKernel kernel : cache.values()) {
+            bytes += (long) Float.BYTES * kernel.table.length;
+        }
+
+        Iterator<RadialKernel> eldest = cache.values().iterator();
+        while (bytes > MAX_CACHED_BYTES && cache.size() > 1) {
+            bytes -= (long) Float.BYTES * eldest.next().table.length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @param squaredDistance the squared euclidean distance between two pixels, computed in long so the distances
+     *                        of large images don't overflow.
+     * @return the weight of two pixels with that distance between them.
+     */
+    float weight(long squaredDistance) {
+        float[] table = this.table;
+
+        if (squaredDistance < table.length) {
+            return table[(int) squaredDistance];
+        } else if (squaredDistance < MAX_TABLE_SIZE) {
+            return ensureCapacity((int) squaredDistance)[(int) squaredDistance];
+        } else {
+            return this.function.weight(squaredDistance);
+        }
+    }
+
+    /**
+     * @return a table that holds at least the entries up to maxSquaredDistance (bounded by MAX_TABLE_SIZE).
+     */
+    float[] ensureCapacity(int maxSquaredDistance) {
+        float[] table = this.table;
+        if (maxSquaredDistance < table.length || table.length == MAX_TABLE_SIZE) {
+            return table;
+        }
+
+        synchronized (this) {
+            table = this.table;
+            if (maxSquaredDistance >= table.length && table.length < MAX_TABLE_SIZE) {
+                int newSize = Math.max(table.length, INITIAL_TABLE_SIZE);
+                while (newSize <= maxSquaredDistance && newSize < MAX_TABLE_SIZE) {
+                    newSize *= 2;
+                }
+
+                float[] newTable = Arrays.copyOf(table, newSize);
+                for (int squaredDistance = table.length; squaredDistance < newSize; squaredDistance++) {
+                    newTable[squaredDistance] = this.function.weight(squaredDistance);
+                }
+                this.table = table = newTable;
+            }
+        }
+
+        // The table grew, so the cache may hold too many bytes now
+        synchronized (cache) {
+            trimCache();
+        }
+
+        return table;
+    }
+}
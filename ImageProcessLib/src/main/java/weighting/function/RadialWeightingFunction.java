@@ -0,0 +1,53 @@
+package weighting.function;
+
+import image.Pixel;
+
+/**
+ * Same weights as the default weighting function, looked up by the squared distance between the two pixels
+ * in a precomputed table that is shared by every instance with the same zFactor and epsilon.
+ */
+public class RadialWeightingFunction implements WeightingFunction {
+    private final RadialKernel kernel;
+    private final boolean radial;
+
+    RadialWeightingFunction(int zFactor, float epsilon) {
+        this.kernel = RadialKernel.of(zFactor, epsilon);
+        this.radial = zFactor >= 0;
+    }
+
+    /**
+     * Build the table for every distance in a width x height image up front.
+     */
+    RadialWeightingFunction(int zFactor, float epsilon, int width, int height) {
+        this(zFactor, epsilon);
+        long maxSquaredDistance = (long) (width - 1) * (width - 1) + (long) (height - 1) * (height - 1);
+        this.kernel.ensureCapacity((int) Math.min(maxSquaredDistance, RadialKernel.MAX_TABLE_SIZE - 1));
+    }
+
+    @Override
+    public float calculate(Pixel firstPixelCoord, Pixel secondPixelCoord) {
+        return calculate(firstPixelCoord.getX(), firstPixelCoord.getY(),
+                secondPixelCoord.getX(), secondPixelCoord.getY());
+    }
+
+    @Override
+    public float calculate(int firstX, int firstY, int secondX, int secondY) {
+        long distanceX = secondX - firstX;
+        long distanceY = secondY - firstY;
+
+        return this.kernel.weight(distanceX * distanceX + distanceY * distanceY);
+    }
+
+    @Override
+    public void calculate(int x, int y, int[] xs, int[] ys, int count, float[] weights) {
+        for (int i = 0; i < count; i++) {
+            long dx = xs[i] - x, dy = ys[i] - y;
+            weights[i] = this.kernel.weight(dx * dx + dy * dy);
+        }
+    }
+
+    @Override
+    public boolean isRadial() {
+        return this.radial;
+    }
+}
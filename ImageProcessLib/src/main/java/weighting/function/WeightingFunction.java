@@ -12,4 +12,37 @@ public interface WeightingFunction {
      * @return A float that represents the result of the invocation of the weighting function over the two pixels.
      */
     float calculate(Pixel firstPixelCoord, Pixel secondPixelCoord);
+
+    /**
+     * Same as calculate(Pixel, Pixel) for pixels given by their coordinates.
+     * Implementations should override it to avoid creating Pixel objects.
+     */
+    default float calculate(int firstX, int firstY, int secondX, int secondY) {
+        return calculate(new Pixel(firstX, firstY), new Pixel(secondX, secondY));
+    }
+
+    /**
+     * Calculate the weights of a single pixel against many pixels at once.
+     * Implementations may override it with a faster, vectorized version.
+     *
+     * @param x       the column of the pixel.
+     * @param y       the row of the pixel.
+     * @param xs      the columns of the other pixels.
+     * @param ys      the rows of the other pixels.
+     * @param count   the number of other pixels.
+     * @param weights receives the weight of the pixel against each of the other pixels.
+     */
+    default void calculate(int x, int y, int[] xs, int[] ys, int count, float[] weights) {
+        for (int i = 0; i < count; i++) {
+            weights[i] = calculate(x, y, xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * @return true if the weight of two pixels depends only on the euclidean distance between them and
+     * doesn't grow as the distance grows. Algorithms may rely on it to reorganize the calculation.
+     */
+    default boolean isRadial() {
+        return false;
+    }
 }
@@ -5,4 +5,19 @@ public class WeightingFunctionFactory {
     public static WeightingFunction CreateDefault(int zFactor, float epsilon) {
         return new DefaultWeightingFunction(zFactor, epsilon);
     }
+
+    /**
+     * @return the default weighting function, computed by a lookup in a shared table of squared distances.
+     */
+    public static WeightingFunction CreateRadial(int zFactor, float epsilon) {
+        return new RadialWeightingFunction(zFactor, epsilon);
+    }
+
+    /**
+     * @return the default weighting function, computed by a lookup in a shared table of squared distances
+     * that already covers every distance in a width x height image.
+     */
+    public static WeightingFunction CreateRadial(int zFactor, float epsilon, int width, int height) {
+        return new RadialWeightingFunction(zFactor, epsilon, width, height);
+    }
 }
@@ -0,0 +1,63 @@
+package metrics;
+
+import algorithm.ImageProcessAlgorithm;
+
+/**
+ * Emits the measurements as JDK Flight Recorder events, so they can be correlated with GC and other JVM events
+ * in the same recording. <br>
+ * Compiled for Java 11 apart from the rest of the library, and only loaded through JfrAlgorithmListener.
+ */
+class FlightRecorderListener implements AlgorithmListener {
+    private final ThreadLocal<int[]> sizes = ThreadLocal.withInitial(() -> new int[2]);
+
+    /**
+     * @return true if a recording is running (e.g. with -XX:StartFlightRecording).
+     */
+    static boolean isRecording() {
+        return jdk.jfr.FlightRecorder.isInitialized() &&
+                !jdk.jfr.FlightRecorder.getFlightRecorder().getRecordings().isEmpty();
+    }
+
+    @Override
+    public void invocationStarted(ImageProcessAlgorithm algorithm, int width, int height) {
+        int[] size = this.sizes.get();
+        size[0] = width;
+        size[1] = height;
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos, long allocatedBytes) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.elapsed = nanos;
+            event.allocated = allocatedBytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void holeProcessed(int holePixels, int boundaryPixels, long weightEvaluations) {
+        HoleEvent event = new HoleEvent();
+        if (event.shouldCommit()) {
+            event.holePixels = holePixels;
+            event.boundaryPixels = boundaryPixels;
+            event.weightEvaluations = weightEvaluations;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void invocationCompleted(ImageProcessAlgorithm algorithm, long nanos, long allocatedBytes) {
+        InvocationEvent event = new InvocationEvent();
+        if (event.shouldCommit()) {
+            int[] size = this.sizes.get();
+            event.algorithm = algorithm.getClass().getSimpleName();
+            event.width = size[0];
+            event.height = size[1];
+            event.elapsed = nanos;
+            event.allocated = allocatedBytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("imageprocess.Hole")
+@Label("Hole Processed")
+@Category("Image Processing")
+@StackTrace(false)
+class HoleEvent extends jdk.jfr.Event {
+    @Label("Hole Pixels")
+    int holePixels;
+
+    @Label("Boundary Pixels")
+    int boundaryPixels;
+
+    @Label("Weight Evaluations")
+    long weightEvaluations;
+}
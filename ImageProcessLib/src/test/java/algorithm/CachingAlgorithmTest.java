@@ -0,0 +1,77 @@
+package algorithm;
+
+import cache.ResultCache;
+import image.FloatRaster;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.PixelConnectivity;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * A hit must give the image the algorithm gives, and algorithms that share a cache under different parameters
+ * strings must never get each other's results.
+ */
+class CachingAlgorithmTest {
+    private static final long CACHE_BYTES = 1 << 24;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    void hitFillsLikeTheAlgorithm() {
+        ResultCache cache = new ResultCache(CACHE_BYTES);
+        RasterProcessAlgorithm caching = cachingHoleFilling(3, cache);
+        FloatRaster image = SyntheticImages.withHoles(80, 60, 4);
+
+        FloatRaster missed = SyntheticImages.copyOf(image);
+        FloatRaster hit = SyntheticImages.copyOf(image);
+        caching.invoke(missed);
+        caching.invoke(hit);
+
+        assertArrayEquals(fill(3, image).getData(), missed.getData());
+        assertArrayEquals(missed.getData(), hit.getData());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getMemoryHits());
+    }
+
+    @Test
+    void differentParametersDontCollide() {
+        ResultCache cache = new ResultCache(CACHE_BYTES);
+        FloatRaster image = SyntheticImages.withHoles(80, 60, 4);
+
+        FloatRaster first = SyntheticImages.copyOf(image);
+        FloatRaster second = SyntheticImages.copyOf(image);
+        cachingHoleFilling(2, cache).invoke(first);
+        cachingHoleFilling(6, cache).invoke(second);
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getMemoryHits());
+        assertEquals(2, cache.getMemoryEntries());
+        assertArrayEquals(fill(2, image).getData(), first.getData());
+        assertArrayEquals(fill(6, image).getData(), second.getData());
+        assertFalse(Arrays.equals(first.getData(), second.getData()));
+    }
+
+    private static RasterProcessAlgorithm cachingHoleFilling(int zFactor, ResultCache cache) {
+        return AlgorithmFactory.createCachingAlgorithm(
+                AlgorithmFactory.createHoleFillingAlgorithm(
+                        WeightingFunctionFactory.CreateDefault(zFactor, 0.01f), PixelConnectivity.EightConnected),
+                "HoleFilling z=" + zFactor + " e=0.01 8", cache);
+    }
+
+    private static FloatRaster fill(int zFactor, FloatRaster image) {
+        FloatRaster filled = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHoleFillingAlgorithm(
+                WeightingFunctionFactory.CreateDefault(zFactor, 0.01f), PixelConnectivity.EightConnected))
+                .invoke(filled);
+        return filled;
+    }
+}
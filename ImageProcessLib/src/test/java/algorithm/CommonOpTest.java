@@ -0,0 +1,68 @@
+package algorithm;
+
+import image.FloatRaster;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The boundaries found together with the holes must be the ones findBoundaryPixels finds, in the same order,
+ * since the sections of the quick algorithm depend on the order.
+ */
+class CommonOpTest {
+    private static final int MASKS = 200;
+
+    @ParameterizedTest
+    @EnumSource(PixelConnectivity.class)
+    void boundariesMatchFindBoundaryPixels(PixelConnectivity pixelConnectivity) {
+        Random random = new Random(pixelConnectivity.ordinal());
+
+        for (int mask = 0; mask < MASKS; mask++) {
+            FloatRaster raster = randomHoles(random, 5 + random.nextInt(40), 5 + random.nextInt(40));
+            List<PixelSet> boundaries = new ArrayList<>();
+            List<PixelSet> holes = CommonOp.findAllHoles(raster, pixelConnectivity, boundaries);
+
+            assertEquals(holes.size(), boundaries.size());
+            for (int hole = 0; hole < holes.size(); hole++) {
+                PixelSet expected = CommonOp.findBoundaryPixels(raster, holes.get(hole), pixelConnectivity);
+                assertArrayEquals(indices(expected), indices(boundaries.get(hole)),
+                        "Mask " + mask + ", hole " + hole);
+            }
+        }
+    }
+
+    /**
+     * @return an image with random rectangles and pixels punched out, some of them on the image edges.
+     */
+    private static FloatRaster randomHoles(Random random, int width, int height) {
+        FloatRaster raster = FloatRaster.create(width, height);
+
+        for (int i = 0; i < 1 + random.nextInt(6); i++) {
+            int fromX = random.nextInt(width);
+            int fromY = random.nextInt(height);
+            SyntheticImages.punchRectangle(raster, fromX, fromY,
+                    fromX + 1 + random.nextInt(10), fromY + 1 + random.nextInt(10));
+        }
+        for (int i = 0; i < random.nextInt(20); i++) {
+            raster.set(random.nextInt(width), random.nextInt(height), FloatRaster.HOLE_VALUE);
+        }
+
+        return raster;
+    }
+
+    private static int[] indices(PixelSet pixels) {
+        int[] indices = new int[pixels.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = pixels.indexAt(i);
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,56 @@
+package algorithm;
+
+import image.FloatRaster;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import utils.PixelConnectivity;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The FFT algorithm must match the hole filling algorithm within the float precision of its weighted sums,
+ * including the large z and large hole combinations whose kernel spans more orders of magnitude than a double.
+ */
+class FftHoleFillingAlgorithmTest {
+    private static final float TOLERANCE = 1e-4f;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    static Stream<Arguments> zFactorsAndHoleSizes() {
+        return IntStream.of(1, 2, 3, 4, 6, 8, 10).boxed()
+                .flatMap(zFactor -> IntStream.of(1, 6, 40, 120).mapToObj(holeSize -> Arguments.of(zFactor, holeSize)));
+    }
+
+    @ParameterizedTest(name = "z = {0}, hole size = {1}")
+    @MethodSource("zFactorsAndHoleSizes")
+    void matchesHoleFillingAlgorithm(int zFactor, int holeSize) {
+        WeightingFunction weightingFunction = WeightingFunctionFactory.CreateDefault(zFactor, 0.01f);
+        FloatRaster image = SyntheticImages.gradient(holeSize + 40, holeSize + 30, zFactor);
+        SyntheticImages.punchRectangle(image, 20, 15, 20 + holeSize, 15 + holeSize);
+        SyntheticImages.punchDisk(image, 8, 8, 4);
+
+        FloatRaster expected = SyntheticImages.copyOf(image);
+        FloatRaster actual = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.EightConnected)).invoke(expected);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createFftHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.EightConnected)).invoke(actual);
+
+        for (int i = 0; i < expected.getData().length; i++) {
+            float value = actual.getData()[i];
+            assertTrue(value >= 0 && value <= 1, "Pixel " + i + " is " + value);
+            assertEquals(expected.getData()[i], value, TOLERANCE, "Pixel " + i);
+        }
+    }
+}
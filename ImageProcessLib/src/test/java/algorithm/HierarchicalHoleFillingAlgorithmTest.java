@@ -0,0 +1,76 @@
+package algorithm;
+
+import image.FloatRaster;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import utils.PixelConnectivity;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The opening angle is the only accuracy knob of the hierarchical algorithm - an angle of 0 must give the result
+ * of the hole filling algorithm, and the error must shrink as the angle shrinks.
+ */
+class HierarchicalHoleFillingAlgorithmTest {
+    private static final float TOLERANCE = 1e-4f;
+    // From coarse to fine
+    private static final double[] OPENING_ANGLES = {1.0, 0.5, 0.25, 0.1};
+
+    @BeforeAll
+    static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @ParameterizedTest(name = "z = {0}")
+    @ValueSource(ints = {1, 2, 3, 6})
+    void zeroOpeningAngleMatchesHoleFillingAlgorithm(int zFactor) {
+        WeightingFunction weightingFunction = WeightingFunctionFactory.CreateDefault(zFactor, 0.01f);
+        FloatRaster image = SyntheticImages.withHoles(160, 120, zFactor);
+        FloatRaster expected = fillExactly(image, weightingFunction);
+        FloatRaster actual = fillHierarchically(image, weightingFunction, 0);
+
+        for (int i = 0; i < expected.getData().length; i++) {
+            assertEquals(expected.getData()[i], actual.getData()[i], TOLERANCE, "Pixel " + i);
+        }
+    }
+
+    @ParameterizedTest(name = "z = {0}")
+    @ValueSource(ints = {1, 2, 3, 6})
+    void errorShrinksWithOpeningAngle(int zFactor) {
+        WeightingFunction weightingFunction = WeightingFunctionFactory.CreateDefault(zFactor, 0.01f);
+        FloatRaster image = SyntheticImages.withHoles(160, 120, zFactor);
+        FloatRaster expected = fillExactly(image, weightingFunction);
+        double previousError = Double.MAX_VALUE;
+
+        for (double openingAngle : OPENING_ANGLES) {
+            FloatRaster actual = fillHierarchically(image, weightingFunction, openingAngle);
+            double error = 0;
+            for (int i = 0; i < expected.getData().length; i++) {
+                error += Math.abs(expected.getData()[i] - actual.getData()[i]);
+            }
+
+            assertTrue(error < previousError,
+                    "The error at opening angle " + openingAngle + " is " + error + ", was " + previousError);
+            previousError = error;
+        }
+    }
+
+    private static FloatRaster fillExactly(FloatRaster image, WeightingFunction weightingFunction) {
+        FloatRaster filled = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.EightConnected)).invoke(filled);
+        return filled;
+    }
+
+    private static FloatRaster fillHierarchically(FloatRaster image, WeightingFunction weightingFunction,
+                                                  double openingAngle) {
+        FloatRaster filled = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHierarchicalHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.EightConnected, openingAngle)).invoke(filled);
+        return filled;
+    }
+}
@@ -0,0 +1,90 @@
+package algorithm;
+
+import image.FloatRaster;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A session edited by random brush strokes must keep the image HoleFillingAlgorithm gives for the same hole.
+ */
+class IncrementalFillSessionTest {
+    private static final WeightingFunction WEIGHTING_FUNCTION = WeightingFunctionFactory.CreateDefault(3, 0.01f);
+    private static final float TOLERANCE = 1e-5f;
+
+    @ParameterizedTest
+    @EnumSource(PixelConnectivity.class)
+    void strokesMatchAFullFill(PixelConnectivity pixelConnectivity) {
+        int width = 90;
+        int height = 70;
+        FloatRaster image = SyntheticImages.gradient(width, height, 5);
+        IncrementalFillSession session = AlgorithmFactory.createIncrementalFillSession(
+                WEIGHTING_FUNCTION, pixelConnectivity, image);
+        boolean[] hole = new boolean[width * height];
+        Random random = new Random(3);
+
+        for (int stroke = 0; stroke < 40; stroke++) {
+            int centerX = random.nextInt(width);
+            int centerY = random.nextInt(height);
+            int radius = 1 + random.nextInt(6);
+            boolean erase = stroke > 8 && random.nextInt(3) == 0;
+            PixelSet pixels = new PixelSet(width, height);
+
+            for (int y = Math.max(0, centerY - radius); y <= Math.min(height - 1, centerY + radius); y++) {
+                for (int x = Math.max(0, centerX - radius); x <= Math.min(width - 1, centerX + radius); x++) {
+                    if ((x - centerX) * (x - centerX) + (y - centerY) * (y - centerY) <= radius * radius) {
+                        pixels.add(x, y);
+                        hole[y * width + x] = !erase;
+                    }
+                }
+            }
+
+            if (stroke % 7 == 3) {
+                PixelSet wholeHole = new PixelSet(width, height);
+                for (int i = 0; i < hole.length; i++) {
+                    if (hole[i]) {
+                        wholeHole.addIndex(i);
+                    }
+                }
+                session.setHole(wholeHole);
+            } else if (stroke % 2 == 0) {
+                session.edit(erase ? null : pixels, erase ? pixels : null);
+            } else {
+                int[] indices = new int[pixels.size()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = pixels.indexAt(i);
+                }
+                session.edit(erase ? new int[0] : indices, erase ? indices : new int[0]);
+            }
+
+            assertMatchesFullFill(session, image, hole, pixelConnectivity);
+        }
+    }
+
+    private static void assertMatchesFullFill(IncrementalFillSession session, FloatRaster image, boolean[] hole,
+                                              PixelConnectivity pixelConnectivity) {
+        FloatRaster expected = SyntheticImages.copyOf(image);
+        boolean[] sessionHole = new boolean[hole.length];
+        for (int i = 0; i < hole.length; i++) {
+            if (hole[i]) {
+                expected.getData()[i] = FloatRaster.HOLE_VALUE;
+            }
+            sessionHole[i] = session.isHole(i % image.getWidth(), i / image.getWidth());
+        }
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHoleFillingAlgorithm(
+                WEIGHTING_FUNCTION, pixelConnectivity)).invoke(expected);
+
+        assertArrayEquals(hole, sessionHole);
+        for (int i = 0; i < hole.length; i++) {
+            assertEquals(expected.getData()[i], session.getRaster().getData()[i], TOLERANCE, "Pixel " + i);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package algorithm;
+
+import image.FloatRaster;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.PixelConnectivity;
+import weighting.function.WeightingFunctionFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A saved plan must fill like the compiled one, and a corrupted one must fail before allocating its arrays.
+ */
+class MaskPlanTest {
+    // The magic, the version, the width and the height precede the first array length
+    private static final int FIRST_LENGTH_OFFSET = 4 * Integer.BYTES;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    void loadedPlanFillsLikeCompiledPlan() throws IOException {
+        FloatRaster image = SyntheticImages.withHoles(120, 90, 5);
+        MaskPlan plan = AlgorithmFactory.createMaskPlan(
+                WeightingFunctionFactory.CreateDefault(3, 0.01f), PixelConnectivity.EightConnected, image);
+        MaskPlan loaded = MaskPlan.readFrom(new ByteArrayInputStream(write(plan)));
+
+        FloatRaster expected = SyntheticImages.copyOf(image);
+        FloatRaster actual = SyntheticImages.copyOf(image);
+        plan.invoke(expected);
+        loaded.invoke(actual);
+
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+
+    @Test
+    void corruptedPlanIsRejected() throws IOException {
+        FloatRaster image = SyntheticImages.withHoles(60, 50, 9);
+        byte[] bytes = write(AlgorithmFactory.createQuickMaskPlan(
+                WeightingFunctionFactory.CreateDefault(3, 0.01f), PixelConnectivity.EightConnected, 8, image));
+
+        assertThrows(IOException.class, () -> read(bytes, FIRST_LENGTH_OFFSET, Integer.MAX_VALUE));
+        assertThrows(IOException.class, () -> read(bytes, FIRST_LENGTH_OFFSET, -1));
+        assertThrows(IOException.class, () -> read(bytes, 2 * Integer.BYTES, 1 << 30));
+        // The first hole starts at row 0, so any other value points out of the plan
+        assertThrows(IOException.class, () -> read(bytes, FIRST_LENGTH_OFFSET + Integer.BYTES, 1 << 30));
+    }
+
+    private static byte[] write(MaskPlan plan) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        plan.writeTo(output);
+        return output.toByteArray();
+    }
+
+    private static MaskPlan read(byte[] bytes, int offset, int value) throws IOException {
+        ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone());
+        corrupted.putInt(offset, value);
+        return MaskPlan.readFrom(new ByteArrayInputStream(corrupted.array()));
+    }
+}
@@ -0,0 +1,89 @@
+package algorithm;
+
+import image.FloatRaster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import utils.PixelConnectivity;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The parallel fills must give the serial result, bit for bit, whatever the number of threads.
+ */
+class ParallelFillTest {
+    private static final WeightingFunction WEIGHTING_FUNCTION = WeightingFunctionFactory.CreateDefault(3, 0.01f);
+    private static final int[] PARALLELISMS = {2, 3, 4, 8};
+
+    private static ForkJoinPool[] pools;
+
+    @BeforeAll
+    static void createPools() {
+        pools = new ForkJoinPool[PARALLELISMS.length];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ForkJoinPool(PARALLELISMS[i]);
+        }
+    }
+
+    @AfterAll
+    static void shutdownPools() {
+        for (ForkJoinPool pool : pools) {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"FourConnected", "EightConnected"})
+    void holeFillingIsIdenticalOnEveryPool(PixelConnectivity pixelConnectivity) {
+        FloatRaster image = SyntheticImages.withHoles(160, 120, 7);
+        float[] serial = fill(AlgorithmFactory.createHoleFillingAlgorithm(
+                WEIGHTING_FUNCTION, pixelConnectivity), image);
+
+        for (ForkJoinPool pool : pools) {
+            float[] parallel = fill(AlgorithmFactory.createHoleFillingAlgorithm(
+                    WEIGHTING_FUNCTION, pixelConnectivity, pool), image);
+            assertArrayEquals(serial, parallel, "Parallelism " + pool.getParallelism());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 5, 64})
+    void quickHoleFillingIsIdenticalOnEveryPool(int boundarySize) {
+        FloatRaster image = SyntheticImages.withHoles(160, 120, 11);
+        float[] serial = fill(AlgorithmFactory.createQuickHoleFillingAlgorithm(
+                WEIGHTING_FUNCTION, PixelConnectivity.EightConnected, boundarySize), image);
+
+        for (ForkJoinPool pool : pools) {
+            float[] parallel = fill(AlgorithmFactory.createQuickHoleFillingAlgorithm(
+                    WEIGHTING_FUNCTION, PixelConnectivity.EightConnected, boundarySize, pool), image);
+            assertArrayEquals(serial, parallel, "Parallelism " + pool.getParallelism());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void parallelismFactoryFillsEveryHole(int parallelism) {
+        FloatRaster image = SyntheticImages.withHoles(96, 80, 3);
+        float[] serial = fill(AlgorithmFactory.createHoleFillingAlgorithm(
+                WEIGHTING_FUNCTION, PixelConnectivity.EightConnected), image);
+        float[] parallel = fill(AlgorithmFactory.createHoleFillingAlgorithm(
+                WEIGHTING_FUNCTION, PixelConnectivity.EightConnected, parallelism), image);
+
+        assertArrayEquals(serial, parallel);
+        for (float value : parallel) {
+            assertFalse(value == FloatRaster.HOLE_VALUE, "A hole pixel wasn't filled");
+        }
+    }
+
+    private static float[] fill(ImageProcessAlgorithm algorithm, FloatRaster image) {
+        FloatRaster raster = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) algorithm).invoke(raster);
+        return raster.getData();
+    }
+}
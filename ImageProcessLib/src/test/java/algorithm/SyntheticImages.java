@@ -0,0 +1,87 @@
+package algorithm;
+
+import image.FloatRaster;
+
+/**
+ * Deterministic grayscale images with holes, for comparing the results of the algorithms.
+ */
+final class SyntheticImages {
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * @return a width x height image of smooth gradients and a little noise, without holes.
+     */
+    static FloatRaster gradient(int width, int height, long seed) {
+        FloatRaster raster = FloatRaster.create(width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float smooth = 0.5f + 0.25f * (float) Math.sin(x * 0.07 + seed) * (float) Math.cos(y * 0.05);
+                raster.set(x, y, smooth + 0.2f * noise(x, y, seed));
+            }
+        }
+
+        return raster;
+    }
+
+    /**
+     * @return a gradient image with several holes of different shapes and sizes: rectangles, a disk, a diagonal
+     * line and a single pixel. No hole is the neighbor of another.
+     */
+    static FloatRaster withHoles(int width, int height, long seed) {
+        FloatRaster raster = gradient(width, height, seed);
+
+        punchRectangle(raster, 3, 4, 12, 9);
+        punchRectangle(raster, width / 2, 2, width / 2 + 18, 6);
+        punchDisk(raster, width / 3, height / 2, Math.min(width, height) / 6);
+        for (int i = 0; i < 20; i++) {
+            punch(raster, width - 30 + i, height - 25 + i);
+        }
+        punch(raster, width - 5, 5);
+
+        return raster;
+    }
+
+    static void punchRectangle(FloatRaster raster, int fromX, int fromY, int toX, int toY) {
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                punch(raster, x, y);
+            }
+        }
+    }
+
+    static void punchDisk(FloatRaster raster, int centerX, int centerY, int radius) {
+        for (int y = centerY - radius; y <= centerY + radius; y++) {
+            for (int x = centerX - radius; x <= centerX + radius; x++) {
+                if ((x - centerX) * (x - centerX) + (y - centerY) * (y - centerY) <= radius * radius) {
+                    punch(raster, x, y);
+                }
+            }
+        }
+    }
+
+    static FloatRaster copyOf(FloatRaster raster) {
+        FloatRaster copy = FloatRaster.create(raster.getWidth(), raster.getHeight(), raster.getChannels());
+        System.arraycopy(raster.getData(), 0, copy.getData(), 0, raster.getData().length);
+        return copy;
+    }
+
+    private static void punch(FloatRaster raster, int x, int y) {
+        if (raster.contains(x, y)) {
+            raster.set(x, y, FloatRaster.HOLE_VALUE);
+        }
+    }
+
+    /**
+     * @return a value in [0, 1) that only depends on the pixel and the seed.
+     */
+    private static float noise(int x, int y, long seed) {
+        long hash = (x * 73856093L) ^ (y * 19349663L) ^ (seed * 83492791L);
+        hash ^= hash >>> 13;
+        hash *= 0x5bd1e995L;
+        hash ^= hash >>> 15;
+        return (hash & 0xFFFF) / 65536f;
+    }
+}
@@ -0,0 +1,128 @@
+package algorithm;
+
+import image.FloatRaster;
+import image.Pixel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every pixel of the truncated algorithm must be within maxError times the range of its boundary values of
+ * the hole filling algorithm - also far inside a large hole, where the nearest boundary is many grid cells away.
+ */
+class TruncatedHoleFillingAlgorithmTest {
+    // The float sums of the two algorithms add up the weights in different orders
+    private static final float SUM_TOLERANCE = 1e-5f;
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    static Stream<Arguments> zFactorsAndMaxErrors() {
+        return IntStream.of(2, 3, 6).boxed()
+                .flatMap(zFactor -> Stream.of(0.1f, 0.01f, 0.001f).map(maxError -> Arguments.of(zFactor, maxError)));
+    }
+
+    @ParameterizedTest(name = "z = {0}, max error = {1}")
+    @MethodSource("zFactorsAndMaxErrors")
+    void staysWithinMaxErrorOfHoleFillingAlgorithm(int zFactor, float maxError) {
+        WeightingFunction weightingFunction = WeightingFunctionFactory.CreateDefault(zFactor, 0.01f);
+        FloatRaster image = lineDiskAndSquareHoles(zFactor);
+        float[] ranges = boundaryRanges(image);
+
+        FloatRaster expected = SyntheticImages.copyOf(image);
+        FloatRaster actual = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.EightConnected)).invoke(expected);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createTruncatedHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.EightConnected, maxError)).invoke(actual);
+
+        for (int i = 0; i < expected.getData().length; i++) {
+            float error = Math.abs(actual.getData()[i] - expected.getData()[i]);
+            assertTrue(error <= maxError * ranges[i] + SUM_TOLERANCE,
+                    "Pixel (" + i % WIDTH + ", " + i / WIDTH + ") is off by " + error);
+        }
+    }
+
+    @Test
+    void fillsLikeHoleFillingAlgorithmWithNonRadialFunction() {
+        // Weighs horizontal distances more than vertical ones, so the distance isn't euclidean
+        WeightingFunction weightingFunction = new WeightingFunction() {
+            @Override
+            public float calculate(Pixel first, Pixel second) {
+                return calculate(first.getX(), first.getY(), second.getX(), second.getY());
+            }
+
+            @Override
+            public float calculate(int firstX, int firstY, int secondX, int secondY) {
+                float dx = 3f * (firstX - secondX);
+                float dy = firstY - secondY;
+                return 1 / ((dx * dx + dy * dy) * (dx * dx + dy * dy) + 0.01f);
+            }
+        };
+        FloatRaster image = lineDiskAndSquareHoles(7);
+
+        FloatRaster expected = SyntheticImages.copyOf(image);
+        FloatRaster actual = SyntheticImages.copyOf(image);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.FourConnected)).invoke(expected);
+        ((RasterProcessAlgorithm) AlgorithmFactory.createTruncatedHoleFillingAlgorithm(
+                weightingFunction, PixelConnectivity.FourConnected, 0.1f)).invoke(actual);
+
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+
+    /**
+     * @return a gradient image with a one pixel wide line hole, a disk hole and a large square hole, whose center
+     * is 40 pixels away from its boundary.
+     */
+    private static FloatRaster lineDiskAndSquareHoles(long seed) {
+        FloatRaster image = SyntheticImages.gradient(WIDTH, HEIGHT, seed);
+        SyntheticImages.punchRectangle(image, 30, 20, 150, 21);
+        SyntheticImages.punchDisk(image, 50, 90, 25);
+        SyntheticImages.punchRectangle(image, 100, 50, 180, 130);
+        return image;
+    }
+
+    /**
+     * @return the range of the boundary values of the hole of each pixel, 0 for the pixels that aren't holes.
+     */
+    private static float[] boundaryRanges(FloatRaster image) {
+        float[] ranges = new float[WIDTH * HEIGHT];
+        List<PixelSet> boundaries = new ArrayList<>();
+        List<PixelSet> holes = CommonOp.findAllHoles(image, PixelConnectivity.EightConnected, boundaries);
+
+        for (int hole = 0; hole < holes.size(); hole++) {
+            PixelSet boundary = boundaries.get(hole);
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int i = 0; i < boundary.size(); i++) {
+                float value = image.get(boundary.xAt(i), boundary.yAt(i));
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            for (int i = 0; i < holes.get(hole).size(); i++) {
+                ranges[holes.get(hole).indexAt(i)] = max - min;
+            }
+        }
+
+        return ranges;
+    }
+}
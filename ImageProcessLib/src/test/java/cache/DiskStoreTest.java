@@ -0,0 +1,94 @@
+package cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static cache.ResultCacheTest.key;
+import static cache.ResultCacheTest.result;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The least recently used order of the files is their modification time, so it must survive a restart.
+ */
+class DiskStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void leastRecentlyUsedFileIsEvictedFirst() throws IOException {
+        long fileBytes = fileBytes();
+        DiskStore store = new DiskStore(this.directory, 2 * fileBytes);
+        store.write(key(1), result(1));
+        store.write(key(2), result(2));
+        store.read(key(1));
+        store.write(key(3), result(3));
+
+        assertNull(store.read(key(2)));
+        assertFalse(Files.exists(file(2)));
+        assertArrayEquals(result(1).getData(), store.read(key(1)).getData());
+        assertArrayEquals(result(3).getData(), store.read(key(3)).getData());
+        assertEquals(1, store.getEvictions());
+        assertEquals(2, store.getEntries());
+        assertEquals(2 * fileBytes, store.getBytes());
+    }
+
+    @Test
+    void restartReindexesByModificationTime() throws IOException {
+        long fileBytes = fileBytes();
+        DiskStore store = new DiskStore(this.directory, 10 * fileBytes);
+        for (int i = 1; i <= 3; i++) {
+            store.write(key(i), result(i));
+        }
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(file(1), FileTime.fromMillis(now - 3000));
+        Files.setLastModifiedTime(file(2), FileTime.fromMillis(now - 1000));
+        Files.setLastModifiedTime(file(3), FileTime.fromMillis(now - 2000));
+        Path leftover = Files.createFile(this.directory.resolve(key(4) + "123.tmp"));
+
+        // Only two files fit, so the oldest one is evicted while indexing, and the next oldest by the next write
+        DiskStore restarted = new DiskStore(this.directory, 2 * fileBytes);
+        assertFalse(Files.exists(leftover));
+        assertFalse(Files.exists(file(1)));
+        assertEquals(2, restarted.getEntries());
+        assertEquals(2 * fileBytes, restarted.getBytes());
+        assertEquals(1, restarted.getEvictions());
+
+        restarted.write(key(5), result(5));
+        assertFalse(Files.exists(file(3)));
+        assertNull(restarted.read(key(3)));
+        assertNotNull(restarted.read(key(2)));
+        assertNotNull(restarted.read(key(5)));
+    }
+
+    @Test
+    void resultLargerThanTheBudgetIsNotWritten() throws IOException {
+        DiskStore store = new DiskStore(this.directory, fileBytes() - 1);
+        store.write(key(1), result(1));
+
+        assertNull(store.read(key(1)));
+        assertEquals(0, store.getEntries());
+        assertFalse(Files.exists(file(1)));
+    }
+
+    private Path file(int i) {
+        return this.directory.resolve(key(i) + ".bin");
+    }
+
+    /**
+     * @return the size of the file of a result, measured on a store of its own.
+     */
+    private long fileBytes() throws IOException {
+        DiskStore store = new DiskStore(this.directory.resolve("size"), Long.MAX_VALUE);
+        store.write(key(0), result(0));
+        return store.getBytes();
+    }
+}
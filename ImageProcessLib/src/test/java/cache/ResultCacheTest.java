@@ -0,0 +1,115 @@
+package cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * The counters of the cache are its only observable behavior besides the results, so each case checks both.
+ */
+class ResultCacheTest {
+    private static final int VALUES = 100;
+    private static final long RESULT_BYTES = result(0).getBytes();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void memoryHitReturnsTheStoredResult() {
+        ResultCache cache = new ResultCache(10 * RESULT_BYTES);
+        CachedResult result = result(1);
+        cache.put(key(1), result);
+
+        assertSame(result, cache.get(key(1)));
+        assertNull(cache.get(key(2)));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getDiskHits());
+    }
+
+    @Test
+    void leastRecentlyUsedResultIsEvictedFirst() {
+        ResultCache cache = new ResultCache(2 * RESULT_BYTES);
+        cache.put(key(1), result(1));
+        cache.put(key(2), result(2));
+        cache.get(key(1));
+        cache.put(key(3), result(3));
+
+        assertNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(3)));
+        assertEquals(1, cache.getMemoryEvictions());
+        assertEquals(2, cache.getMemoryEntries());
+        assertEquals(2 * RESULT_BYTES, cache.getMemoryBytes());
+        assertEquals(3, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void resultLargerThanTheBudgetIsNotKept() {
+        ResultCache cache = new ResultCache(RESULT_BYTES - 1);
+        cache.put(key(1), result(1));
+
+        assertNull(cache.get(key(1)));
+        assertEquals(0, cache.getMemoryEntries());
+        assertEquals(0, cache.getMemoryEvictions());
+    }
+
+    @Test
+    void diskHitIsPromotedToMemory() throws IOException {
+        new ResultCache(10 * RESULT_BYTES, this.directory, 1 << 20).put(key(1), result(1));
+        ResultCache cache = new ResultCache(10 * RESULT_BYTES, this.directory, 1 << 20);
+
+        assertEquals(0, cache.getMemoryEntries());
+        assertEquals(1, cache.getDiskEntries());
+        assertArrayEquals(result(1).getData(), cache.get(key(1)).getData());
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(1, cache.getMemoryEntries());
+
+        cache.get(key(1));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    void corruptedFileIsAnErrorAndAMiss() throws IOException {
+        new ResultCache(10 * RESULT_BYTES, this.directory, 1 << 20).put(key(1), result(1));
+        Path file = this.directory.resolve(key(1) + ".bin");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        ResultCache cache = new ResultCache(10 * RESULT_BYTES, this.directory, 1 << 20);
+
+        assertNull(cache.get(key(1)));
+        assertEquals(1, cache.getDiskErrors());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(0, cache.getDiskEntries());
+        assertEquals(0, cache.getDiskBytes());
+        assertFalse(Files.exists(file));
+    }
+
+    static CacheKey key(int i) {
+        return CacheKey.parse(String.format("%032x", i));
+    }
+
+    /**
+     * @return a result whose values all equal the given one, VALUES values long.
+     */
+    static CachedResult result(float value) {
+        float[] data = new float[VALUES];
+        Arrays.fill(data, value);
+        return new CachedResult(data, new int[0]);
+    }
+}
@@ -0,0 +1,33 @@
+package weighting.function;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RadialWeightingFunctionTest {
+
+    @Test
+    void matchesTheDefaultFunctionInsideAndOutsideOfTheTable() {
+        WeightingFunction radial = WeightingFunctionFactory.CreateRadial(3, 0.01f);
+        WeightingFunction direct = WeightingFunctionFactory.CreateDefault(3, 0.01f);
+
+        for (int distance : new int[]{0, 1, 7, 64, 4095, 4096, RadialKernel.MAX_TABLE_SIZE}) {
+            assertEquals(direct.calculate(0, 0, distance, 0), radial.calculate(0, 0, distance, 0));
+        }
+    }
+
+    @Test
+    void distancesWhoseSquareOverflowsAnIntAreComputedDirectly() {
+        WeightingFunction radial = WeightingFunctionFactory.CreateRadial(2, 0.01f);
+        WeightingFunction direct = WeightingFunctionFactory.CreateDefault(2, 0.01f);
+        int[] xs = {50_000, 0, -60_000};
+        int[] ys = {0, 46_341, 40_000};
+        float[] weights = new float[xs.length];
+
+        radial.calculate(0, 0, xs, ys, xs.length, weights);
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(direct.calculate(0, 0, xs[i], ys[i]), radial.calculate(0, 0, xs[i], ys[i]));
+            assertEquals(direct.calculate(0, 0, xs[i], ys[i]), weights[i]);
+        }
+    }
+}
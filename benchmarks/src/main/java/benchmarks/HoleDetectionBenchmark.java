@@ -0,0 +1,68 @@
+package benchmarks;
+
+import algorithm.CommonOp;
+import image.FloatRaster;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import utils.PixelConnectivity;
+import utils.PixelSet;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HoleDetectionBenchmark {
+
+    @Param({"512", "2048"})
+    private int size;
+
+    @Param({"Disc", "Ring", "Line"})
+    private SyntheticImages.HoleShape shape;
+
+    @Param({"1", "16"})
+    private int holeCount;
+
+    @Param({"FourConnected", "EightConnected"})
+    private PixelConnectivity connectivity;
+
+    private FloatRaster raster;
+    private PixelSet hole;
+
+    @Setup
+    public void setup() {
+        Mat image = SyntheticImages.create(this.size, this.shape, this.holeCount, 0.5);
+        this.raster = FloatRaster.fromMat(image);
+        image.release();
+        this.hole = CommonOp.findHolePixels(this.raster);
+    }
+
+    @Benchmark
+    public PixelSet findHolePixels() {
+        return CommonOp.findHolePixels(this.raster);
+    }
+
+    /**
+     * The hole and its boundary in a single scanline pass, compare with findHolePixels + findBoundaryPixels.
+     */
+    @Benchmark
+    public PixelSet findHoleAndBoundaryPixels() {
+        PixelSet boundary = new PixelSet(this.raster.getWidth(), this.raster.getHeight());
+        CommonOp.findHolePixels(this.raster, this.connectivity, boundary);
+        return boundary;
+    }
+
+    @Benchmark
+    public List<PixelSet> findAllHoles() {
+        return CommonOp.findAllHoles(this.raster);
+    }
+
+    @Benchmark
+    public PixelSet findBoundaryPixels() {
+        return CommonOp.findBoundaryPixels(this.raster, this.hole, this.connectivity);
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import algorithm.AlgorithmFactory;
+import algorithm.ImageProcessAlgorithm;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import utils.PixelConnectivity;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HoleFillingBenchmark {
+
+    @Param({"256", "512"})
+    private int size;
+
+    @Param({"Disc", "Line"})
+    private SyntheticImages.HoleShape shape;
+
+    @Param({"1", "9"})
+    private int holeCount;
+
+    @Param({"3"})
+    private int zFactor;
+
+    private Mat source;
+    private Mat image;
+    private Mat result;
+    private ImageProcessAlgorithm holeFilling;
+    private ImageProcessAlgorithm quickHoleFilling;
+    private ImageProcessAlgorithm truncatedHoleFilling;
+
+    @Setup
+    public void setup() {
+        this.source = SyntheticImages.create(this.size, this.shape, this.holeCount, 0.3);
+        this.image = new Mat();
+        this.holeFilling = AlgorithmFactory.createHoleFillingAlgorithm(
+                WeightingFunctionFactory.CreateDefault(this.zFactor, 0.01f), PixelConnectivity.EightConnected);
+        this.quickHoleFilling = AlgorithmFactory.createQuickHoleFillingAlgorithm(
+                WeightingFunctionFactory.CreateDefault(this.zFactor, 0.01f), PixelConnectivity.EightConnected, 150);
+        this.truncatedHoleFilling = AlgorithmFactory.createTruncatedHoleFillingAlgorithm(
+                WeightingFunctionFactory.CreateDefault(this.zFactor, 0.01f), PixelConnectivity.EightConnected, 0.001f);
+    }
+
+    /**
+     * The algorithms fill the image in place, so every invocation starts from a fresh copy of the holes.
+     */
+    @Setup(Level.Invocation)
+    public void resetImage() {
+        this.source.copyTo(this.image);
+    }
+
+    /**
+     * Release the result of the invocation if the algorithm returned a new Mat rather than the filled image,
+     * so the native memory of the results doesn't pile up until the finalizers run.
+     */
+    @TearDown(Level.Invocation)
+    public void releaseResult() {
+        if (this.result != null && this.result != this.image) {
+            this.result.release();
+        }
+        this.result = null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.source.release();
+        this.image.release();
+    }
+
+    @Benchmark
+    public Mat holeFilling() {
+        return this.result = this.holeFilling.invoke(this.image);
+    }
+
+    @Benchmark
+    public Mat quickHoleFilling() {
+        return this.result = this.quickHoleFilling.invoke(this.image);
+    }
+
+    /**
+     * Pays off with thin holes and large z factors, where most hole pixels are close to a few boundary pixels.
+     */
+    @Benchmark
+    public Mat truncatedHoleFilling() {
+        return this.result = this.truncatedHoleFilling.invoke(this.image);
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import utils.ImageUtils;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageConversionBenchmark {
+
+    @Param({"512", "2048"})
+    private int size;
+
+    private Mat colorImage;
+    private Mat normalizedImage;
+
+    @Setup
+    public void setup() {
+        this.colorImage = SyntheticImages.createColor(this.size);
+        this.normalizedImage = ImageUtils.convertToNormalizedGrayscale(this.colorImage);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.colorImage.release();
+        this.normalizedImage.release();
+    }
+
+    /**
+     * The converted image is released right away (which is cheap next to the conversion), so the native
+     * memory of the results doesn't pile up until the finalizers run.
+     */
+    @Benchmark
+    public long convertToNormalizedGrayscale() {
+        return consume(ImageUtils.convertToNormalizedGrayscale(this.colorImage));
+    }
+
+    @Benchmark
+    public long denormalizeImage() {
+        return consume(ImageUtils.denormalizeImage(this.normalizedImage));
+    }
+
+    /**
+     * @return the address of the result's pixels, so the conversion isn't optimized away.
+     */
+    private static long consume(Mat result) {
+        long address = result.dataAddr();
+        result.release();
+        return address;
+    }
+}
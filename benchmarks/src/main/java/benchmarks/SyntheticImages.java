@@ -0,0 +1,102 @@
+package benchmarks;
+
+import image.FloatRaster;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Random;
+
+/**
+ * Generates deterministic normalized grayscale images with holes for the benchmarks.
+ */
+public class SyntheticImages {
+
+    public enum HoleShape {
+        Disc,
+        Square,
+        Ring,
+        Line
+    }
+
+    static {
+        //Load OpenCV library
+        nu.pattern.OpenCV.loadShared();
+    }
+
+    /**
+     * @param size      the width and the height of the image.
+     * @param shape     the shape of each hole.
+     * @param holeCount the number of holes, spread over a grid of the image.
+     * @param holeSize  the diameter (or side) of each hole, as a fraction of a grid cell.
+     * @return a CV_32FC1 image where the hole pixels hold FloatRaster.HOLE_VALUE.
+     */
+    public static Mat create(int size, HoleShape shape, int holeCount, double holeSize) {
+        float[] data = new float[size * size];
+        Random random = new Random(size * 31L + holeCount);
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                data[y * size + x] = (float) ((Math.sin(x * 0.05) + Math.cos(y * 0.07)) * 0.2 + 0.5 +
+                        random.nextFloat() * 0.05);
+            }
+        }
+
+        int cellsPerRow = (int) Math.ceil(Math.sqrt(holeCount));
+        int cellSize = size / cellsPerRow;
+        int radius = Math.max(1, (int) (cellSize * holeSize / 2));
+
+        for (int hole = 0; hole < holeCount; hole++) {
+            int centerX = (hole % cellsPerRow) * cellSize + cellSize / 2;
+            int centerY = (hole / cellsPerRow) * cellSize + cellSize / 2;
+
+            for (int y = Math.max(centerY - radius, 0); y <= Math.min(centerY + radius, size - 1); y++) {
+                for (int x = Math.max(centerX - radius, 0); x <= Math.min(centerX + radius, size - 1); x++) {
+                    if (isInHole(shape, x - centerX, y - centerY, radius)) {
+                        data[y * size + x] = FloatRaster.HOLE_VALUE;
+                    }
+                }
+            }
+        }
+
+        Mat image = new Mat(size, size, CvType.CV_32FC1);
+        image.put(0, 0, data);
+        return image;
+    }
+
+    /**
+     * @return a CV_8UC3 image with a smooth color gradient.
+     */
+    public static Mat createColor(int size) {
+        byte[] data = new byte[size * size * 3];
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int index = (y * size + x) * 3;
+                data[index] = (byte) (x * 255 / size);
+                data[index + 1] = (byte) (y * 255 / size);
+                data[index + 2] = (byte) ((x + y) * 127 / size);
+            }
+        }
+
+        Mat image = new Mat(size, size, CvType.CV_8UC3);
+        image.put(0, 0, data);
+        return image;
+    }
+
+    private static boolean isInHole(HoleShape shape, int dx, int dy, int radius) {
+        int squaredDistance = dx * dx + dy * dy;
+
+        switch (shape) {
+            case Disc:
+                return squaredDistance <= radius * radius;
+            case Square:
+                return true;
+            case Ring:
+                return squaredDistance <= radius * radius && squaredDistance >= (radius * radius) / 4;
+            case Line:
+                return Math.abs(dy) <= Math.max(1, radius / 8);
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import image.Pixel;
+import org.openjdk.jmh.annotations.*;
+import weighting.function.WeightingFunction;
+import weighting.function.WeightingFunctionFactory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeightingFunctionBenchmark {
+
+    @Param({"1024"})
+    private int boundarySize;
+
+    @Param({"2", "3", "5", "7"})
+    private int zFactor;
+
+    private WeightingFunction weightingFunction;
+    private Pixel holePixel;
+    private Pixel[] boundaryPixels;
+    private int[] xs;
+    private int[] ys;
+    private float[] weights;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(this.boundarySize);
+        this.weightingFunction = WeightingFunctionFactory.CreateDefault(this.zFactor, 0.01f);
+        this.holePixel = new Pixel(500, 500);
+        this.boundaryPixels = new Pixel[this.boundarySize];
+        this.xs = new int[this.boundarySize];
+        this.ys = new int[this.boundarySize];
+        this.weights = new float[this.boundarySize];
+
+        for (int i = 0; i < this.boundarySize; i++) {
+            this.xs[i] = random.nextInt(1000);
+            this.ys[i] = random.nextInt(1000);
+            this.boundaryPixels[i] = new Pixel(this.xs[i], this.ys[i]);
+        }
+    }
+
+    @Benchmark
+    public float calculatePixels() {
+        float sum = 0;
+        for (Pixel boundaryPixel : this.boundaryPixels) {
+            sum += this.weightingFunction.calculate(this.holePixel, boundaryPixel);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] calculateBatch() {
+        this.weightingFunction.calculate(this.holePixel.getX(), this.holePixel.getY(),
+                this.xs, this.ys, this.boundarySize, this.weights);
+        return this.weights;
+    }
+}